@@ -1,7 +1,6 @@
 package com.hupi.hupiaiagent.app;
 
 import com.hupi.hupiaiagent.advisor.MyLoggerAdvisor;
-import com.hupi.hupiaiagent.chatmemory.FileBasedChatMemory;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -10,9 +9,12 @@ import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+
 @Component
 @Slf4j
 public class DispatchAssistantApp {
@@ -47,9 +49,12 @@ public class DispatchAssistantApp {
 
     private final ChatMemory chatMemory;
 
-    public DispatchAssistantApp(ChatModel dashscopeChatModel) {
-        String fileDir = System.getProperty("user.dir") + "/tmp/chat-memory";
-        chatMemory = new FileBasedChatMemory(fileDir);
+    @Value("${dispatch.model.idle-timeout-seconds:180}")
+    private long idleTimeoutSeconds;
+
+    public DispatchAssistantApp(ChatModel dashscopeChatModel, ChatMemory chatMemory) {
+        // 对话记忆由 ChatMemoryConfig 统一创建（文件持久化 + LRU 缓存）
+        this.chatMemory = chatMemory;
 
         chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultSystem(SYSTEM_PROMPT)
@@ -76,13 +81,17 @@ public class DispatchAssistantApp {
         return formatContent(content);
     }
 
+    /**
+     * 流式对话；超过 dispatch.model.idle-timeout-seconds 没有新输出（含思考内容）时以 TimeoutException 结束
+     */
     public Flux<String> doChatByStream(String message, String chatId) {
         return chatClient
                 .prompt()
                 .user(message)
                 .advisors(spec -> spec.param(ChatMemory.CONVERSATION_ID, chatId))
                 .stream()
-                .content();
+                .content()
+                .timeout(Duration.ofSeconds(idleTimeoutSeconds));
     }
 
     @Resource
@@ -121,12 +130,16 @@ public class DispatchAssistantApp {
         return chatMemory;
     }
 
+    public String getSystemPrompt() {
+        return SYSTEM_PROMPT;
+    }
+
     /**
      * 格式化输出内容，按语义进行换行
      * 识别序号、小节标题、日期标题等，在适当位置添加换行
      * 同时过滤掉提示词内容
      */
-    private String formatContent(String content) {
+    public String formatContent(String content) {
         if (content == null || content.trim().isEmpty()) {
             return content;
         }
@@ -0,0 +1,210 @@
+package com.hupi.hupiaiagent.app;
+
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogFilter;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogParser;
+import com.hupi.hupiaiagent.util.ThinkContentUtil;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 超长调度日志的分段汇总（map-reduce）
+ * <p>
+ * 日志超过阈值时，先去掉噪声条目，再按时间顺序切成若干段，每段单独调用模型提取要点（map，并发数有上限）；
+ * 全部完成后把各段要点按时间顺序拼接，交给 {@link DispatchAssistantApp} 按"交接班总结"格式流式输出（reduce），
+ * reduce 这一步照常写入对话记忆。每段的提示词都很短，避免单次请求超出上下文或预填充时间过长。
+ */
+@Component
+@Slf4j
+public class MapReduceSummarizer {
+
+    private static final String MAP_SYSTEM_PROMPT = """
+            你是油气田生产调度日志要点提取助手。用户会给出某天调度日志中按时间排序的一段，请逐条提取要点：
+            1) 只保留与 清管/检修/中断或停输/抢修/隐患治理/技改/产量影响/配合/协调/申请/汇报 相关的条目，忽略纯计产上报、视频监控、巡检等日常内容；
+            2) 每条一行，格式为"HH:mm 单位、设备或线路、事件、状态/计划/影响"，时间取自日志行首时间戳；
+            3) 未来计划以及尚未完成（正在抢修、预计X小时恢复、状态不明）的事项，在行首加"[待办]"；
+            4) 单位、设备、线路名称必须原样引用日志原文，不得编造或泛化；
+            5) 只输出要点行，不要标题和解释；没有相关条目时输出"无"。
+            """;
+
+    private static final String REDUCE_HINT = "（日志较长，已按时间分段提取要点，请据此生成交接班总结；标注[待办]的条目归入\"今日关注工作\"）";
+
+    private final ChatClient mapClient;
+
+    @Resource
+    private DispatchAssistantApp dispatchAssistantApp;
+
+    @Resource
+    private DispatchLogFilter dispatchLogFilter;
+
+    @Value("${dispatch.map-reduce.enabled:true}")
+    private boolean enabled;
+
+    @Value("${dispatch.map-reduce.threshold-chars:20000}")
+    private int thresholdChars;
+
+    @Value("${dispatch.map-reduce.chunk-chars:6000}")
+    private int chunkChars;
+
+    @Value("${dispatch.map-reduce.parallelism:2}")
+    private int parallelism;
+
+    @Value("${dispatch.map-reduce.map-timeout-seconds:180}")
+    private int mapTimeoutSeconds;
+
+    public MapReduceSummarizer(ChatModel dashscopeChatModel) {
+        this.mapClient = ChatClient.builder(dashscopeChatModel)
+                .defaultSystem(MAP_SYSTEM_PROMPT)
+                .build();
+    }
+
+    /**
+     * 消息是否足够长、需要分段汇总
+     */
+    public boolean isApplicable(String message) {
+        return enabled && message != null && message.length() >= thresholdChars;
+    }
+
+    /**
+     * 分段汇总，返回 reduce 阶段的流式输出
+     *
+     * @param message    用户消息（说明文字 + 日志原文）
+     * @param onProgress 进度回调，在 map 每段完成时和 reduce 开始时调用（可能在工作线程上执行）
+     */
+    public Flux<String> summarize(String message, String chatId, Consumer<Progress> onProgress) {
+        List<DispatchLogEvent> parsed = DispatchLogParser.parse(message);
+        // 第一个时间戳之前的行是说明文字（如"请基于[2025-10-19]的调度日志生成交接班总结："），原样放到 reduce 消息开头
+        StringBuilder header = new StringBuilder();
+        List<DispatchLogEvent> events = new ArrayList<>(parsed.size());
+        for (DispatchLogEvent event : parsed) {
+            if (event.time() == null && events.isEmpty()) {
+                header.append(event.text()).append('\n');
+            } else if (!dispatchLogFilter.isNoise(event)) {
+                events.add(event);
+            }
+        }
+        List<Chunk> chunks = split(events, chunkChars);
+        int total = chunks.size();
+        log.info("[MapReduce] chatId={}, message={} chars, events={}/{}, chunks={}, parallelism={}",
+                chatId, message.length(), events.size(), parsed.size(), total, parallelism);
+        onProgress.accept(new Progress("map", 0, total, null));
+
+        AtomicReferenceArray<String> partials = new AtomicReferenceArray<>(total);
+        AtomicInteger completed = new AtomicInteger();
+        return Flux.fromIterable(chunks)
+                .flatMap(chunk -> mapChunk(chunk)
+                        .doOnNext(text -> {
+                            partials.set(chunk.index(), text);
+                            onProgress.accept(new Progress("map", completed.incrementAndGet(), total, chunk.label()));
+                        }), Math.max(1, parallelism))
+                .then(Mono.fromCallable(() -> buildReduceMessage(header.toString(), chunks, partials)))
+                .flatMapMany(reduceMessage -> {
+                    log.info("[MapReduce] reduce input {} chars (from {} chars)", reduceMessage.length(), message.length());
+                    onProgress.accept(new Progress("reduce", 0, 1, null));
+                    return dispatchAssistantApp.doChatByStream(reduceMessage, chatId);
+                });
+    }
+
+    private Mono<String> mapChunk(Chunk chunk) {
+        long start = System.currentTimeMillis();
+        return Mono.fromCallable(() -> {
+                    String content = mapClient.prompt().user(chunk.text()).call().content();
+                    return ThinkContentUtil.stripThink(content == null ? "" : content);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .timeout(Duration.ofSeconds(mapTimeoutSeconds))
+                .doOnNext(text -> log.info("[MapReduce] chunk {} ({}) done: {} -> {} chars, cost={}ms",
+                        chunk.index() + 1, chunk.label(), chunk.chars(), text.length(), System.currentTimeMillis() - start))
+                .onErrorResume(e -> {
+                    // 单段失败时退回该段原文，宁可 reduce 输入长一些也不丢条目
+                    log.warn("[MapReduce] chunk {} ({}) failed, fall back to raw text: {}", chunk.index() + 1, chunk.label(), e.toString());
+                    return Mono.just(chunk.text());
+                });
+    }
+
+    private static String buildReduceMessage(String header, List<Chunk> chunks, AtomicReferenceArray<String> partials) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(header.isBlank() ? "请基于以下调度日志要点生成交接班总结：" : header.strip()).append('\n')
+                .append(REDUCE_HINT).append("\n\n");
+        for (Chunk chunk : chunks) {
+            String partial = partials.get(chunk.index());
+            if (partial == null || partial.isBlank() || "无".equals(partial.strip())) {
+                continue;
+            }
+            sb.append("【第").append(chunk.index() + 1).append("段 ").append(chunk.label()).append("】\n")
+                    .append(partial.strip()).append("\n\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 按时间顺序切段，每段字符数不超过 chunkChars（单条事件超长时独占一段，事件不会被拆开）
+     */
+    static List<Chunk> split(List<DispatchLogEvent> events, int chunkChars) {
+        List<Chunk> chunks = new ArrayList<>();
+        List<DispatchLogEvent> current = new ArrayList<>();
+        int chars = 0;
+        for (DispatchLogEvent event : events) {
+            int length = event.render().length() + 1;
+            if (!current.isEmpty() && chars + length > chunkChars) {
+                chunks.add(new Chunk(chunks.size(), current, chars));
+                current = new ArrayList<>();
+                chars = 0;
+            }
+            current.add(event);
+            chars += length;
+        }
+        if (!current.isEmpty()) {
+            chunks.add(new Chunk(chunks.size(), current, chars));
+        }
+        return chunks;
+    }
+
+    /**
+     * 日志的一段
+     */
+    record Chunk(int index, List<DispatchLogEvent> events, int chars) {
+
+        /**
+         * 时间范围，如 "08:05-10:30"
+         */
+        String label() {
+            String from = events.get(0).timeText();
+            String to = events.get(events.size() - 1).timeText();
+            return from.equals(to) ? from : from + "-" + to;
+        }
+
+        String text() {
+            StringBuilder sb = new StringBuilder(chars);
+            for (DispatchLogEvent event : events) {
+                sb.append(event.render()).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * 分段汇总进度
+     *
+     * @param phase     map（分段提取）或 reduce（汇总生成）
+     * @param completed 已完成的段数
+     * @param total     总段数
+     * @param range     刚完成的一段的时间范围
+     */
+    public record Progress(String phase, int completed, int total, String range) {
+    }
+}
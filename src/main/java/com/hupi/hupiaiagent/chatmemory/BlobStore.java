@@ -0,0 +1,143 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.crypto.SecureUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+
+/**
+ * 按内容寻址的大文本存储
+ * <p>
+ * 文本按 SHA-256 保存为 blobs/{前两位}/{hash}.txt，相同内容只保存一份。
+ * 对话记忆中引用同一天调度日志的消息只需保存哈希引用。
+ * 写入或复用时刷新文件修改时间；{@link #sweep} 删除不再被引用、且较长时间没有写入或复用的文件。
+ */
+@Slf4j
+public class BlobStore {
+
+    private static final String BLOB_SUFFIX = ".txt";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File blobDir;
+
+    // 最近读取的大文本缓存，避免同一份日志被反复读盘
+    private final LRUCache<String, String> readCache;
+
+    public BlobStore(File blobDir, int cacheCapacity) {
+        this.blobDir = blobDir;
+        this.readCache = CacheUtil.newLRUCache(cacheCapacity);
+        if (!blobDir.exists()) {
+            blobDir.mkdirs();
+        }
+    }
+
+    /**
+     * 保存文本并返回其哈希，内容已存在时不重复写入
+     */
+    public String put(String text) {
+        String hash = SecureUtil.sha256(text);
+        if (!touch(hash)) {
+            File file = getBlobFile(hash);
+            File parent = file.getParentFile();
+            if (!parent.exists()) {
+                parent.mkdirs();
+            }
+            File tmp = null;
+            try {
+                tmp = Files.createTempFile(parent.toPath(), hash, TMP_SUFFIX).toFile();
+                Files.writeString(tmp.toPath(), text, StandardCharsets.UTF_8);
+                synchronized (this) {
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                if (tmp != null) {
+                    tmp.delete();
+                }
+                throw new IllegalStateException("Failed to write blob " + hash, e);
+            }
+        }
+        readCache.put(hash, text);
+        return hash;
+    }
+
+    /**
+     * 哈希对应的文件存在时刷新其修改时间（表示仍在使用）并返回 true
+     */
+    private synchronized boolean touch(String hash) {
+        File file = getBlobFile(hash);
+        return file.exists() && file.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * 删除不在 live 中、且修改时间早于 cutoff 的文件，以及残留的临时文件
+     *
+     * @param live   仍被引用的哈希
+     * @param cutoff 修改时间不早于该时刻的文件保留（对应的消息可能还没有写入会话文件）
+     * @return 删除的文件数
+     */
+    public int sweep(Set<String> live, long cutoff) {
+        File[] shards = blobDir.listFiles(File::isDirectory);
+        if (shards == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File shard : shards) {
+            File[] files = shard.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                String hash = name.endsWith(BLOB_SUFFIX) ? name.substring(0, name.length() - BLOB_SUFFIX.length()) : null;
+                if (hash == null && !name.endsWith(TMP_SUFFIX) || hash != null && live.contains(hash)) {
+                    continue;
+                }
+                // 与 touch、put 的替换互斥，检查时间和删除之间不会被重新使用
+                synchronized (this) {
+                    if (file.lastModified() < cutoff && file.delete()) {
+                        deleted++;
+                        if (hash != null) {
+                            readCache.remove(hash);
+                        }
+                    }
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 按哈希读取文本，不存在时返回 null
+     */
+    public String get(String hash) {
+        String text = readCache.get(hash);
+        if (text != null) {
+            return text;
+        }
+        File file = getBlobFile(hash);
+        if (!file.exists()) {
+            log.warn("[BlobStore] blob not found: {}", hash);
+            return null;
+        }
+        try {
+            text = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+            readCache.put(hash, text);
+            return text;
+        } catch (IOException e) {
+            log.error("[BlobStore] failed to read blob {}", hash, e);
+            return null;
+        }
+    }
+
+    private File getBlobFile(String hash) {
+        return new File(new File(blobDir, hash.substring(0, 2)), hash + BLOB_SUFFIX);
+    }
+}
@@ -0,0 +1,357 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 带 LRU 缓存和异步回写的对话记忆
+ * <p>
+ * 热点会话保存在内存中，get 命中时不再读盘反序列化；
+ * add 只追加到内存并记录待写入消息，由后台线程按固定间隔批量写入底层存储。
+ * 缓存按消息文本字符数估算容量，超出后淘汰最久未访问且没有待写入数据的会话。
+ * 关闭时（应用停止）会同步刷写所有待写入的消息，此后的 add 直接写入底层存储。
+ * 类声明为 final：构造时即把 this 交给回写线程，不允许子类在未初始化完成时被访问。
+ */
+@Slf4j
+public final class CachingChatMemory implements ChatMemory, AutoCloseable {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final ChatMemory delegate;
+
+    private final long maxWeight;
+
+    private final int maxEntries;
+
+    // accessOrder = true，按访问顺序排列，头部为最久未访问的会话
+    private final LinkedHashMap<String, CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 按会话分段加锁，保证同一会话的读写与回写顺序一致
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+    private final ScheduledExecutorService flushExecutor;
+
+    private long currentWeight = 0;
+
+    private volatile boolean closed = false;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedMessages = new AtomicLong();
+    private final AtomicLong flushErrors = new AtomicLong();
+
+    /**
+     * @param delegate        底层持久化存储
+     * @param maxWeight       缓存容量（所有缓存会话的消息字符数之和）
+     * @param maxEntries      最多缓存的会话数
+     * @param flushIntervalMs 异步回写间隔（毫秒）
+     */
+    public CachingChatMemory(ChatMemory delegate, long maxWeight, int maxEntries, long flushIntervalMs) {
+        this.delegate = delegate;
+        this.maxWeight = maxWeight;
+        this.maxEntries = maxEntries;
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-memory-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            CacheEntry entry;
+            synchronized (cache) {
+                entry = cache.get(conversationId);
+            }
+            if (entry == null) {
+                // 未缓存的会话直接写入底层存储（追加写，开销只与本轮消息相关）
+                delegate.add(conversationId, messages);
+                return;
+            }
+            long added = weightOf(messages);
+            if (closed) {
+                // 关闭后改为直接写入：先在会话锁内写出尚未回写的消息（锁可重入），保证写入顺序
+                flush(conversationId);
+                delegate.add(conversationId, messages);
+                synchronized (cache) {
+                    entry.messages.addAll(messages);
+                    entry.weight += added;
+                    currentWeight += added;
+                }
+                return;
+            }
+            synchronized (cache) {
+                entry.messages.addAll(messages);
+                entry.pending.addAll(messages);
+                entry.weight += added;
+                currentWeight += added;
+            }
+        } finally {
+            lock.unlock();
+        }
+        evictIfNecessary();
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            synchronized (cache) {
+                CacheEntry entry = cache.get(conversationId);
+                if (entry != null) {
+                    hits.incrementAndGet();
+                    return new ArrayList<>(entry.messages);
+                }
+            }
+            misses.incrementAndGet();
+            List<Message> loaded = delegate.get(conversationId);
+            CacheEntry entry = new CacheEntry(new ArrayList<>(loaded), weightOf(loaded));
+            synchronized (cache) {
+                cache.put(conversationId, entry);
+                currentWeight += entry.weight;
+            }
+            return new ArrayList<>(loaded);
+        } finally {
+            lock.unlock();
+            evictIfNecessary();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            synchronized (cache) {
+                CacheEntry removed = cache.remove(conversationId);
+                if (removed != null) {
+                    currentWeight -= removed.weight;
+                }
+            }
+            delegate.clear(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 分页读取会话消息：已缓存时直接截取；未缓存时从底层存储按页读取，不放入缓存，
+     * 避免翻看长历史时把整个会话加载进内存
+     */
+    public List<Message> getPage(String conversationId, int offset, int limit) {
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            synchronized (cache) {
+                CacheEntry entry = cache.get(conversationId);
+                if (entry != null) {
+                    hits.incrementAndGet();
+                    return slice(entry.messages, offset, limit);
+                }
+            }
+            misses.incrementAndGet();
+            if (delegate instanceof FileBasedChatMemory fileBasedChatMemory) {
+                return fileBasedChatMemory.getPage(conversationId, offset, limit);
+            }
+            return slice(delegate.get(conversationId), offset, limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将所有待写入的消息刷写到底层存储；某个会话写入失败时记录日志并继续，失败的消息留待下次重试
+     */
+    public void flush() {
+        List<String> dirtyIds = new ArrayList<>();
+        synchronized (cache) {
+            for (Map.Entry<String, CacheEntry> e : cache.entrySet()) {
+                if (!e.getValue().pending.isEmpty()) {
+                    dirtyIds.add(e.getKey());
+                }
+            }
+        }
+        for (String conversationId : dirtyIds) {
+            try {
+                flush(conversationId);
+            } catch (RuntimeException e) {
+                log.error("[CachingChatMemory] failed to flush conversation {}, will retry", conversationId, e);
+            }
+        }
+    }
+
+    /**
+     * 刷写单个会话的待写入消息
+     */
+    public void flush(String conversationId) {
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            List<Message> batch;
+            synchronized (cache) {
+                CacheEntry entry = cache.get(conversationId);
+                if (entry == null || entry.pending.isEmpty()) {
+                    return;
+                }
+                batch = entry.pending;
+                entry.pending = new ArrayList<>();
+            }
+            try {
+                delegate.add(conversationId, batch);
+                flushes.incrementAndGet();
+                flushedMessages.addAndGet(batch.size());
+            } catch (RuntimeException e) {
+                // 写入失败时放回待写入队列，等待下次重试
+                flushErrors.incrementAndGet();
+                synchronized (cache) {
+                    CacheEntry entry = cache.get(conversationId);
+                    if (entry != null) {
+                        batch.addAll(entry.pending);
+                        entry.pending = batch;
+                    }
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 停止后台回写线程并同步刷写所有待写入数据
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        log.info("[CachingChatMemory] flushed on shutdown, stats={}", getStats());
+    }
+
+    public CacheStats getStats() {
+        synchronized (cache) {
+            int dirty = 0;
+            for (CacheEntry entry : cache.values()) {
+                if (!entry.pending.isEmpty()) {
+                    dirty++;
+                }
+            }
+            long hitCount = hits.get();
+            long missCount = misses.get();
+            long total = hitCount + missCount;
+            return new CacheStats(hitCount, missCount, total == 0 ? 0 : (double) hitCount / total,
+                    evictions.get(), flushes.get(), flushedMessages.get(), flushErrors.get(),
+                    cache.size(), dirty, currentWeight, maxWeight);
+        }
+    }
+
+    public ChatMemory getDelegate() {
+        return delegate;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("[CachingChatMemory] write-behind flush failed", e);
+        }
+    }
+
+    /**
+     * 淘汰超出容量的会话，有待写入数据的会话会保留到回写完成后再淘汰
+     */
+    private void evictIfNecessary() {
+        boolean needFlush = false;
+        synchronized (cache) {
+            Iterator<Map.Entry<String, CacheEntry>> it = cache.entrySet().iterator();
+            while ((currentWeight > maxWeight || cache.size() > maxEntries) && it.hasNext()) {
+                Map.Entry<String, CacheEntry> e = it.next();
+                if (!e.getValue().pending.isEmpty()) {
+                    needFlush = true;
+                    continue;
+                }
+                ReentrantLock lock = lockFor(e.getKey());
+                if (!lock.tryLock()) {
+                    continue;
+                }
+                try {
+                    it.remove();
+                    currentWeight -= e.getValue().weight;
+                    evictions.incrementAndGet();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        if (needFlush && !closed) {
+            flushExecutor.execute(this::flushQuietly);
+        }
+    }
+
+    private ReentrantLock lockFor(String conversationId) {
+        return locks.get(conversationId);
+    }
+
+    private static List<Message> slice(List<Message> messages, int offset, int limit) {
+        int from = Math.min(offset, messages.size());
+        return new ArrayList<>(messages.subList(from, Math.min(from + limit, messages.size())));
+    }
+
+    private static long weightOf(List<Message> messages) {
+        long weight = 0;
+        for (Message message : messages) {
+            String text = message.getText();
+            weight += text != null ? text.length() : 0;
+        }
+        return weight;
+    }
+
+    private static class CacheEntry {
+        private final List<Message> messages;
+        private List<Message> pending = new ArrayList<>();
+        private long weight;
+
+        private CacheEntry(List<Message> messages, long weight) {
+            this.messages = messages;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public record CacheStats(long hits, long misses, double hitRate, long evictions,
+                             long flushes, long flushedMessages, long flushErrors,
+                             int cachedConversations, int dirtyConversations,
+                             long weight, long maxWeight) {}
+}
@@ -0,0 +1,464 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import com.hupi.hupiaiagent.util.ThinkContentUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 对话历史全文索引
+ * <p>
+ * 以单条消息为文档建立常驻内存的倒排表：中日韩文字按相邻两字切分（bigram），同时索引每个单字，
+ * 单字查询（如"站"）也能命中较长的文字；字母和数字按连续串切分并转小写。索引通过 {@link ChatMemoryListener} 随消息写入增量更新，
+ * 启动后在后台线程扫描已有会话补建，补建完成前的查询结果可能不完整。
+ * <p>
+ * 查询按会话匹配：会话的消息合起来包含全部词项即命中（词项可以分布在不同消息中）。各词项的倒排表有序，
+ * 一遍归并即可按会话聚合，排序后只为返回的会话读取一条消息生成摘要片段。
+ * 每条消息只索引前 maxIndexedChars 个字符（整天的调度日志原文不必全部进索引）；
+ * 被清空的会话先做删除标记，删除的文档超过存活文档的一半时压缩，重新编号并释放倒排表、文档表中的条目。
+ */
+@Slf4j
+public class ChatHistoryIndex implements ChatMemoryListener {
+
+    private static final int SNIPPET_BEFORE = 30;
+
+    private static final int SNIPPET_AFTER = 60;
+
+    // 删除的文档至少这么多、且超过存活文档的该比例时压缩
+    private static final int COMPACT_MIN_DELETED = 1024;
+
+    private static final double COMPACT_RATIO = 0.5;
+
+    private final FileBasedChatMemory chatMemory;
+
+    private final int maxIndexedChars;
+
+    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+
+    // 词项 -> 按文档编号递增的倒排表
+    private final Map<String, IntList> postings = new HashMap<>();
+
+    // 文档编号 -> 所属会话、消息下标
+    private final List<String> docChatIds = new ArrayList<>();
+
+    private final IntList docMessageIndexes = new IntList();
+
+    private final BitSet deleted = new BitSet();
+
+    private int deletedCount;
+
+    private final Map<String, ChatState> chats = new HashMap<>();
+
+    private volatile boolean ready = false;
+
+    public ChatHistoryIndex(FileBasedChatMemory chatMemory, int maxIndexedChars) {
+        this.chatMemory = chatMemory;
+        this.maxIndexedChars = maxIndexedChars;
+    }
+
+    /**
+     * 在后台线程中为已有会话建立索引
+     */
+    public void buildAsync() {
+        Thread thread = new Thread(this::build, "chat-history-indexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 扫描所有会话建立索引，已索引的消息会被跳过
+     */
+    public void build() {
+        long start = System.currentTimeMillis();
+        int conversations = 0;
+        try {
+            for (ConversationManifest.ConversationMeta meta : chatMemory.listConversations()) {
+                index(meta.id(), 0, chatMemory.get(meta.id()));
+                conversations++;
+            }
+        } catch (Exception e) {
+            log.error("[ChatHistoryIndex] failed to build index", e);
+        } finally {
+            ready = true;
+        }
+        log.info("[ChatHistoryIndex] indexed {} conversations, {} messages, {} terms, cost={}ms",
+                conversations, docChatIds.size(), postings.size(), System.currentTimeMillis() - start);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void onAdd(String conversationId, int baseIndex, List<Message> messages) {
+        int indexed;
+        rwLock.readLock().lock();
+        try {
+            ChatState state = chats.get(conversationId);
+            indexed = state != null ? state.indexedCount : 0;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+        if (baseIndex > indexed) {
+            // 该会话之前的消息还没有被后台补建覆盖，先补上缺失的部分
+            index(conversationId, indexed, chatMemory.getPage(conversationId, indexed, baseIndex - indexed));
+        }
+        index(conversationId, baseIndex, messages);
+    }
+
+    @Override
+    public void onClear(String conversationId) {
+        rwLock.writeLock().lock();
+        try {
+            ChatState state = chats.remove(conversationId);
+            if (state != null) {
+                for (int i = 0; i < state.docs.size; i++) {
+                    deleted.set(state.docs.get(i));
+                }
+                deletedCount += state.docs.size;
+                int live = docChatIds.size() - deletedCount;
+                if (deletedCount >= COMPACT_MIN_DELETED && deletedCount > live * COMPACT_RATIO) {
+                    compact();
+                }
+            }
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 去掉已删除的文档并按原顺序重新编号，倒排表保持有序（调用方持有写锁）
+     */
+    private void compact() {
+        long start = System.currentTimeMillis();
+        int total = docChatIds.size();
+        int[] remap = new int[total];
+        int next = 0;
+        for (int doc = 0; doc < total; doc++) {
+            if (deleted.get(doc)) {
+                remap[doc] = -1;
+            } else {
+                // 新编号不大于原编号，可以原地前移
+                remap[doc] = next;
+                docChatIds.set(next, docChatIds.get(doc));
+                docMessageIndexes.set(next, docMessageIndexes.get(doc));
+                next++;
+            }
+        }
+        docChatIds.subList(next, total).clear();
+        docMessageIndexes.size = next;
+        postings.values().removeIf(list -> {
+            list.retainMapped(remap);
+            return list.size == 0;
+        });
+        for (ChatState state : chats.values()) {
+            state.docs.retainMapped(remap);
+        }
+        deleted.clear();
+        deletedCount = 0;
+        log.info("[ChatHistoryIndex] compacted {} -> {} messages, {} terms, cost={}ms",
+                total, next, postings.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 当前文档表的大小（含尚未压缩掉的删除文档）
+     */
+    int documentCount() {
+        rwLock.readLock().lock();
+        try {
+            return docChatIds.size();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索包含查询中所有词项的会话（词项可以出现在会话的不同消息中）；
+     * 有消息单独包含全部词项的会话排在前面，其次按命中的消息数、最近命中的时间排序
+     *
+     * @param query 查询词，多个词之间用空格分隔
+     * @param limit 最多返回的会话数
+     */
+    public SearchResult search(String query, int limit) {
+        long start = System.nanoTime();
+        Set<String> terms = new LinkedHashSet<>();
+        tokenize(query == null ? "" : query, false, terms::add);
+        if (terms.isEmpty()) {
+            return new SearchResult(List.of(), 0, ready, 0);
+        }
+        List<ChatHit> ranked;
+        int totalChats;
+        rwLock.readLock().lock();
+        try {
+            IntList[] lists = new IntList[terms.size()];
+            int i = 0;
+            for (String term : terms) {
+                IntList list = postings.get(term);
+                if (list == null) {
+                    return new SearchResult(List.of(), 0, ready, elapsedMillis(start));
+                }
+                lists[i++] = list;
+            }
+            // 按文档编号归并各词项的倒排表，逐条消息记下命中的词项，再按会话聚合
+            Map<String, ChatHit> byChat = new HashMap<>();
+            int[] positions = new int[lists.length];
+            while (true) {
+                int doc = Integer.MAX_VALUE;
+                for (int k = 0; k < lists.length; k++) {
+                    if (positions[k] < lists[k].size) {
+                        doc = Math.min(doc, lists[k].get(positions[k]));
+                    }
+                }
+                if (doc == Integer.MAX_VALUE) {
+                    break;
+                }
+                boolean live = !deleted.get(doc);
+                ChatHit hit = live ? byChat.computeIfAbsent(docChatIds.get(doc), ChatHit::new) : null;
+                int matchedTerms = 0;
+                for (int k = 0; k < lists.length; k++) {
+                    if (positions[k] < lists[k].size && lists[k].get(positions[k]) == doc) {
+                        positions[k]++;
+                        matchedTerms++;
+                        if (hit != null) {
+                            hit.terms.set(k);
+                        }
+                    }
+                }
+                if (hit != null) {
+                    hit.count++;
+                    hit.lastDoc = doc;
+                    if (matchedTerms == lists.length) {
+                        hit.fullCount++;
+                        hit.bestDoc = doc;
+                    }
+                }
+            }
+            byChat.values().removeIf(hit -> hit.terms.cardinality() < lists.length);
+            totalChats = byChat.size();
+            ranked = byChat.values().stream()
+                    .sorted(Comparator.comparingInt((ChatHit h) -> h.fullCount).reversed()
+                            .thenComparing(Comparator.comparingInt((ChatHit h) -> h.count).reversed())
+                            .thenComparing(Comparator.comparingInt((ChatHit h) -> h.lastDoc).reversed()))
+                    .limit(Math.max(1, limit))
+                    .toList();
+            for (ChatHit hit : ranked) {
+                hit.messageIndex = docMessageIndexes.get(hit.bestDoc >= 0 ? hit.bestDoc : hit.lastDoc);
+            }
+        } finally {
+            rwLock.readLock().unlock();
+        }
+
+        List<SearchHit> hits = new ArrayList<>(ranked.size());
+        for (ChatHit hit : ranked) {
+            ConversationManifest.ConversationMeta meta = chatMemory.getConversationMeta(hit.chatId);
+            List<Message> page = chatMemory.getPage(hit.chatId, hit.messageIndex, 1);
+            String snippet = page.isEmpty() ? "" : snippet(indexableText(page.get(0)), query, terms);
+            hits.add(new SearchHit(hit.chatId, meta != null ? meta.title() : "", meta != null ? meta.lastModified() : 0,
+                    hit.count, hit.messageIndex, snippet));
+        }
+        return new SearchResult(hits, totalChats, ready, elapsedMillis(start));
+    }
+
+    private void index(String conversationId, int baseIndex, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        // 在锁外完成分词，写锁只覆盖倒排表的更新
+        List<Set<String>> termSets = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            Set<String> terms = new LinkedHashSet<>();
+            tokenize(indexableText(message), true, terms::add);
+            termSets.add(terms);
+        }
+        rwLock.writeLock().lock();
+        try {
+            ChatState state = chats.computeIfAbsent(conversationId, ChatState::new);
+            for (int i = 0; i < messages.size(); i++) {
+                int messageIndex = baseIndex + i;
+                if (messageIndex < state.indexedCount) {
+                    continue;
+                }
+                int doc = docChatIds.size();
+                docChatIds.add(state.chatId);
+                docMessageIndexes.add(messageIndex);
+                state.docs.add(doc);
+                state.indexedCount = messageIndex + 1;
+                for (String term : termSets.get(i)) {
+                    postings.computeIfAbsent(term, k -> new IntList()).add(doc);
+                }
+            }
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    private String indexableText(Message message) {
+        String text = ThinkContentUtil.stripThink(message.getText());
+        if (text == null) {
+            return "";
+        }
+        return text.length() > maxIndexedChars ? text.substring(0, maxIndexedChars) : text;
+    }
+
+    /**
+     * 分词：中日韩文字取相邻两字，字母数字取连续串（小写）
+     *
+     * @param unigrams 是否另外输出每个中日韩单字（建索引时为 true；查询时只有单独一个字才按单字查）
+     */
+    static void tokenize(String text, boolean unigrams, Consumer<String> sink) {
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < n && isCjk(text.charAt(i))) {
+                    i++;
+                }
+                if (unigrams || i - start == 1) {
+                    for (int j = start; j < i; j++) {
+                        sink.accept(String.valueOf(text.charAt(j)));
+                    }
+                }
+                for (int j = start; j < i - 1; j++) {
+                    sink.accept(text.substring(j, j + 2));
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < n && Character.isLetterOrDigit(text.charAt(i)) && !isCjk(text.charAt(i))) {
+                    i++;
+                }
+                sink.accept(text.substring(start, i).toLowerCase(Locale.ROOT));
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 截取首个命中位置附近的文本作为摘要片段；优先匹配完整查询词，其次匹配任一词项
+     */
+    private static String snippet(String text, String query, Set<String> terms) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        int pos = -1;
+        int length = 0;
+        for (String part : query.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+            int found = part.isEmpty() ? -1 : lower.indexOf(part);
+            if (found >= 0 && (pos < 0 || found < pos)) {
+                pos = found;
+                length = part.length();
+            }
+        }
+        if (pos < 0) {
+            for (String term : terms) {
+                int found = lower.indexOf(term);
+                if (found >= 0 && (pos < 0 || found < pos)) {
+                    pos = found;
+                    length = term.length();
+                }
+            }
+        }
+        pos = Math.max(pos, 0);
+        int from = Math.max(0, pos - SNIPPET_BEFORE);
+        int to = Math.min(text.length(), pos + length + SNIPPET_AFTER);
+        String snippet = text.substring(from, to).replaceAll("\\s+", " ").trim();
+        return (from > 0 ? "…" : "") + snippet + (to < text.length() ? "…" : "");
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * 可增长的 int 数组，避免倒排表装箱
+     */
+    private static class IntList {
+        private int[] data = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int get(int index) {
+            return data[index];
+        }
+
+        void set(int index, int value) {
+            data[index] = value;
+        }
+
+        /**
+         * 按映射表改写每个值，映射为 -1 的去掉
+         */
+        void retainMapped(int[] mapping) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int mapped = mapping[data[i]];
+                if (mapped >= 0) {
+                    data[kept++] = mapped;
+                }
+            }
+            size = kept;
+        }
+    }
+
+    private static class ChatState {
+        private final String chatId;
+        private final IntList docs = new IntList();
+        private int indexedCount;
+
+        private ChatState(String chatId) {
+            this.chatId = chatId;
+        }
+    }
+
+    private static class ChatHit {
+        private final String chatId;
+        // 会话中出现过的词项（下标对应查询中的词项）
+        private final BitSet terms = new BitSet();
+        private int count;
+        private int fullCount;
+        private int lastDoc;
+        private int bestDoc = -1;
+        private int messageIndex;
+
+        private ChatHit(String chatId) {
+            this.chatId = chatId;
+        }
+    }
+
+    /**
+     * @param matchedMessages 会话中包含任一词项的消息数
+     * @param messageIndex    用于生成片段的消息下标：最近一条包含全部词项的消息，没有时为最近一条命中消息
+     */
+    public record SearchHit(String chatId, String title, long lastModified, int matchedMessages,
+                            int messageIndex, String snippet) {}
+
+    /**
+     * @param totalChats 命中的会话总数
+     * @param complete   启动后的索引补建是否已完成
+     */
+    public record SearchResult(List<SearchHit> hits, int totalChats, boolean complete, long tookMs) {}
+}
@@ -0,0 +1,18 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 会话写入监听器，在持久化完成后（持有该会话的锁）同步回调，实现应尽量轻量
+ */
+public interface ChatMemoryListener {
+
+    /**
+     * @param baseIndex 本次新增的第一条消息在会话中的下标
+     */
+    void onAdd(String conversationId, int baseIndex, List<Message> messages);
+
+    void onClear(String conversationId);
+}
@@ -0,0 +1,207 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 会话清单索引
+ * <p>
+ * 每个会话对应一个很小的 {chatId}.meta 文件（标题、最后修改时间、消息数），
+ * 随 add/clear 增量更新。历史列表直接从内存中的清单返回，不再反序列化每个会话。
+ * 启动后首次访问时加载所有 .meta 文件；没有 .meta 的旧会话会读取一次会话内容补建。
+ */
+@Slf4j
+public class ConversationManifest {
+
+    private static final String META_SUFFIX = ".meta";
+
+    private static final int META_VERSION = 1;
+
+    private static final int TITLE_MAX_LENGTH = 50;
+
+    private static final String DEFAULT_TITLE = "新对话";
+
+    private final File baseDir;
+
+    private final Map<String, ConversationMeta> entries = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded = false;
+
+    public ConversationManifest(File baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    /**
+     * 记录会话新增的消息
+     */
+    public void onAdd(String conversationId, List<Message> messages) {
+        ConversationMeta old = get(conversationId);
+        String title = old != null && !DEFAULT_TITLE.equals(old.title()) ? old.title() : extractTitle(messages);
+        int count = (old != null ? old.messageCount() : 0) + messages.size();
+        ConversationMeta meta = new ConversationMeta(conversationId, title, System.currentTimeMillis(), count);
+        entries.put(conversationId, meta);
+        writeMeta(meta);
+    }
+
+    /**
+     * 用完整消息列表重建某个会话的清单项（用于旧数据迁移）
+     */
+    public ConversationMeta rebuild(String conversationId, List<Message> messages, long lastModified) {
+        ConversationMeta meta = new ConversationMeta(conversationId, extractTitle(messages), lastModified, messages.size());
+        entries.put(conversationId, meta);
+        writeMeta(meta);
+        return meta;
+    }
+
+    public void onClear(String conversationId) {
+        entries.remove(conversationId);
+        File file = getMetaFile(conversationId);
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+
+    /**
+     * 获取会话清单项，清单尚未整体加载时从对应的 .meta 文件读取
+     */
+    public ConversationMeta get(String conversationId) {
+        ConversationMeta meta = entries.get(conversationId);
+        if (meta == null && !loaded) {
+            File file = getMetaFile(conversationId);
+            if (file.exists()) {
+                meta = readMeta(file);
+                if (meta != null) {
+                    entries.putIfAbsent(conversationId, meta);
+                }
+            }
+        }
+        return meta;
+    }
+
+    /**
+     * 按最后修改时间倒序返回会话清单
+     *
+     * @param loader 为没有 .meta 文件的旧会话加载完整消息
+     */
+    public List<ConversationMeta> list(Function<String, List<Message>> loader) {
+        ensureLoaded(loader);
+        List<ConversationMeta> result = new ArrayList<>();
+        for (ConversationMeta meta : entries.values()) {
+            if (meta.messageCount() > 0) {
+                result.add(meta);
+            }
+        }
+        result.sort(Comparator.comparingLong(ConversationMeta::lastModified).reversed());
+        return result;
+    }
+
+    private void ensureLoaded(Function<String, List<Message>> loader) {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            File[] metaFiles = baseDir.listFiles((dir, name) -> name.endsWith(META_SUFFIX));
+            if (metaFiles != null) {
+                for (File file : metaFiles) {
+                    ConversationMeta meta = readMeta(file);
+                    if (meta != null) {
+                        // 加载期间可能已有新的 add 写入更新的清单项，以内存为准
+                        entries.putIfAbsent(meta.id(), meta);
+                    }
+                }
+            }
+            // 兼容没有 .meta 的旧会话文件
+            File[] conversationFiles = baseDir.listFiles((dir, name) -> name.endsWith(".kryo"));
+            if (conversationFiles != null) {
+                int migrated = 0;
+                for (File file : conversationFiles) {
+                    String conversationId = file.getName().substring(0, file.getName().length() - ".kryo".length());
+                    if (!entries.containsKey(conversationId)) {
+                        try {
+                            rebuild(conversationId, loader.apply(conversationId), file.lastModified());
+                            migrated++;
+                        } catch (Exception e) {
+                            log.error("[ConversationManifest] failed to rebuild manifest for {}", conversationId, e);
+                        }
+                    }
+                }
+                if (migrated > 0) {
+                    log.info("[ConversationManifest] rebuilt {} manifest entries from legacy conversation files", migrated);
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private void writeMeta(ConversationMeta meta) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getMetaFile(meta.id()))))) {
+            out.writeByte(META_VERSION);
+            out.writeUTF(meta.title());
+            out.writeLong(meta.lastModified());
+            out.writeInt(meta.messageCount());
+        } catch (IOException e) {
+            log.error("[ConversationManifest] failed to write manifest for {}", meta.id(), e);
+        }
+    }
+
+    private ConversationMeta readMeta(File file) {
+        String conversationId = file.getName().substring(0, file.getName().length() - META_SUFFIX.length());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readByte();
+            if (version != META_VERSION) {
+                log.warn("[ConversationManifest] unsupported manifest version {} in {}", version, file.getName());
+                return null;
+            }
+            return new ConversationMeta(conversationId, in.readUTF(), in.readLong(), in.readInt());
+        } catch (IOException e) {
+            log.warn("[ConversationManifest] failed to read {}", file.getName(), e);
+            return null;
+        }
+    }
+
+    private File getMetaFile(String conversationId) {
+        return new File(baseDir, conversationId + META_SUFFIX);
+    }
+
+    /**
+     * 取第一条用户消息的前 50 个字符作为标题
+     */
+    static String extractTitle(List<Message> messages) {
+        if (messages != null) {
+            for (Message message : messages) {
+                if (message.getMessageType() == MessageType.USER) {
+                    String text = message.getText();
+                    if (text != null && !text.isEmpty()) {
+                        String title = text.length() > TITLE_MAX_LENGTH ? text.substring(0, TITLE_MAX_LENGTH) + "..." : text;
+                        return title.replace("\n", " ").trim();
+                    }
+                }
+            }
+        }
+        return DEFAULT_TITLE;
+    }
+
+    /**
+     * 会话清单项
+     */
+    public record ConversationMeta(String id, String title, long lastModified, int messageCount) {}
+}
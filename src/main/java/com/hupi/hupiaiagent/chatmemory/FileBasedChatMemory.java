@@ -1,85 +1,706 @@
 package com.hupi.hupiaiagent.chatmemory;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
+import lombok.extern.slf4j.Slf4j;
 import org.objenesis.strategy.StdInstantiatorStrategy;
 import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 /**
  * 基于文件持久化的对话记忆
+ * <p>
+ * 存储格式：
+ * - {chatId}.kryo     快照文件，保存压缩后的完整消息列表
+ * - {chatId}.kryo.seg 追加段文件，每次 add 只追加本轮新增的消息
+ * 两种文件都以 {@link MessageCodec} 的格式写入（带版本号的文件头 + 可选 LZ4 压缩的记录）；
+ * 旧版本直接写 Kryo 对象的文件仍可读取，首次写入时整体转换为新格式。
+ * - {chatId}.meta     会话清单项（标题、最后修改时间、消息数），见 {@link ConversationManifest}
+ * - blobs/            超过阈值的大消息正文按内容哈希单独保存，会话文件中只保存引用，见 {@link BlobStore}；
+ *                     会话清空后不再被引用的正文由 {@link #sweepBlobs} 清理
+ * 追加段累计到一定数量后进行一次压缩（合并进快照并删除追加段），
+ * 这样每轮对话的写入开销只与本轮新增消息相关，而不是整个会话长度。
+ * 压缩时先完整写出临时快照，再把追加段改名为 .kryo.seg.compacting，然后替换快照、删除改名后的追加段；
+ * 中途进程退出时，下次访问该会话先按残留文件补完或撤销这次压缩，追加段不会被重复回放。
+ * 追加段末尾写了一半的记录在回放时截掉，之后追加的记录仍可正常读取。
+ * 写入失败（如磁盘已满）时 add 抛出 UncheckedIOException，会话清单和监听器只在写入成功后更新。
+ * <p>
+ * 并发：Kryo 实例不是线程安全的，这里通过 Kryo 池为每次读写借出独立实例；
+ * 同一会话的读写通过分段锁串行化，不同会话可在多核上并行序列化。
  */
+@Slf4j
 public class FileBasedChatMemory implements ChatMemory {
 
+    /**
+     * 默认追加段数量达到该值时触发压缩
+     */
+    public static final int DEFAULT_COMPACT_THRESHOLD = 16;
+
+    private static final String SNAPSHOT_SUFFIX = ".kryo";
+
+    private static final String SEGMENT_SUFFIX = ".kryo.seg";
+
+    private static final String COMPACTING_SUFFIX = ".kryo.seg.compacting";
+
+    private static final String SNAPSHOT_TMP_SUFFIX = ".kryo.tmp";
+
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * 大消息正文被替换为该前缀 + 内容哈希后写入会话文件
+     */
+    private static final String BLOB_REF_PREFIX = "\0blob:";
+
+    /**
+     * 正文文件丢失或无法读取时返回的占位文本
+     */
+    static final String MISSING_BLOB_TEXT = "[原文缺失：正文 %s 不存在或无法读取]";
+
     private final String BASE_DIR;
-    private static final Kryo kryo = new Kryo();
 
-    static {
-        kryo.setRegistrationRequired(false);
-        // 设置实例化策略
-        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
-    }
+    // 仅用于读取旧格式文件；Kryo 不是线程安全的，使用对象池为每次读取借出独立实例
+    private static final Pool<Kryo> legacyKryoPool = new Pool<>(true, false, 64) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(false);
+            // 设置实例化策略
+            kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+            return kryo;
+        }
+    };
+
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+    private final int compactThreshold;
+
+    // 每个会话当前追加段中的记录数（启动后首次读取时校准）
+    private final Map<String, Integer> segmentCounts = new ConcurrentHashMap<>();
+
+    // 已确认为新格式的会话（启动后首次写入时检查一次）
+    private final Set<String> formatChecked = ConcurrentHashMap.newKeySet();
+
+    // 已检查过中断压缩残留文件的会话（启动后首次访问时检查一次）
+    private final Set<String> recovered = ConcurrentHashMap.newKeySet();
+
+    private final MessageCodec codec;
+
+    private final ConversationManifest manifest;
+
+    private final List<ChatMemoryListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final BlobStore blobStore;
+
+    // 正文字符数达到该值的消息保存到 BlobStore，0 表示不启用
+    private final int blobThresholdChars;
 
     // 构造对象时，指定文件保存目录
     public FileBasedChatMemory(String dir) {
+        this(dir, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    public FileBasedChatMemory(String dir, int compactThreshold) {
+        this(dir, compactThreshold, 0);
+    }
+
+    public FileBasedChatMemory(String dir, int compactThreshold, int blobThresholdChars) {
+        this(dir, compactThreshold, blobThresholdChars, true);
+    }
+
+    /**
+     * @param compress 是否对会话文件记录进行 LZ4 压缩
+     */
+    public FileBasedChatMemory(String dir, int compactThreshold, int blobThresholdChars, boolean compress) {
         this.BASE_DIR = dir;
+        this.codec = new MessageCodec(compress);
+        this.compactThreshold = Math.max(1, compactThreshold);
+        this.blobThresholdChars = blobThresholdChars;
         File baseDir = new File(dir);
         if (!baseDir.exists()) {
             baseDir.mkdirs();
         }
+        this.manifest = new ConversationManifest(baseDir);
+        this.blobStore = blobThresholdChars > 0 ? new BlobStore(new File(baseDir, "blobs"), 32) : null;
     }
 
     @Override
     public void add(String conversationId, List<Message> messages) {
-        List<Message> conversationMessages = getOrCreateConversation(conversationId);
-        conversationMessages.addAll(messages);
-        saveConversation(conversationId, conversationMessages);
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            recoverLocked(conversationId);
+            File snapshot = getConversationFile(conversationId);
+            if (!snapshot.exists()) {
+                // 新会话：本轮消息即为全部内容，直接写快照
+                writeSnapshot(conversationId, new ArrayList<>(messages));
+                segmentCounts.put(conversationId, 0);
+                formatChecked.add(conversationId);
+                manifest.onAdd(conversationId, messages);
+                notifyAdd(conversationId, 0, messages);
+                return;
+            }
+            if (formatChecked.add(conversationId) && !isCurrentFormat(conversationId)) {
+                // 旧格式文件：先整体转换，之后按新格式追加；转换失败时下次写入重新检查
+                try {
+                    rewriteLocked(conversationId);
+                } catch (RuntimeException e) {
+                    formatChecked.remove(conversationId);
+                    throw e;
+                }
+            }
+            ConversationManifest.ConversationMeta meta = manifest.get(conversationId);
+            if (meta == null) {
+                // 旧会话还没有清单项，先按完整内容补建一次
+                meta = manifest.rebuild(conversationId, getOrCreateConversation(conversationId), snapshot.lastModified());
+            }
+            // 写入失败时直接抛出，清单和监听器只反映已经落盘的消息
+            appendSegment(conversationId, messages);
+            manifest.onAdd(conversationId, messages);
+            notifyAdd(conversationId, meta.messageCount(), messages);
+            int count = segmentCounts.merge(conversationId, 1, Integer::sum);
+            if (count >= compactThreshold) {
+                try {
+                    compactLocked(conversationId);
+                } catch (UncheckedIOException e) {
+                    // 本轮消息已在追加段中，压缩失败只推迟到下次
+                    log.error("[FileBasedChatMemory] failed to compact {}, keeping segment", conversationId, e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public List<Message> get(String conversationId) {
-        return getOrCreateConversation(conversationId);
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            recoverLocked(conversationId);
+            return getOrCreateConversation(conversationId);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void clear(String conversationId) {
-        File file = getConversationFile(conversationId);
-        if (file.exists()) {
-            file.delete();
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            File file = getConversationFile(conversationId);
+            if (file.exists()) {
+                file.delete();
+            }
+            File segment = getSegmentFile(conversationId);
+            if (segment.exists()) {
+                segment.delete();
+            }
+            getCompactingFile(conversationId).delete();
+            getSnapshotTmpFile(conversationId).delete();
+            segmentCounts.remove(conversationId);
+            formatChecked.remove(conversationId);
+            manifest.onClear(conversationId);
+            for (ChatMemoryListener listener : listeners) {
+                try {
+                    listener.onClear(conversationId);
+                } catch (Exception e) {
+                    log.error("[FileBasedChatMemory] listener failed on clear {}", conversationId, e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 分页读取会话消息，只解码到本页最后一条为止，大消息正文也只还原本页内的
+     *
+     * @param offset 起始消息下标
+     * @param limit  最多返回的消息数
+     */
+    public List<Message> getPage(String conversationId, int offset, int limit) {
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            recoverLocked(conversationId);
+            File snapshot = getConversationFile(conversationId);
+            File segment = getSegmentFile(conversationId);
+            if (!MessageCodec.isCurrentFormat(snapshot)
+                    || (segment.exists() && segment.length() > 0 && !MessageCodec.isCurrentFormat(segment))) {
+                // 旧格式（或不存在）的会话按完整内容读取后截取
+                List<Message> all = getOrCreateConversation(conversationId);
+                return new ArrayList<>(all.subList(Math.min(offset, all.size()), Math.min(offset + limit, all.size())));
+            }
+            List<Message> page = new ArrayList<>(Math.min(limit, 256));
+            int end = offset + limit;
+            int[] index = {0};
+            Predicate<Message> visitor = message -> {
+                if (index[0] >= offset) {
+                    page.add(message);
+                }
+                return ++index[0] < end;
+            };
+            readPage(snapshot, visitor, index, end);
+            if (index[0] < end && segment.exists()) {
+                readPage(segment, visitor, index, end);
+            }
+            return hydrate(conversationId, page);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void readPage(File file, Predicate<Message> visitor, int[] index, int end) {
+        try (Input input = new Input(new FileInputStream(file))) {
+            codec.readHeader(input);
+            while (index[0] < end && codec.readRecord(input, visitor)) {
+                // 逐条记录读取，读满一页即停止
+            }
+        } catch (KryoException e) {
+            log.warn("[FileBasedChatMemory] truncated file {} while paging", file.getName());
+        } catch (IOException e) {
+            log.error("[FileBasedChatMemory] failed to read {} while paging", file.getName(), e);
         }
     }
 
+    /**
+     * 按最后修改时间倒序列出所有会话的清单项，不读取会话内容
+     */
+    public List<ConversationManifest.ConversationMeta> listConversations() {
+        return manifest.list(this::get);
+    }
+
+    /**
+     * 单个会话的清单项，不存在时返回 null
+     */
+    public ConversationManifest.ConversationMeta getConversationMeta(String conversationId) {
+        return manifest.get(conversationId);
+    }
+
+    /**
+     * 删除不再被任何会话引用的大消息正文
+     *
+     * @param graceMillis 最近这段时间内写入或复用过的正文保留，对应的消息可能还没有写入会话文件
+     * @return 删除的文件数
+     */
+    public int sweepBlobs(long graceMillis) {
+        if (blobStore == null) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        Set<String> live = new HashSet<>();
+        for (String conversationId : storedConversationIds()) {
+            ReentrantLock lock = locks.get(conversationId);
+            lock.lock();
+            try {
+                recoverLocked(conversationId);
+                for (Message message : readStored(conversationId)) {
+                    String text = message.getText();
+                    if (text != null && text.startsWith(BLOB_REF_PREFIX)) {
+                        live.add(text.substring(BLOB_REF_PREFIX.length()));
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        int deleted = blobStore.sweep(live, start - graceMillis);
+        log.info("[FileBasedChatMemory] blob sweep: {} referenced, {} deleted, cost={}ms",
+                live.size(), deleted, System.currentTimeMillis() - start);
+        return deleted;
+    }
+
+    /**
+     * 目录中有会话文件（含压缩中途留下的文件）的会话
+     */
+    private Set<String> storedConversationIds() {
+        Set<String> ids = new LinkedHashSet<>();
+        String[] names = new File(BASE_DIR).list();
+        if (names == null) {
+            return ids;
+        }
+        for (String name : names) {
+            for (String suffix : List.of(COMPACTING_SUFFIX, SEGMENT_SUFFIX, SNAPSHOT_TMP_SUFFIX, SNAPSHOT_SUFFIX)) {
+                if (name.endsWith(suffix)) {
+                    ids.add(name.substring(0, name.length() - suffix.length()));
+                    break;
+                }
+            }
+        }
+        return ids;
+    }
+
+    public void addListener(ChatMemoryListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 将追加段合并进快照文件
+     */
+    public void compact(String conversationId) {
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            recoverLocked(conversationId);
+            compactLocked(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void notifyAdd(String conversationId, int baseIndex, List<Message> messages) {
+        for (ChatMemoryListener listener : listeners) {
+            try {
+                listener.onAdd(conversationId, baseIndex, messages);
+            } catch (Exception e) {
+                // 监听器（如搜索索引）失败不影响消息持久化
+                log.error("[FileBasedChatMemory] listener failed on add {}", conversationId, e);
+            }
+        }
+    }
+
+    private void compactLocked(String conversationId) {
+        File segment = getSegmentFile(conversationId);
+        if (!segment.exists()) {
+            segmentCounts.put(conversationId, 0);
+            return;
+        }
+        rewriteLocked(conversationId);
+    }
+
+    /**
+     * 读取完整会话并重写为单个快照
+     * <p>
+     * 顺序：写临时快照 → 追加段改名为 compacting → 临时快照替换正式快照 → 删除 compacting。
+     * 任何一步之后中断，{@link #recoverLocked} 都能据残留文件判断新快照是否已生效。
+     */
+    private void rewriteLocked(String conversationId) {
+        // 直接使用保存的形式，大消息仍为引用，不必读出正文再重新计算哈希
+        List<Message> messages = readStored(conversationId);
+        File tmp = getSnapshotTmpFile(conversationId);
+        writeSnapshotTmp(conversationId, messages);
+        File segment = getSegmentFile(conversationId);
+        File compacting = getCompactingFile(conversationId);
+        try {
+            if (segment.exists()) {
+                Files.move(segment.toPath(), compacting.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(tmp.toPath(), getConversationFile(conversationId).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("[FileBasedChatMemory] failed to compact {}, keeping segment", conversationId, e);
+            // 快照未替换：撤销改名，仍以旧快照 + 追加段为准
+            if (compacting.exists() && !segment.exists()) {
+                compacting.renameTo(segment);
+            }
+            tmp.delete();
+            return;
+        }
+        compacting.delete();
+        segmentCounts.put(conversationId, 0);
+        log.debug("[FileBasedChatMemory] compacted conversation {}, messages={}", conversationId, messages.size());
+    }
+
+    /**
+     * 处理上次压缩中断留下的文件：
+     * compacting 和临时快照都在——新快照已完整写出但未替换，补完替换；
+     * 只有 compacting——快照已替换，其内容已包含在快照中，直接删除；
+     * 只有临时快照——写到一半就中断，删除
+     */
+    private void recoverLocked(String conversationId) {
+        if (!recovered.add(conversationId)) {
+            return;
+        }
+        File compacting = getCompactingFile(conversationId);
+        File tmp = getSnapshotTmpFile(conversationId);
+        try {
+            if (compacting.exists()) {
+                if (tmp.exists()) {
+                    Files.move(tmp.toPath(), getConversationFile(conversationId).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                Files.delete(compacting.toPath());
+                log.warn("[FileBasedChatMemory] recovered interrupted compaction of {}", conversationId);
+            } else if (tmp.exists()) {
+                Files.delete(tmp.toPath());
+            }
+        } catch (IOException e) {
+            recovered.remove(conversationId);
+            log.error("[FileBasedChatMemory] failed to recover interrupted compaction of {}", conversationId, e);
+        }
+    }
+
+    private boolean isCurrentFormat(String conversationId) {
+        File segment = getSegmentFile(conversationId);
+        return MessageCodec.isCurrentFormat(getConversationFile(conversationId))
+                && (!segment.exists() || segment.length() == 0 || MessageCodec.isCurrentFormat(segment));
+    }
+
     private List<Message> getOrCreateConversation(String conversationId) {
-        File file = getConversationFile(conversationId);
+        return hydrate(conversationId, readStored(conversationId));
+    }
+
+    /**
+     * 快照 + 追加段中保存的消息，大消息正文仍为 BlobStore 引用
+     */
+    private List<Message> readStored(String conversationId) {
+        List<Message> messages = readSnapshot(getConversationFile(conversationId));
+        File segment = getSegmentFile(conversationId);
+        if (segment.exists()) {
+            segmentCounts.put(conversationId, replaySegment(segment, conversationId, messages));
+        }
+        return messages;
+    }
+
+    private List<Message> readSnapshot(File file) {
         List<Message> messages = new ArrayList<>();
-        if (file.exists()) {
-            try (Input input = new Input(new FileInputStream(file))) {
-                messages = kryo.readObject(input, ArrayList.class);
-            } catch (IOException e) {
-                e.printStackTrace();
+        if (!file.exists()) {
+            return messages;
+        }
+        if (!MessageCodec.isCurrentFormat(file)) {
+            return readLegacy(file);
+        }
+        try (Input input = new Input(new FileInputStream(file))) {
+            codec.readHeader(input);
+            List<Message> record = codec.readRecord(input);
+            if (record != null) {
+                messages.addAll(record);
             }
+        } catch (IOException e) {
+            log.error("[FileBasedChatMemory] failed to read snapshot {}", file.getName(), e);
         }
         return messages;
     }
 
-    private void saveConversation(String conversationId, List<Message> messages) {
-        File file = getConversationFile(conversationId);
-        try (Output output = new Output(new FileOutputStream(file))) {
-            kryo.writeObject(output, messages);
+    /**
+     * 依次回放追加段中的记录，返回成功回放的记录数
+     */
+    private int replaySegment(File segment, String conversationId, List<Message> messages) {
+        if (segment.length() == 0) {
+            return 0;
+        }
+        if (!MessageCodec.isCurrentFormat(segment)) {
+            return replayLegacySegment(segment, conversationId, messages);
+        }
+        int records = 0;
+        long validLength = 0;
+        boolean truncated = false;
+        try (Input input = new Input(new FileInputStream(segment))) {
+            codec.readHeader(input);
+            validLength = input.total();
+            List<Message> record;
+            while ((record = codec.readRecord(input)) != null) {
+                messages.addAll(record);
+                records++;
+                validLength = input.total();
+            }
+        } catch (KryoException e) {
+            // 末尾记录可能因进程中断而写了一半，忽略不完整的记录
+            log.warn("[FileBasedChatMemory] truncated segment for {}, replayed {} records", conversationId, records);
+            truncated = validLength > 0;
+        } catch (IOException e) {
+            log.error("[FileBasedChatMemory] failed to read segment for {}", conversationId, e);
+        }
+        if (truncated) {
+            // 截掉不完整的尾部，后续追加的记录才能被正常读取
+            try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+                file.setLength(validLength);
+            } catch (IOException e) {
+                log.error("[FileBasedChatMemory] failed to truncate segment for {}", conversationId, e);
+            }
+        }
+        return records;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Message> readLegacy(File file) {
+        Kryo kryo = legacyKryoPool.obtain();
+        try (Input input = new Input(new FileInputStream(file))) {
+            return kryo.readObject(input, ArrayList.class);
+        } catch (IOException e) {
+            log.error("[FileBasedChatMemory] failed to read legacy file {}", file.getName(), e);
+            return new ArrayList<>();
+        } finally {
+            legacyKryoPool.free(kryo);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int replayLegacySegment(File segment, String conversationId, List<Message> messages) {
+        int records = 0;
+        Kryo kryo = legacyKryoPool.obtain();
+        try (Input input = new Input(new FileInputStream(segment))) {
+            while (!input.end()) {
+                messages.addAll(kryo.readObject(input, ArrayList.class));
+                records++;
+            }
+        } catch (KryoException e) {
+            log.warn("[FileBasedChatMemory] truncated segment for {}, replayed {} records", conversationId, records);
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("[FileBasedChatMemory] failed to read legacy segment for {}", conversationId, e);
+        } finally {
+            legacyKryoPool.free(kryo);
         }
+        return records;
+    }
+
+    /**
+     * 追加一条记录；写入失败时截回写入前的长度（不留下半条记录）并抛出 UncheckedIOException
+     */
+    private void appendSegment(String conversationId, List<Message> messages) {
+        File segment = getSegmentFile(conversationId);
+        long previousLength = segment.exists() ? segment.length() : 0;
+        boolean newFile = previousLength == 0;
+        byte[] record = codec.encodeRecord(dehydrate(messages));
+        try (FileOutputStream output = new FileOutputStream(segment, true)) {
+            if (newFile) {
+                output.write(concat(codec.header(), record));
+            } else {
+                output.write(record);
+            }
+        } catch (IOException e) {
+            if (segment.isFile()) {
+                try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+                    file.setLength(previousLength);
+                } catch (IOException ex) {
+                    log.error("[FileBasedChatMemory] failed to roll back segment for {}", conversationId, ex);
+                }
+            }
+            throw new UncheckedIOException("Failed to append messages to " + segment.getName(), e);
+        }
+    }
+
+    private void writeSnapshot(String conversationId, List<Message> messages) {
+        writeSnapshotTmp(conversationId, messages);
+        File tmp = getSnapshotTmpFile(conversationId);
+        try {
+            // 先写临时文件再替换，避免写入过程中断导致快照损坏
+            Files.move(tmp.toPath(), getConversationFile(conversationId).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+            throw new UncheckedIOException("Failed to write snapshot for " + conversationId, e);
+        }
+    }
+
+    /**
+     * 完整写出临时快照并刷到磁盘，失败时删除临时文件并抛出 UncheckedIOException
+     */
+    private void writeSnapshotTmp(String conversationId, List<Message> messages) {
+        File tmp = getSnapshotTmpFile(conversationId);
+        try (FileOutputStream output = new FileOutputStream(tmp)) {
+            output.write(concat(codec.header(), codec.encodeRecord(dehydrate(messages))));
+            output.getFD().sync();
+        } catch (IOException e) {
+            tmp.delete();
+            throw new UncheckedIOException("Failed to write snapshot for " + conversationId, e);
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /**
+     * 将大消息正文替换为 BlobStore 引用，返回用于写入的新列表
+     */
+    private ArrayList<Message> dehydrate(List<Message> messages) {
+        ArrayList<Message> result = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            String text = message.getText();
+            if (blobStore == null || text == null || text.length() < blobThresholdChars
+                    || !(message instanceof UserMessage || message instanceof AssistantMessage || message instanceof SystemMessage)) {
+                result.add(message);
+                continue;
+            }
+            // 哈希总是按当前正文计算：调用方拿到的消息可能被复制并改写过正文
+            result.add(withText(message, BLOB_REF_PREFIX + blobStore.put(text)));
+        }
+        return result;
+    }
+
+    /**
+     * 将 BlobStore 引用还原为原始正文；正文丢失时记录错误并以醒目的占位文本代替，不静默置空
+     */
+    private List<Message> hydrate(String conversationId, List<Message> messages) {
+        if (blobStore == null) {
+            return messages;
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            String text = message.getText();
+            if (text != null && text.startsWith(BLOB_REF_PREFIX)) {
+                String hash = text.substring(BLOB_REF_PREFIX.length());
+                String content = blobStore.get(hash);
+                if (content == null) {
+                    log.error("[FileBasedChatMemory] blob {} of message {} in conversation {} is missing", hash, i, conversationId);
+                    content = MISSING_BLOB_TEXT.formatted(hash);
+                }
+                messages.set(i, withText(message, content));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 复制消息并替换正文，保留元数据、媒体和工具调用
+     */
+    private static Message withText(Message message, String text) {
+        Map<String, Object> metadata = new HashMap<>(message.getMetadata());
+        if (message instanceof UserMessage userMessage) {
+            return UserMessage.builder().text(text).metadata(metadata).media(userMessage.getMedia()).build();
+        }
+        if (message instanceof AssistantMessage assistantMessage) {
+            return new AssistantMessage(text, metadata, assistantMessage.getToolCalls(), assistantMessage.getMedia());
+        }
+        return SystemMessage.builder().text(text).metadata(metadata).build();
     }
 
     private File getConversationFile(String conversationId) {
-        return new File(BASE_DIR, conversationId + ".kryo");
+        return new File(BASE_DIR, conversationId + SNAPSHOT_SUFFIX);
+    }
+
+    private File getSegmentFile(String conversationId) {
+        return new File(BASE_DIR, conversationId + SEGMENT_SUFFIX);
+    }
+
+    private File getCompactingFile(String conversationId) {
+        return new File(BASE_DIR, conversationId + COMPACTING_SUFFIX);
+    }
+
+    private File getSnapshotTmpFile(String conversationId) {
+        return new File(BASE_DIR, conversationId + SNAPSHOT_TMP_SUFFIX);
     }
 }
@@ -0,0 +1,455 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.ai.chat.messages.AbstractMessage;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.content.Media;
+import org.springframework.util.MimeType;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 对话记忆文件的二进制编码
+ * <p>
+ * 文件格式：4 字节魔数 + 1 字节格式版本，之后是若干条记录；
+ * 每条记录 = 1 字节标志（0 未压缩 / 1 LZ4）+ 原始长度 + 存储长度（均为变长整数）+ 数据。
+ * 记录数据由 Kryo 写出，四种消息类型都注册了固定编号和专用序列化器，只写入正文、元数据、
+ * 工具调用和媒体等字段，不写类名，也不依赖 Spring AI 消息类的内部字段，升级 Spring AI 后仍可读取。
+ * 元数据值支持字符串、数值、布尔、列表和 Map，其他类型按字符串保存。
+ */
+public class MessageCodec {
+
+    /**
+     * 格式版本，读取到更高版本的文件时拒绝解析
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final byte[] MAGIC = {(byte) 0xC7, 'H', 'C', 'M'};
+
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+
+    private static final byte FLAG_RAW = 0;
+
+    private static final byte FLAG_LZ4 = 1;
+
+    // 小于该字节数的记录不压缩，压缩收益抵不上开销
+    private static final int COMPRESS_MIN_BYTES = 256;
+
+    private static final LZ4Compressor LZ4_COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+
+    private static final LZ4FastDecompressor LZ4_DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    // 注册编号写入文件，已发布的编号不能修改
+    private static final int ID_USER = 100;
+    private static final int ID_ASSISTANT = 101;
+    private static final int ID_SYSTEM = 102;
+    private static final int ID_TOOL_RESPONSE = 103;
+
+    // 元数据值类型标记
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_STRING = 1;
+    private static final byte VALUE_LONG = 2;
+    private static final byte VALUE_DOUBLE = 3;
+    private static final byte VALUE_BOOLEAN = 4;
+    private static final byte VALUE_LIST = 5;
+    private static final byte VALUE_MAP = 6;
+    private static final byte VALUE_INT = 7;
+
+    // 媒体数据类型标记
+    private static final byte MEDIA_BYTES = 0;
+    private static final byte MEDIA_STRING = 1;
+
+    // 消息构造时会自动写入该元数据，不需要保存
+    private static final String MESSAGE_TYPE_KEY = AbstractMessage.MESSAGE_TYPE;
+
+    private static final Pool<Kryo> kryoPool = new Pool<>(true, false, 64) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(true);
+            kryo.register(UserMessage.class, new UserMessageSerializer(), ID_USER);
+            kryo.register(AssistantMessage.class, new AssistantMessageSerializer(), ID_ASSISTANT);
+            kryo.register(SystemMessage.class, new SystemMessageSerializer(), ID_SYSTEM);
+            kryo.register(ToolResponseMessage.class, new ToolResponseMessageSerializer(), ID_TOOL_RESPONSE);
+            return kryo;
+        }
+    };
+
+    private final boolean compress;
+
+    /**
+     * @param compress 是否对记录进行 LZ4 块压缩（读取时两种记录都支持）
+     */
+    public MessageCodec(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * 文件是否为当前格式（以魔数开头），旧版本直接写 Kryo 对象的文件返回 false
+     */
+    public static boolean isCurrentFormat(File file) {
+        byte[] header = new byte[MAGIC.length];
+        try (InputStream in = new FileInputStream(file)) {
+            return in.readNBytes(header, 0, header.length) == header.length && Arrays.equals(header, MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 文件头：魔数 + 格式版本
+     */
+    public byte[] header() {
+        byte[] header = Arrays.copyOf(MAGIC, HEADER_LENGTH);
+        header[MAGIC.length] = FORMAT_VERSION;
+        return header;
+    }
+
+    /**
+     * 读取并校验文件头
+     */
+    public void readHeader(Input input) {
+        byte[] magic = input.readBytes(MAGIC.length);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IllegalStateException("Not a chat memory file");
+        }
+        int version = input.readByte();
+        if (version > FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported chat memory format version " + version);
+        }
+    }
+
+    /**
+     * 将一批消息编码为一条记录
+     */
+    public byte[] encodeRecord(List<Message> messages) {
+        byte[] raw;
+        Kryo kryo = kryoPool.obtain();
+        try (Output output = new Output(1024, -1)) {
+            output.writeVarInt(messages.size(), true);
+            for (Message message : messages) {
+                kryo.writeClassAndObject(output, normalize(message));
+            }
+            raw = output.toBytes();
+        } finally {
+            kryoPool.free(kryo);
+        }
+        byte flag = FLAG_RAW;
+        byte[] stored = raw;
+        if (compress && raw.length >= COMPRESS_MIN_BYTES) {
+            byte[] compressed = LZ4_COMPRESSOR.compress(raw);
+            if (compressed.length < raw.length) {
+                flag = FLAG_LZ4;
+                stored = compressed;
+            }
+        }
+        try (Output frame = new Output(stored.length + 11)) {
+            frame.writeByte(flag);
+            frame.writeVarInt(raw.length, true);
+            frame.writeVarInt(stored.length, true);
+            frame.writeBytes(stored);
+            return frame.toBytes();
+        }
+    }
+
+    /**
+     * 读取下一条记录，已到文件末尾时返回 null；记录不完整时抛出 KryoException
+     */
+    public List<Message> readRecord(Input input) {
+        List<Message> messages = new ArrayList<>();
+        return readRecord(input, messages::add) ? messages : null;
+    }
+
+    /**
+     * 逐条解码下一条记录中的消息，visitor 返回 false 时不再解码该记录的剩余消息；
+     * 已到文件末尾时返回 false
+     */
+    public boolean readRecord(Input input, Predicate<Message> visitor) {
+        if (input.end()) {
+            return false;
+        }
+        byte flag = input.readByte();
+        int rawLength = input.readVarInt(true);
+        int storedLength = input.readVarInt(true);
+        byte[] stored = input.readBytes(storedLength);
+        byte[] raw = switch (flag) {
+            case FLAG_RAW -> stored;
+            case FLAG_LZ4 -> LZ4_DECOMPRESSOR.decompress(stored, rawLength);
+            default -> throw new IllegalStateException("Unknown record flag " + flag);
+        };
+        Kryo kryo = kryoPool.obtain();
+        try (Input recordInput = new Input(raw)) {
+            int count = recordInput.readVarInt(true);
+            for (int i = 0; i < count; i++) {
+                if (!visitor.test((Message) kryo.readClassAndObject(recordInput))) {
+                    break;
+                }
+            }
+            return true;
+        } finally {
+            kryoPool.free(kryo);
+        }
+    }
+
+    /**
+     * 子类或其他实现的消息按类型转换为对应的注册类型
+     */
+    private static Message normalize(Message message) {
+        Class<?> type = message.getClass();
+        if (type == UserMessage.class || type == AssistantMessage.class
+                || type == SystemMessage.class || type == ToolResponseMessage.class) {
+            return message;
+        }
+        Map<String, Object> metadata = new HashMap<>(message.getMetadata());
+        if (message instanceof UserMessage userMessage) {
+            return UserMessage.builder().text(userMessage.getText()).metadata(metadata).media(userMessage.getMedia()).build();
+        }
+        if (message instanceof AssistantMessage assistantMessage) {
+            return new AssistantMessage(assistantMessage.getText(), metadata,
+                    assistantMessage.getToolCalls(), assistantMessage.getMedia());
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            return new ToolResponseMessage(toolResponseMessage.getResponses(), metadata);
+        }
+        String text = message.getText() == null ? "" : message.getText();
+        return switch (message.getMessageType()) {
+            case USER -> UserMessage.builder().text(text).metadata(metadata).build();
+            case ASSISTANT -> new AssistantMessage(text, metadata);
+            case SYSTEM -> SystemMessage.builder().text(text).metadata(metadata).build();
+            case TOOL -> throw new IllegalArgumentException("Unsupported tool message type " + type.getName());
+        };
+    }
+
+    private static void writeMetadata(Output output, Map<String, Object> metadata) {
+        int size = metadata.containsKey(MESSAGE_TYPE_KEY) ? metadata.size() - 1 : metadata.size();
+        output.writeVarInt(size, true);
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            if (MESSAGE_TYPE_KEY.equals(entry.getKey())) {
+                continue;
+            }
+            output.writeString(entry.getKey());
+            writeValue(output, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> readMetadata(Input input) {
+        int size = input.readVarInt(true);
+        Map<String, Object> metadata = new HashMap<>(Math.max(4, size * 2));
+        for (int i = 0; i < size; i++) {
+            metadata.put(input.readString(), readValue(input));
+        }
+        return metadata;
+    }
+
+    private static void writeValue(Output output, Object value) {
+        if (value == null) {
+            output.writeByte(VALUE_NULL);
+        } else if (value instanceof Integer i) {
+            output.writeByte(VALUE_INT);
+            output.writeVarInt(i, false);
+        } else if (value instanceof Long || value instanceof Short || value instanceof Byte) {
+            output.writeByte(VALUE_LONG);
+            output.writeVarLong(((Number) value).longValue(), false);
+        } else if (value instanceof Double || value instanceof Float) {
+            output.writeByte(VALUE_DOUBLE);
+            output.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean b) {
+            output.writeByte(VALUE_BOOLEAN);
+            output.writeBoolean(b);
+        } else if (value instanceof List<?> list) {
+            output.writeByte(VALUE_LIST);
+            output.writeVarInt(list.size(), true);
+            for (Object item : list) {
+                writeValue(output, item);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            output.writeByte(VALUE_MAP);
+            output.writeVarInt(map.size(), true);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                output.writeString(String.valueOf(entry.getKey()));
+                writeValue(output, entry.getValue());
+            }
+        } else {
+            output.writeByte(VALUE_STRING);
+            output.writeString(value instanceof Enum<?> e ? e.name() : value.toString());
+        }
+    }
+
+    private static Object readValue(Input input) {
+        byte type = input.readByte();
+        switch (type) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return input.readString();
+            case VALUE_INT:
+                return input.readVarInt(false);
+            case VALUE_LONG:
+                return input.readVarLong(false);
+            case VALUE_DOUBLE:
+                return input.readDouble();
+            case VALUE_BOOLEAN:
+                return input.readBoolean();
+            case VALUE_LIST: {
+                int size = input.readVarInt(true);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(input));
+                }
+                return list;
+            }
+            case VALUE_MAP: {
+                int size = input.readVarInt(true);
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(input.readString(), readValue(input));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalStateException("Unknown metadata value type " + type);
+        }
+    }
+
+    private static void writeMedia(Output output, List<Media> media) {
+        output.writeVarInt(media.size(), true);
+        for (Media item : media) {
+            output.writeString(item.getMimeType().toString());
+            output.writeString(item.getId());
+            output.writeString(item.getName());
+            if (item.getData() instanceof byte[] bytes) {
+                output.writeByte(MEDIA_BYTES);
+                output.writeVarInt(bytes.length, true);
+                output.writeBytes(bytes);
+            } else {
+                output.writeByte(MEDIA_STRING);
+                output.writeString(String.valueOf(item.getData()));
+            }
+        }
+    }
+
+    private static List<Media> readMedia(Input input) {
+        int size = input.readVarInt(true);
+        List<Media> media = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Media.Builder builder = Media.builder()
+                    .mimeType(MimeType.valueOf(input.readString()))
+                    .id(input.readString())
+                    .name(input.readString());
+            if (input.readByte() == MEDIA_BYTES) {
+                builder.data(input.readBytes(input.readVarInt(true)));
+            } else {
+                builder.data(input.readString());
+            }
+            media.add(builder.build());
+        }
+        return media;
+    }
+
+    private static class UserMessageSerializer extends Serializer<UserMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, UserMessage message) {
+            output.writeString(message.getText());
+            writeMetadata(output, message.getMetadata());
+            writeMedia(output, message.getMedia());
+        }
+
+        @Override
+        public UserMessage read(Kryo kryo, Input input, Class<? extends UserMessage> type) {
+            String text = input.readString();
+            Map<String, Object> metadata = readMetadata(input);
+            List<Media> media = readMedia(input);
+            return UserMessage.builder().text(text == null ? "" : text).metadata(metadata).media(media).build();
+        }
+    }
+
+    private static class AssistantMessageSerializer extends Serializer<AssistantMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, AssistantMessage message) {
+            output.writeString(message.getText());
+            writeMetadata(output, message.getMetadata());
+            List<AssistantMessage.ToolCall> toolCalls = message.getToolCalls();
+            output.writeVarInt(toolCalls.size(), true);
+            for (AssistantMessage.ToolCall toolCall : toolCalls) {
+                output.writeString(toolCall.id());
+                output.writeString(toolCall.type());
+                output.writeString(toolCall.name());
+                output.writeString(toolCall.arguments());
+            }
+            writeMedia(output, message.getMedia());
+        }
+
+        @Override
+        public AssistantMessage read(Kryo kryo, Input input, Class<? extends AssistantMessage> type) {
+            String text = input.readString();
+            Map<String, Object> metadata = readMetadata(input);
+            int toolCallCount = input.readVarInt(true);
+            List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(toolCallCount);
+            for (int i = 0; i < toolCallCount; i++) {
+                toolCalls.add(new AssistantMessage.ToolCall(
+                        input.readString(), input.readString(), input.readString(), input.readString()));
+            }
+            List<Media> media = readMedia(input);
+            return new AssistantMessage(text, metadata, toolCalls, media);
+        }
+    }
+
+    private static class SystemMessageSerializer extends Serializer<SystemMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, SystemMessage message) {
+            output.writeString(message.getText());
+            writeMetadata(output, message.getMetadata());
+        }
+
+        @Override
+        public SystemMessage read(Kryo kryo, Input input, Class<? extends SystemMessage> type) {
+            String text = input.readString();
+            return SystemMessage.builder().text(text == null ? "" : text).metadata(readMetadata(input)).build();
+        }
+    }
+
+    private static class ToolResponseMessageSerializer extends Serializer<ToolResponseMessage> {
+        @Override
+        public void write(Kryo kryo, Output output, ToolResponseMessage message) {
+            List<ToolResponseMessage.ToolResponse> responses = message.getResponses();
+            output.writeVarInt(responses.size(), true);
+            for (ToolResponseMessage.ToolResponse response : responses) {
+                output.writeString(response.id());
+                output.writeString(response.name());
+                output.writeString(response.responseData());
+            }
+            writeMetadata(output, message.getMetadata());
+        }
+
+        @Override
+        public ToolResponseMessage read(Kryo kryo, Input input, Class<? extends ToolResponseMessage> type) {
+            int size = input.readVarInt(true);
+            List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                responses.add(new ToolResponseMessage.ToolResponse(input.readString(), input.readString(), input.readString()));
+            }
+            return new ToolResponseMessage(responses, readMetadata(input));
+        }
+    }
+}
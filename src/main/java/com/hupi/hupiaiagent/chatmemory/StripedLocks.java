@@ -0,0 +1,28 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按会话 ID 分段的锁
+ * 同一会话总是映射到同一把锁（保证读-改-写线性一致），不同会话大概率落在不同的锁上可以并行执行
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    public StripedLocks(int stripes) {
+        // 取不小于 stripes 的 2 的幂，便于按位取模
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public ReentrantLock get(String key) {
+        int h = key.hashCode();
+        // 扰动高位，避免相似 ID 集中在同一段
+        h ^= (h >>> 16);
+        return locks[h & (locks.length - 1)];
+    }
+}
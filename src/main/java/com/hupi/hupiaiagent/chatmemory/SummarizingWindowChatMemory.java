@@ -0,0 +1,310 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import cn.hutool.core.io.FileUtil;
+import com.hupi.hupiaiagent.util.ThinkContentUtil;
+import com.hupi.hupiaiagent.util.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 滑动窗口 + 滚动摘要的对话记忆
+ * <p>
+ * get 只返回最近 N 轮、且总 token 数不超过预算的消息；更早的消息由后台线程调用模型
+ * 合并进一份滚动摘要，以系统消息的形式放在窗口之前。最新一轮总是保留，单独超出预算时截断其中较长的消息（保留开头）。
+ * 摘要生成不在请求路径上：窗口滑出的消息在摘要完成前会暂时只以旧摘要的形式出现。
+ * 完整的历史仍然保存在底层存储中，历史记录查看不受影响。
+ */
+@Slf4j
+public class SummarizingWindowChatMemory implements ChatMemory, AutoCloseable {
+
+    private static final String SUMMARY_SUFFIX = ".summary";
+
+    private static final String SUMMARY_PREFIX = "以下是此前对话的摘要（更早的消息已省略）：\n";
+
+    private static final String TRUNCATED_MARK = "…（已截断）";
+
+    private static final String SUMMARY_SYSTEM_PROMPT = """
+            你是对话摘要助手。请将"已有摘要"和"新增对话"合并为一份新的摘要，要求：
+            1) 保留日期、单位、设备/线路名称、事件、处理状态以及未完成事项等关键信息，实体名称必须原样保留，不得编造；
+            2) 删除寒暄、重复和格式说明内容，只输出摘要正文；
+            3) 摘要不超过 %d 字。
+            """;
+
+    private final ChatMemory delegate;
+
+    private final ChatClient summaryClient;
+
+    private final int maxTurns;
+
+    private final int tokenBudget;
+
+    private final int summaryMaxChars;
+
+    private final int summaryInputMaxChars;
+
+    private final File summaryDir;
+
+    private final Map<String, SummaryState> summaries = new ConcurrentHashMap<>();
+
+    // 每次 clear 递增，用于丢弃 clear 之前发起的摘要任务结果
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor;
+
+    /**
+     * @param delegate             完整历史的底层存储
+     * @param chatModel            用于生成摘要的模型
+     * @param summaryDir           摘要文件保存目录
+     * @param maxTurns             窗口内最多保留的轮数（一轮 = 一条用户消息及其后的回复）
+     * @param tokenBudget          窗口 + 摘要的总 token 预算
+     * @param summaryMaxChars      摘要最大字数（同时作为摘要在预算中的预留额度）
+     * @param summaryInputMaxChars 生成摘要时每条消息最多取的字符数
+     */
+    public SummarizingWindowChatMemory(ChatMemory delegate, ChatModel chatModel, String summaryDir,
+                                       int maxTurns, int tokenBudget, int summaryMaxChars, int summaryInputMaxChars) {
+        this.delegate = delegate;
+        this.summaryClient = ChatClient.builder(chatModel)
+                .defaultSystem(SUMMARY_SYSTEM_PROMPT.formatted(summaryMaxChars))
+                .build();
+        this.maxTurns = Math.max(1, maxTurns);
+        this.tokenBudget = tokenBudget;
+        this.summaryMaxChars = summaryMaxChars;
+        this.summaryInputMaxChars = summaryInputMaxChars;
+        this.summaryDir = new File(summaryDir);
+        if (!this.summaryDir.exists()) {
+            this.summaryDir.mkdirs();
+        }
+        // 摘要共用同一个模型服务，单线程执行避免与前台请求争抢
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "chat-memory-summarizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        delegate.add(conversationId, messages);
+        // 本轮写入后如果窗口已经溢出，提前在后台生成摘要，下一轮请求即可直接使用
+        if (messages.stream().anyMatch(m -> m.getMessageType() == MessageType.ASSISTANT)) {
+            List<Message> all = delegate.get(conversationId);
+            int covered = coveredCount(conversationId, all.size());
+            if (windowStart(all, covered) > covered) {
+                scheduleSummary(conversationId);
+            }
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        List<Message> all = delegate.get(conversationId);
+        int covered = coveredCount(conversationId, all.size());
+        int start = windowStart(all, covered);
+        if (start > covered) {
+            scheduleSummary(conversationId);
+        }
+        List<Message> result = new ArrayList<>(all.size() - start + 1);
+        SummaryState state = summaries.get(conversationId);
+        if (state != null && covered > 0) {
+            result.add(new SystemMessage(SUMMARY_PREFIX + state.text()));
+        }
+        result.addAll(fitToBudget(all.subList(start, all.size())));
+        return result;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        generations.computeIfAbsent(conversationId, k -> new AtomicLong()).incrementAndGet();
+        summaries.remove(conversationId);
+        FileUtil.del(getSummaryFile(conversationId));
+        delegate.clear(conversationId);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 计算窗口起始下标：从最新一轮往前，整轮纳入，直到超过轮数或 token 预算；
+     * 最新一轮单独超出预算时仍然纳入，由 {@link #fitToBudget} 截断
+     */
+    private int windowStart(List<Message> all, int covered) {
+        int budget = tokenBudget - summaryMaxChars;
+        int turns = 0;
+        int tokens = 0;
+        int start = all.size();
+        int turnTokens = 0;
+        for (int i = all.size() - 1; i >= covered; i--) {
+            turnTokens += TokenEstimator.estimate(all.get(i));
+            boolean turnBoundary = all.get(i).getMessageType() == MessageType.USER || i == covered;
+            if (!turnBoundary) {
+                continue;
+            }
+            if (turns >= maxTurns || tokens + turnTokens > budget) {
+                if (turns == 0) {
+                    start = i;
+                }
+                break;
+            }
+            tokens += turnTokens;
+            turns++;
+            start = i;
+            turnTokens = 0;
+        }
+        return start;
+    }
+
+    /**
+     * 窗口超出预算时（只会是单独的最新一轮）从最长的消息开始截断，保留开头并加上截断标记
+     */
+    private List<Message> fitToBudget(List<Message> window) {
+        int excess = TokenEstimator.estimate(window) - (tokenBudget - summaryMaxChars);
+        if (excess <= 0) {
+            return window;
+        }
+        List<Message> result = new ArrayList<>(window);
+        List<Integer> longestFirst = new ArrayList<>();
+        for (int i = 0; i < result.size(); i++) {
+            longestFirst.add(i);
+        }
+        longestFirst.sort(Comparator.comparingInt((Integer i) -> TokenEstimator.estimate(result.get(i))).reversed());
+        for (int i : longestFirst) {
+            Message message = result.get(i);
+            String text = message.getText();
+            if (excess <= 0 || text == null || text.isEmpty()
+                    || !(message instanceof UserMessage || message instanceof AssistantMessage)) {
+                continue;
+            }
+            // 每个字符至多 1 个 token，保留 keep 个字符即可保证不超过 keep 个 token
+            int tokens = TokenEstimator.estimate(text);
+            int keep = Math.max(0, tokens - excess - TokenEstimator.estimate(TRUNCATED_MARK));
+            String kept = text.substring(0, Math.min(keep, text.length())) + TRUNCATED_MARK;
+            excess -= tokens - TokenEstimator.estimate(kept);
+            result.set(i, withText(message, kept));
+        }
+        return result;
+    }
+
+    private static Message withText(Message message, String text) {
+        if (message instanceof UserMessage userMessage) {
+            return UserMessage.builder().text(text).metadata(userMessage.getMetadata()).media(userMessage.getMedia()).build();
+        }
+        AssistantMessage assistantMessage = (AssistantMessage) message;
+        return new AssistantMessage(text, assistantMessage.getMetadata(), assistantMessage.getToolCalls(),
+                assistantMessage.getMedia());
+    }
+
+    private int coveredCount(String conversationId, int size) {
+        SummaryState state = summaries.computeIfAbsent(conversationId, this::loadSummary);
+        if (state == null) {
+            return 0;
+        }
+        if (state.coveredCount() > size) {
+            // 底层历史被外部截断，摘要已失效
+            summaries.remove(conversationId);
+            return 0;
+        }
+        return state.coveredCount();
+    }
+
+    private void scheduleSummary(String conversationId) {
+        if (!inFlight.add(conversationId)) {
+            return;
+        }
+        long generation = generations.computeIfAbsent(conversationId, k -> new AtomicLong()).get();
+        executor.submit(() -> {
+            try {
+                summarize(conversationId, generation);
+            } catch (Exception e) {
+                log.error("[SummarizingWindowChatMemory] failed to summarize conversation {}", conversationId, e);
+            } finally {
+                inFlight.remove(conversationId);
+            }
+        });
+    }
+
+    private void summarize(String conversationId, long generation) {
+        List<Message> all = delegate.get(conversationId);
+        int covered = coveredCount(conversationId, all.size());
+        int start = windowStart(all, covered);
+        if (start <= covered) {
+            return;
+        }
+        SummaryState previous = summaries.get(conversationId);
+        StringBuilder input = new StringBuilder();
+        input.append("已有摘要：\n").append(previous != null ? previous.text() : "（无）").append("\n\n新增对话：\n");
+        for (Message message : all.subList(covered, start)) {
+            String text = message.getText() == null ? "" : message.getText();
+            if (text.length() > summaryInputMaxChars) {
+                text = text.substring(0, summaryInputMaxChars) + TRUNCATED_MARK;
+            }
+            input.append(message.getMessageType() == MessageType.USER ? "[用户] " : "[助手] ").append(text).append("\n");
+        }
+        long startTime = System.currentTimeMillis();
+        String summary = summaryClient.prompt().user(input.toString()).call().content();
+        summary = summary == null ? "" : ThinkContentUtil.stripThink(summary).trim();
+        if (summary.isEmpty()) {
+            return;
+        }
+        if (generations.get(conversationId).get() != generation) {
+            // 摘要期间会话被清空，丢弃结果
+            return;
+        }
+        SummaryState state = new SummaryState(summary, start);
+        summaries.put(conversationId, state);
+        FileUtil.writeUtf8String(start + "\n" + summary, getSummaryFile(conversationId));
+        log.info("[SummarizingWindowChatMemory] summarized conversation {}, covered={} messages, cost={}ms",
+                conversationId, start, System.currentTimeMillis() - startTime);
+    }
+
+    private SummaryState loadSummary(String conversationId) {
+        File file = getSummaryFile(conversationId);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            String content = FileUtil.readUtf8String(file);
+            int newline = content.indexOf('\n');
+            return new SummaryState(content.substring(newline + 1), Integer.parseInt(content.substring(0, newline).trim()));
+        } catch (Exception e) {
+            log.warn("[SummarizingWindowChatMemory] invalid summary file {}", file.getName(), e);
+            return null;
+        }
+    }
+
+    private File getSummaryFile(String conversationId) {
+        return new File(summaryDir, conversationId + SUMMARY_SUFFIX);
+    }
+
+    /**
+     * 滚动摘要：text 概括了会话中前 coveredCount 条消息
+     */
+    private record SummaryState(String text, int coveredCount) {}
+}
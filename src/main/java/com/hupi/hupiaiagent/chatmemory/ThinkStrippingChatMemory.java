@@ -0,0 +1,154 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import cn.hutool.core.io.FileUtil;
+import com.hupi.hupiaiagent.util.ThinkContentUtil;
+import com.hupi.hupiaiagent.util.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 写入前去掉助手消息中 &lt;think&gt; 思考内容的对话记忆
+ * <p>
+ * 推理模型的思考过程往往比最终回答长得多，但对后续追问没有帮助，
+ * 持久化后会在每一轮请求中被重复发送给模型。这里只保存最终回答；
+ * 开启 keepReasoning 时思考内容另存到 reasoning/{id}.txt 备查，不参与后续对话。
+ */
+@Slf4j
+public class ThinkStrippingChatMemory implements ChatMemory {
+
+    private static final String REASONING_DIR = "reasoning";
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final ChatMemory delegate;
+
+    private final File reasoningDir;
+
+    private final Map<String, Savings> savings = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate      实际存储
+     * @param baseDir       对话记忆目录，为 null 时不保存思考内容
+     * @param keepReasoning 是否另存思考内容
+     */
+    public ThinkStrippingChatMemory(ChatMemory delegate, String baseDir, boolean keepReasoning) {
+        this.delegate = delegate;
+        this.reasoningDir = keepReasoning && baseDir != null ? new File(baseDir, REASONING_DIR) : null;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        List<Message> result = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            result.add(message instanceof AssistantMessage assistantMessage
+                    ? strip(conversationId, assistantMessage)
+                    : message);
+        }
+        delegate.add(conversationId, result);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        return delegate.get(conversationId);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        savings.remove(conversationId);
+        if (reasoningDir != null) {
+            FileUtil.del(getReasoningFile(conversationId));
+        }
+        delegate.clear(conversationId);
+    }
+
+    /**
+     * 单个会话节省的 token 数（自本次启动以来），没有记录时返回 null
+     */
+    public SavingsStats getSavings(String conversationId) {
+        Savings s = savings.get(conversationId);
+        return s == null ? null : s.toStats(conversationId);
+    }
+
+    /**
+     * 所有会话合计节省的 token 数（自本次启动以来）
+     */
+    public SavingsStats getTotalSavings() {
+        Savings total = new Savings();
+        for (Savings s : savings.values()) {
+            total.strippedMessages.addAndGet(s.strippedMessages.get());
+            total.strippedChars.addAndGet(s.strippedChars.get());
+            total.strippedTokens.addAndGet(s.strippedTokens.get());
+            total.keptTokens.addAndGet(s.keptTokens.get());
+        }
+        return total.toStats(null);
+    }
+
+    private Message strip(String conversationId, AssistantMessage message) {
+        String text = message.getText();
+        String stripped = ThinkContentUtil.stripThink(text);
+        if (stripped == null || stripped.equals(text)) {
+            return message;
+        }
+        int strippedTokens = TokenEstimator.estimate(text) - TokenEstimator.estimate(stripped);
+        Savings s = savings.computeIfAbsent(conversationId, k -> new Savings());
+        s.strippedMessages.incrementAndGet();
+        s.strippedChars.addAndGet(text.length() - stripped.length());
+        s.strippedTokens.addAndGet(strippedTokens);
+        s.keptTokens.addAndGet(TokenEstimator.estimate(stripped));
+        if (reasoningDir != null) {
+            saveReasoning(conversationId, ThinkContentUtil.extractThink(text));
+        }
+        log.debug("[ThinkStrippingChatMemory] stripped {} tokens of reasoning from conversation {}",
+                strippedTokens, conversationId);
+        return new AssistantMessage(stripped, message.getMetadata(), message.getToolCalls(), message.getMedia());
+    }
+
+    private void saveReasoning(String conversationId, String reasoning) {
+        if (reasoning.isEmpty()) {
+            return;
+        }
+        try {
+            String entry = "==== " + LocalDateTime.now().format(TIME_FORMATTER) + " ====\n" + reasoning + "\n\n";
+            FileUtil.appendUtf8String(entry, getReasoningFile(conversationId));
+        } catch (Exception e) {
+            // 思考内容只用于备查，写入失败不影响对话
+            log.warn("[ThinkStrippingChatMemory] failed to save reasoning for conversation {}", conversationId, e);
+        }
+    }
+
+    private File getReasoningFile(String conversationId) {
+        return new File(reasoningDir, conversationId + ".txt");
+    }
+
+    private static class Savings {
+        final AtomicLong strippedMessages = new AtomicLong();
+        final AtomicLong strippedChars = new AtomicLong();
+        final AtomicLong strippedTokens = new AtomicLong();
+        final AtomicLong keptTokens = new AtomicLong();
+
+        SavingsStats toStats(String conversationId) {
+            return new SavingsStats(conversationId, strippedMessages.get(), strippedChars.get(),
+                    strippedTokens.get(), keptTokens.get());
+        }
+    }
+
+    /**
+     * 思考内容剥离统计
+     *
+     * @param strippedTokens 从持久化历史中去掉的 token 数，后续每一轮请求都会少发送这么多
+     * @param keptTokens     保留下来的最终回答 token 数
+     */
+    public record SavingsStats(String conversationId, long strippedMessages, long strippedChars,
+                               long strippedTokens, long keptTokens) {}
+}
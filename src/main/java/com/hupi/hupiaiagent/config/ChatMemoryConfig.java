@@ -0,0 +1,154 @@
+package com.hupi.hupiaiagent.config;
+
+import com.hupi.hupiaiagent.chatmemory.CachingChatMemory;
+import com.hupi.hupiaiagent.chatmemory.ChatHistoryIndex;
+import com.hupi.hupiaiagent.chatmemory.FileBasedChatMemory;
+import com.hupi.hupiaiagent.chatmemory.SummarizingWindowChatMemory;
+import com.hupi.hupiaiagent.chatmemory.ThinkStrippingChatMemory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话记忆配置类
+ * 文件持久化存储 + 前置 LRU 缓存（异步回写） + 写入前去掉思考内容，可选滑动窗口 + 滚动摘要模式
+ */
+@Configuration
+@Slf4j
+public class ChatMemoryConfig {
+
+    @Value("${dispatch.chat-memory.dir:}")
+    private String chatMemoryDir;
+
+    @Value("${dispatch.chat-memory.compact-threshold:16}")
+    private int compactThreshold;
+
+    @Value("${dispatch.chat-memory.blob-threshold-chars:4096}")
+    private int blobThresholdChars;
+
+    @Value("${dispatch.chat-memory.blob-sweep-grace-hours:1}")
+    private long blobSweepGraceHours;
+
+    /**
+     * 会话文件记录压缩方式：lz4、none
+     */
+    @Value("${dispatch.chat-memory.compression:lz4}")
+    private String compression;
+
+    @Value("${dispatch.chat-memory.cache.max-weight:67108864}")
+    private long cacheMaxWeight;
+
+    @Value("${dispatch.chat-memory.cache.max-entries:512}")
+    private int cacheMaxEntries;
+
+    @Value("${dispatch.chat-memory.cache.flush-interval-ms:1000}")
+    private long cacheFlushIntervalMs;
+
+    @Value("${dispatch.chat-memory.strip-think:true}")
+    private boolean stripThink;
+
+    @Value("${dispatch.chat-memory.keep-reasoning:true}")
+    private boolean keepReasoning;
+
+    @Value("${dispatch.chat-memory.search.max-indexed-chars:2000}")
+    private int searchMaxIndexedChars;
+
+    /**
+     * 记忆模式：full（返回完整历史）、window（滑动窗口 + 滚动摘要）
+     */
+    @Value("${dispatch.chat-memory.mode:full}")
+    private String mode;
+
+    @Value("${dispatch.chat-memory.window.max-turns:6}")
+    private int windowMaxTurns;
+
+    @Value("${dispatch.chat-memory.window.token-budget:6000}")
+    private int windowTokenBudget;
+
+    @Value("${dispatch.chat-memory.window.summary-max-chars:800}")
+    private int windowSummaryMaxChars;
+
+    @Value("${dispatch.chat-memory.window.summary-input-max-chars:2000}")
+    private int windowSummaryInputMaxChars;
+
+    /**
+     * 会话记忆文件保存目录
+     */
+    public String getChatMemoryDir() {
+        if (chatMemoryDir != null && !chatMemoryDir.trim().isEmpty()) {
+            return chatMemoryDir.trim();
+        }
+        return System.getProperty("user.dir") + "/tmp/chat-memory";
+    }
+
+    /**
+     * 启动时在后台清理已清空会话留下的大消息正文
+     */
+    @Bean
+    public FileBasedChatMemory fileBasedChatMemory() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(getChatMemoryDir(), compactThreshold, blobThresholdChars,
+                !"none".equalsIgnoreCase(compression));
+        if (blobThresholdChars > 0) {
+            Thread thread = new Thread(() -> {
+                try {
+                    chatMemory.sweepBlobs(TimeUnit.HOURS.toMillis(blobSweepGraceHours));
+                } catch (Exception e) {
+                    log.error("[ChatMemoryConfig] blob sweep failed", e);
+                }
+            }, "chat-memory-blob-sweeper");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return chatMemory;
+    }
+
+    /**
+     * 对话历史全文索引，随消息写入增量更新，启动时在后台补建
+     */
+    @Bean
+    public ChatHistoryIndex chatHistoryIndex(FileBasedChatMemory fileBasedChatMemory) {
+        ChatHistoryIndex index = new ChatHistoryIndex(fileBasedChatMemory, searchMaxIndexedChars);
+        fileBasedChatMemory.addListener(index);
+        index.buildAsync();
+        return index;
+    }
+
+    /**
+     * 应用关闭时会调用 close() 刷写所有待写入消息
+     */
+    @Bean(destroyMethod = "close")
+    public CachingChatMemory cachingChatMemory(FileBasedChatMemory fileBasedChatMemory) {
+        return new CachingChatMemory(fileBasedChatMemory, cacheMaxWeight, cacheMaxEntries, cacheFlushIntervalMs);
+    }
+
+    /**
+     * 助手回复写入前去掉 &lt;think&gt; 思考内容（strip-think=false 时原样保存）
+     */
+    @Bean
+    public ThinkStrippingChatMemory thinkStrippingChatMemory(CachingChatMemory cachingChatMemory) {
+        return new ThinkStrippingChatMemory(cachingChatMemory, getChatMemoryDir(), keepReasoning);
+    }
+
+    /**
+     * 生产调度分析助手使用的对话记忆
+     */
+    @Bean
+    @Primary
+    public ChatMemory dispatchChatMemory(CachingChatMemory cachingChatMemory,
+                                         ThinkStrippingChatMemory thinkStrippingChatMemory,
+                                         ChatModel dashscopeChatModel) {
+        ChatMemory storage = stripThink ? thinkStrippingChatMemory : cachingChatMemory;
+        if ("window".equalsIgnoreCase(mode)) {
+            log.info("Chat memory mode: window, maxTurns={}, tokenBudget={}", windowMaxTurns, windowTokenBudget);
+            return new SummarizingWindowChatMemory(storage, dashscopeChatModel, getChatMemoryDir(),
+                    windowMaxTurns, windowTokenBudget, windowSummaryMaxChars, windowSummaryInputMaxChars);
+        }
+        return storage;
+    }
+}
@@ -1,9 +1,33 @@
 package com.hupi.hupiaiagent.controller;
 
+import cn.hutool.core.io.FileUtil;
 import com.hupi.hupiaiagent.agent.HupiManus;
 import com.hupi.hupiaiagent.app.DispatchAssistantApp;
+import com.hupi.hupiaiagent.app.MapReduceSummarizer;
+import com.hupi.hupiaiagent.chatmemory.CachingChatMemory;
+import com.hupi.hupiaiagent.chatmemory.ChatHistoryIndex;
+import com.hupi.hupiaiagent.chatmemory.ConversationManifest;
+import com.hupi.hupiaiagent.chatmemory.FileBasedChatMemory;
+import com.hupi.hupiaiagent.chatmemory.ThinkStrippingChatMemory;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogCatalog;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogDeduplicator;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogFilter;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogIndex;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogOffsetIndex;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogXlsxImporter;
+import com.hupi.hupiaiagent.dispatchlog.EntityDictionary;
+import com.hupi.hupiaiagent.dispatchlog.EventCategory;
+import com.hupi.hupiaiagent.summary.DraftSummaryExtractor;
+import com.hupi.hupiaiagent.summary.HandoverSummaryService;
+import com.hupi.hupiaiagent.summary.PromptBudgetBuilder;
+import com.hupi.hupiaiagent.summary.RollupSummaryService;
+import com.hupi.hupiaiagent.summary.RunningSummaryService;
+import com.hupi.hupiaiagent.summary.SummaryCache;
+import com.hupi.hupiaiagent.summary.SummaryPregenerator;
 import com.hupi.hupiaiagent.util.DispatchLogFileUtil;
 import com.hupi.hupiaiagent.util.RealtimeStreamFormatter;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.memory.ChatMemory;
@@ -11,6 +35,7 @@ import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -18,27 +43,63 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import reactor.core.publisher.Flux;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/ai")
 @Slf4j
 public class AiController {
 
+    // 重复合并报告一次最多查询的天数
+    private static final int DEDUP_REPORT_MAX_DAYS = 62;
+
     @Resource
     private DispatchAssistantApp dispatchAssistantApp;
 
+    @Resource
+    private MapReduceSummarizer mapReduceSummarizer;
+
+    @Resource
+    private HandoverSummaryService handoverSummaryService;
+
+    @Resource
+    private PromptBudgetBuilder promptBudgetBuilder;
+
+    @Resource
+    private DraftSummaryExtractor draftSummaryExtractor;
+
+    @Resource
+    private SummaryPregenerator summaryPregenerator;
+
+    @Resource
+    private RollupSummaryService rollupSummaryService;
+
+    @Resource
+    private RunningSummaryService runningSummaryService;
+
+    @Resource
+    private EntityDictionary entityDictionary;
+
     @Resource
     private ToolCallback[] allTools;
 
@@ -48,6 +109,39 @@ public class AiController {
     @Resource
     private DispatchLogFileUtil dispatchLogFileUtil;
 
+    @Resource
+    private DispatchLogFilter dispatchLogFilter;
+
+    @Resource
+    private DispatchLogIndex dispatchLogIndex;
+
+    @Resource
+    private DispatchLogCatalog dispatchLogCatalog;
+
+    @Resource
+    private DispatchLogOffsetIndex dispatchLogOffsetIndex;
+
+    @Resource
+    private DispatchLogXlsxImporter dispatchLogXlsxImporter;
+
+    @Resource
+    private DispatchLogDeduplicator dispatchLogDeduplicator;
+
+    @Resource
+    private CachingChatMemory cachingChatMemory;
+
+    @Resource
+    private FileBasedChatMemory fileBasedChatMemory;
+
+    @Resource
+    private ThinkStrippingChatMemory thinkStrippingChatMemory;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private ChatHistoryIndex chatHistoryIndex;
+
     /**
      * 同步调用 生产调度分析助手
      *
@@ -144,14 +238,16 @@ public class AiController {
             
             // 读取文件
             String logText = java.nio.file.Files.readString(file.toPath(), java.nio.charset.StandardCharsets.UTF_8);
+            DispatchLogFilter.FilterResult filtered = dispatchLogFilter.filter(logText);
             debugInfo.append("4. 文件读取成功:\n");
             debugInfo.append("   - 内容长度: ").append(logText.length()).append(" 字符\n");
             debugInfo.append("   - 行数（估算）: ").append(logText.split("\n").length).append(" 行\n");
             debugInfo.append("   - 前200字符预览:\n");
-            debugInfo.append("     ").append(logText.length() > 200 ? logText.substring(0, 200) + "..." : logText).append("\n\n");
+            debugInfo.append("     ").append(logText.length() > 200 ? logText.substring(0, 200) + "..." : logText).append("\n");
+            debugInfo.append("   - 噪声过滤: ").append(filtered.summary()).append("\n\n");
             
-            // 构建消息（直接发送日志内容，SYSTEM_PROMPT 已定义规则）
-            String message = logText;
+            // 构建消息（发送过滤后的日志内容，SYSTEM_PROMPT 已定义规则）
+            String message = filtered.content();
             
             debugInfo.append("5. 构建的消息:\n");
             debugInfo.append("   - 消息总长度: ").append(message.length()).append(" 字符\n");
@@ -231,28 +327,308 @@ public class AiController {
                 return "错误：未查询到 [" + normalizedDate + "] 的调度日志。文件路径: " + file.getAbsolutePath();
             }
             
-            String logText = java.nio.file.Files.readString(file.toPath(), java.nio.charset.StandardCharsets.UTF_8);
-            log.info("[prefetch-sync] read ok, length={} chars", logText.length());
-            
-            // 构建用户消息
-            String message = String.format(
-                    "请基于[%s]的调度日志生成交接班总结：\n\n%s",
-                    normalizedDate, logText
-            );
-            
-            return dispatchAssistantApp.doChat(message, chatId != null ? chatId : "prefetch-" + normalizedDate);
+            // 日志未变化时直接返回缓存的总结；模型不可用或超时时返回规则初稿
+            Flux<String> stream = handoverSummaryService.stream(normalizedDate,
+                    chatId != null ? chatId : "prefetch-" + normalizedDate, "prefetch-sync",
+                    progress -> log.info("[prefetch-sync] map-reduce progress: {}", progress));
+            String content = draftSummaryExtractor.withFallback(stream, () -> draftOf(normalizedDate), "prefetch-sync")
+                    .collect(Collectors.joining())
+                    .block();
+            log.info("content: {}", content);
+            return dispatchAssistantApp.formatContent(content);
         } catch (Exception e) {
             log.error("prefetch sync error", e);
             return "错误：读取日志失败 - " + e.getMessage();
         }
     }
 
+    /**
+     * 交接班总结预生成状态（最近几天，日期倒序）
+     */
+    @GetMapping("/dispatch_app/summary/pregen/status")
+    public List<SummaryPregenerator.Status> getSummaryPregenStatus() {
+        return summaryPregenerator.getStatuses();
+    }
+
+    /**
+     * 立即在后台预生成指定日期的交接班总结
+     */
+    @PostMapping("/dispatch_app/summary/pregen/run")
+    public ResponseEntity<String> runSummaryPregen(@RequestParam String date) {
+        String normalizedDate = date.trim();
+        try {
+            LocalDate.parse(normalizedDate);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("date 格式错误 (期望 YYYY-MM-DD)");
+        }
+        summaryPregenerator.runNow(normalizedDate);
+        return ResponseEntity.accepted().body("已加入预生成队列：" + normalizedDate);
+    }
+
+    /**
+     * 随日志追加滚动更新的交接班总结；不传 date 时返回最近几天的
+     */
+    @GetMapping("/dispatch_app/summary/running")
+    public ResponseEntity<?> getRunningSummary(@RequestParam(required = false) String date) {
+        if (date == null || date.isBlank()) {
+            return ResponseEntity.ok(runningSummaryService.list());
+        }
+        RunningSummaryService.RunningSummary summary = runningSummaryService.get(date.trim());
+        return summary != null ? ResponseEntity.ok(summary) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * 立即把指定日期的新增日志并入滚动总结
+     */
+    @PostMapping("/dispatch_app/summary/running/refresh")
+    public ResponseEntity<String> refreshRunningSummary(@RequestParam String date) {
+        String normalizedDate = date.trim();
+        try {
+            LocalDate.parse(normalizedDate);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("date 格式错误 (期望 YYYY-MM-DD)");
+        }
+        runningSummaryService.refreshNow(normalizedDate);
+        return ResponseEntity.accepted().body("已加入滚动总结更新队列：" + normalizedDate);
+    }
+
+    /**
+     * 交接班总结提示词的 token 统计（组装次数、平均/最大 token 数、因超出预算截断的次数及最近记录）
+     */
+    @GetMapping("/dispatch_app/summary/prompt_stats")
+    public PromptBudgetBuilder.Stats getPromptStats() {
+        return promptBudgetBuilder.getStats();
+    }
+
+    /**
+     * 多日（周）生产调度汇总：各天总结并发生成（优先取缓存），再合并为一份
+     * 事件：progress（每天完成一次）、thinking、message、error、complete
+     *
+     * @param from 起始日期 YYYY-MM-DD
+     * @param to   结束日期 YYYY-MM-DD（含），不填时为 from 起 7 天
+     */
+    @GetMapping(value = "/dispatch_app/summary/rollup", produces = MediaType.TEXT_EVENT_STREAM_VALUE + ";charset=UTF-8")
+    public Flux<ServerSentEvent<Object>> doRollupSummary(String from, String to, String chatId) {
+        LocalDate fromDate;
+        LocalDate toDate;
+        try {
+            fromDate = LocalDate.parse(from == null ? "" : from.trim());
+            toDate = to == null || to.isBlank() ? fromDate.plusDays(6) : LocalDate.parse(to.trim());
+        } catch (DateTimeParseException e) {
+            return Flux.just(sseEvent("error", "from/to 格式错误 (期望 YYYY-MM-DD)"));
+        }
+        long days = ChronoUnit.DAYS.between(fromDate, toDate) + 1;
+        if (days < 1 || days > rollupSummaryService.getMaxDays()) {
+            return Flux.just(sseEvent("error", "日期范围应为 1-" + rollupSummaryService.getMaxDays() + " 天"));
+        }
+        String conversationId = chatId != null && !chatId.isBlank() ? chatId : "rollup-" + fromDate + "-" + toDate;
+        return rollupSummaryService.rollup(fromDate, toDate, conversationId)
+                .map(event -> sseEvent(event.event(), event.data()))
+                .onErrorResume(e -> {
+                    log.error("[rollup] {} ~ {} failed", fromDate, toDate, e);
+                    return Flux.just(sseEvent("error", "汇总失败: " + e.getMessage()));
+                })
+                .concatWith(Flux.just(sseEvent("complete", "Stream completed")));
+    }
+
+    private static ServerSentEvent<Object> sseEvent(String name, Object data) {
+        return ServerSentEvent.builder(data).event(name).build();
+    }
+
+    /**
+     * 已发现的调度日志（日期、大小、修改时间、内容哈希）
+     */
+    @GetMapping("/dispatch_app/log/catalog")
+    public List<DispatchLogCatalog.Entry> getLogCatalog() {
+        return dispatchLogCatalog.list();
+    }
+
+    /**
+     * 导入上传的调度日志 Excel（列 ADDTIME / CONTENT），按天写入日志目录
+     */
+    @PostMapping("/dispatch_app/log/import")
+    public ResponseEntity<?> importLogWorkbook(@RequestParam(required = false) MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest().body("请上传 xlsx 文件");
+        }
+        File tmp = File.createTempFile("dispatch-log-", ".xlsx");
+        try {
+            file.transferTo(tmp);
+            return ResponseEntity.ok(dispatchLogXlsxImporter.importWorkbook(tmp));
+        } finally {
+            FileUtil.del(tmp);
+        }
+    }
+
+    /**
+     * 查看某天日志的噪声过滤统计（去掉的行数、条目数、估算 token 数）
+     */
+    @GetMapping("/dispatch_app/log/filter_report")
+    public DispatchLogFilter.FilterResult getLogFilterReport(String date) throws IOException {
+        DispatchLogIndex.DayIndex day = dispatchLogIndex.getDay(date == null ? "" : date.trim());
+        if (day == null) {
+            return new DispatchLogFilter.FilterResult(null, 0, 0, 0, 0, 0, java.util.Map.of());
+        }
+        return dispatchLogFilter.filter(day.events()).withoutContent();
+    }
+
+    /**
+     * 近似重复条目合并的压缩效果（按天）：合并前后的事件数、估算 token 数及被合并的各组
+     *
+     * @param from 起始日期 YYYY-MM-DD
+     * @param to   结束日期 YYYY-MM-DD（含），不填时只看 from 当天
+     */
+    @GetMapping("/dispatch_app/log/dedup_report")
+    public ResponseEntity<?> getLogDedupReport(String from, String to) throws IOException {
+        LocalDate fromDate;
+        LocalDate toDate;
+        try {
+            fromDate = LocalDate.parse(from == null ? "" : from.trim());
+            toDate = to == null || to.isBlank() ? fromDate : LocalDate.parse(to.trim());
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("from/to 格式错误 (期望 YYYY-MM-DD)");
+        }
+        long days = ChronoUnit.DAYS.between(fromDate, toDate) + 1;
+        if (days < 1 || days > DEDUP_REPORT_MAX_DAYS) {
+            return ResponseEntity.badRequest().body("日期范围应为 1-" + DEDUP_REPORT_MAX_DAYS + " 天");
+        }
+        List<DedupReport> reports = new ArrayList<>();
+        for (LocalDate date = fromDate; !date.isAfter(toDate); date = date.plusDays(1)) {
+            DispatchLogIndex.DayIndex day = dispatchLogIndex.getDay(date.toString());
+            if (day == null) {
+                continue;
+            }
+            DispatchLogDeduplicator.DedupResult result = dispatchLogDeduplicator.collapse(day.events());
+            double saved = result.originalTokens() == 0 ? 0
+                    : 1 - (double) result.tokens() / result.originalTokens();
+            reports.add(new DedupReport(date.toString(), Math.round(saved * 1000) / 1000.0, result.withoutEvents()));
+        }
+        return ResponseEntity.ok(reports);
+    }
+
+    /**
+     * 查询某天的结构化事件，可按时间段 [from, to)（HH:mm）和类别（逗号分隔，如 PIGGING,REPAIR）筛选
+     */
+    @GetMapping("/dispatch_app/log/events")
+    public ResponseEntity<?> getLogEvents(String date, String from, String to, String category) throws IOException {
+        if (date == null || date.isBlank()) {
+            return ResponseEntity.badRequest().body("date 不能为空 (期望 YYYY-MM-DD)");
+        }
+        DispatchLogIndex.DayIndex day = dispatchLogIndex.getDay(date.trim());
+        if (day == null) {
+            return ResponseEntity.notFound().build();
+        }
+        List<DispatchLogEvent> events;
+        try {
+            LocalDate logDate = LocalDate.parse(date.trim());
+            events = day.between(parseLogTime(logDate, from), parseLogTime(logDate, to));
+            if (category != null && !category.isBlank()) {
+                Set<EventCategory> categories = EnumSet.noneOf(EventCategory.class);
+                for (String name : category.split(",")) {
+                    categories.add(EventCategory.valueOf(name.trim().toUpperCase()));
+                }
+                events = events.stream().filter(event -> categories.contains(event.category())).toList();
+            }
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("参数格式错误：" + e.getMessage());
+        }
+        return ResponseEntity.ok(events);
+    }
+
+    /**
+     * 某天日志提到的词典实体（单位、作业区、站场、管线）及各自被提到的时间
+     */
+    @GetMapping("/dispatch_app/log/entities")
+    public ResponseEntity<?> getLogEntities(String date) throws IOException {
+        if (date == null || date.isBlank()) {
+            return ResponseEntity.badRequest().body("date 不能为空 (期望 YYYY-MM-DD)");
+        }
+        DispatchLogIndex.DayIndex day = dispatchLogIndex.getDay(date.trim());
+        if (day == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(entityDictionary.mentions(day.events()));
+    }
+
+    /**
+     * 检查某天缓存的交接班总结中的实体名称：日志中没有出现的词典实体、词典和日志中都没有的名称
+     */
+    @GetMapping("/dispatch_app/summary/entity_check")
+    public ResponseEntity<?> checkSummaryEntities(String date) {
+        if (date == null || date.isBlank()) {
+            return ResponseEntity.badRequest().body("date 不能为空 (期望 YYYY-MM-DD)");
+        }
+        String normalizedDate = date.trim();
+        SummaryCache.Entry cached = handoverSummaryService.getCached(normalizedDate);
+        if (cached == null) {
+            return ResponseEntity.notFound().build();
+        }
+        String source = FileUtil.readUtf8String(dispatchLogFileUtil.resolveLogFile(normalizedDate));
+        return ResponseEntity.ok(entityDictionary.check(cached.content(), source));
+    }
+
+    private static LocalDateTime parseLogTime(LocalDate date, String time) {
+        return time == null || time.isBlank() ? null : date.atTime(LocalTime.parse(time.trim()));
+    }
+
+    /**
+     * 按时间段 [from, to)（yyyy-MM-dd HH:mm）切出日志事件，可跨天，如 2025-10-19 08:00 至 2025-10-20 08:00
+     */
+    @GetMapping("/dispatch_app/log/slice")
+    public ResponseEntity<?> getLogSlice(String from, String to) throws IOException {
+        LocalDateTime start;
+        LocalDateTime end;
+        try {
+            start = parseShiftTime(from);
+            end = parseShiftTime(to);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("参数格式错误：" + e.getMessage());
+        }
+        return ResponseEntity.ok(dispatchLogOffsetIndex.slice(start, end));
+    }
+
+    /**
+     * 流式生成跨天班次的交接班总结（from/to 格式 yyyy-MM-dd HH:mm，如 08:00 至次日 08:00）
+     * 注意：每次调用都会清除该 chatId 的历史，确保只基于本次提供的日志生成
+     */
+    @GetMapping(value = "/dispatch_app/chat/prefetch/shift/sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> doChatWithPrefetchShiftSse(String from, String to, String chatId) {
+        try {
+            LocalDateTime start = parseShiftTime(from);
+            LocalDateTime end = parseShiftTime(to);
+            if (!start.isBefore(end)) {
+                return Flux.just("data: 错误：from 必须早于 to\n\n");
+            }
+            if (chatId != null && !chatId.trim().isEmpty()) {
+                dispatchAssistantApp.getChatMemory().clear(chatId.trim());
+                log.info("[prefetch-shift] cleared chat history for chatId: {}", chatId);
+            }
+            return handoverSummaryService.streamShift(start, end,
+                            chatId != null ? chatId : "prefetch-shift-" + start.toLocalDate(), "prefetch-shift",
+                            progress -> log.info("[prefetch-shift] map-reduce progress: {}", progress))
+                    .map(chunk -> "data: " + chunk + "\n\n");
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return Flux.just("data: 错误：参数格式错误 (期望 yyyy-MM-dd HH:mm) - " + e.getMessage() + "\n\n");
+        } catch (Exception e) {
+            log.error("prefetch shift error", e);
+            return Flux.just("data: 错误：读取日志失败 - " + e.getMessage() + "\n\n");
+        }
+    }
+
+    private static LocalDateTime parseShiftTime(String time) {
+        if (time == null || time.isBlank()) {
+            throw new IllegalArgumentException("from/to 不能为空");
+        }
+        return LocalDateTime.parse(time.trim().replace('T', ' '), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+    }
+
     /**
      * 流式调用（后端预取日志）：先读日志，再让模型流式生成
+     * 未命中缓存时先推送 draft 事件（规则初稿），正文仍为未命名事件
      * 注意：每次调用都会清除该 chatId 的历史，确保只基于本次提供的日志生成
      */
     @GetMapping(value = "/dispatch_app/chat/prefetch/sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> doChatWithPrefetchSseGet(String date, String chatId) {
+    public Flux<ServerSentEvent<String>> doChatWithPrefetchSseGet(String date, String chatId) {
         return doChatWithPrefetchSseInternal(date, chatId);
     }
     
@@ -260,17 +636,17 @@ public class AiController {
      * 流式调用（后端预取日志）：先读日志，再让模型流式生成（POST 方法，支持长参数）
      */
     @PostMapping(value = "/dispatch_app/chat/prefetch/sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> doChatWithPrefetchSse(@RequestParam(required = false) String date, @RequestParam(required = false) String chatId) {
+    public Flux<ServerSentEvent<String>> doChatWithPrefetchSse(@RequestParam(required = false) String date, @RequestParam(required = false) String chatId) {
         return doChatWithPrefetchSseInternal(date, chatId);
     }
     
     /**
      * 内部实现方法（共享逻辑）
      */
-    private Flux<String> doChatWithPrefetchSseInternal(String date, String chatId) {
+    private Flux<ServerSentEvent<String>> doChatWithPrefetchSseInternal(String date, String chatId) {
         try {
             if (date == null || date.trim().isEmpty()) {
-                return Flux.just("data: 错误：date 不能为空 (期望 YYYY-MM-DD)\n\n");
+                return Flux.just(dataEvent("data: 错误：date 不能为空 (期望 YYYY-MM-DD)\n\n"));
             }
             String normalizedDate = date.trim();
             
@@ -285,26 +661,86 @@ public class AiController {
             
             if (!file.exists() || !file.isFile()) {
                 log.warn("[prefetch-sse] file not found: {}", file.getAbsolutePath());
-                return Flux.just("data: 错误：未查询到 [" + normalizedDate + "] 的调度日志。文件路径: " + file.getAbsolutePath() + "\n\n");
+                return Flux.just(dataEvent("data: 错误：未查询到 [" + normalizedDate + "] 的调度日志。文件路径: " + file.getAbsolutePath() + "\n\n"));
             }
             
-            String logText = java.nio.file.Files.readString(file.toPath(), java.nio.charset.StandardCharsets.UTF_8);
-            log.info("[prefetch-sse] read ok, length={} chars", logText.length());
-            
-            // 构建用户消息
-            String message = String.format(
-                    "请基于[%s]的调度日志生成交接班总结：\n\n%s",
-                    normalizedDate, logText
-            );
-            
-            return dispatchAssistantApp.doChatByStream(message, chatId != null ? chatId : "prefetch-" + normalizedDate)
-                    .map(chunk -> "data: " + chunk + "\n\n");
+            // 日志未变化时直接回放缓存的总结；否则先推送规则初稿（draft 事件），模型尚未输出就出错或超时时以初稿作为答复
+            String draft = handoverSummaryService.getCached(normalizedDate) == null ? draftOf(normalizedDate) : null;
+            Flux<String> stream = handoverSummaryService.stream(normalizedDate,
+                    chatId != null ? chatId : "prefetch-" + normalizedDate, "prefetch-sse",
+                    progress -> log.info("[prefetch-sse] map-reduce progress: {}", progress));
+            Flux<ServerSentEvent<String>> events = draftSummaryExtractor.withFallback(stream, () -> draft, "prefetch-sse")
+                    .map(chunk -> dataEvent("data: " + chunk + "\n\n"));
+            return draft != null ? events.startWith(ServerSentEvent.builder(draft).event("draft").build()) : events;
         } catch (Exception e) {
             log.error("prefetch sse error", e);
-            return Flux.just("data: 错误：读取日志失败 - " + e.getMessage() + "\n\n");
+            return Flux.just(dataEvent("data: 错误：读取日志失败 - " + e.getMessage() + "\n\n"));
+        }
+    }
+
+    // 与原先直接返回字符串时写出的内容相同（未命名事件）
+    private static ServerSentEvent<String> dataEvent(String data) {
+        return ServerSentEvent.builder(data).build();
+    }
+
+    private String draftOf(String date) {
+        try {
+            return handoverSummaryService.draft(date);
+        } catch (IOException e) {
+            log.warn("[draft] failed to build draft for {}: {}", date, e.getMessage());
+            return null;
         }
     }
 
+    /**
+     * SSE 流式调用（后端预取日志）：交接班页面使用
+     * 事件：draft（规则初稿，命中缓存时不推送）、progress（分段汇总进度）、thinking、message、error、complete
+     */
+    @GetMapping(value = "/dispatch_app/chat/prefetch/sse_emitter", produces = MediaType.TEXT_EVENT_STREAM_VALUE + ";charset=UTF-8")
+    public SseEmitter doChatWithPrefetchSseEmitterGet(@RequestParam(required = false) String date, @RequestParam(required = false) String chatId) {
+        return doChatWithPrefetchSseEmitterInternal(date, chatId);
+    }
+
+    /**
+     * SSE 流式调用（后端预取日志，POST 方法）
+     */
+    @PostMapping(value = "/dispatch_app/chat/prefetch/sse_emitter", produces = MediaType.TEXT_EVENT_STREAM_VALUE + ";charset=UTF-8")
+    public SseEmitter doChatWithPrefetchSseEmitter(@RequestParam(required = false) String date, @RequestParam(required = false) String chatId) {
+        return doChatWithPrefetchSseEmitterInternal(date, chatId);
+    }
+
+    private SseEmitter doChatWithPrefetchSseEmitterInternal(String date, String chatId) {
+        SseEmitter sseEmitter = newSseEmitter();
+        if (date == null || date.trim().isEmpty()) {
+            sendErrorAndComplete(sseEmitter, "错误：date 不能为空 (期望 YYYY-MM-DD)");
+            return sseEmitter;
+        }
+        String normalizedDate = date.trim();
+        try {
+            if (chatId != null && !chatId.trim().isEmpty()) {
+                dispatchAssistantApp.getChatMemory().clear(chatId.trim());
+                log.info("[prefetch-sse-emitter] cleared chat history for chatId: {}", chatId);
+            }
+            File file = dispatchLogFileUtil.resolveLogFile(normalizedDate);
+            if (!file.isFile()) {
+                log.warn("[prefetch-sse-emitter] file not found: {}", file.getAbsolutePath());
+                sendErrorAndComplete(sseEmitter, "错误：未查询到 [" + normalizedDate + "] 的调度日志。文件路径: " + file.getAbsolutePath());
+                return sseEmitter;
+            }
+            // 未命中缓存时先推送初稿，模型尚未输出就出错或超时时以初稿作为答复
+            String draft = handoverSummaryService.getCached(normalizedDate) == null ? draftOf(normalizedDate) : null;
+            sendDraft(sseEmitter, draft);
+            Flux<String> stream = handoverSummaryService.stream(normalizedDate,
+                    chatId != null ? chatId : "prefetch-" + normalizedDate, "prefetch-sse-emitter",
+                    progress -> sendProgress(sseEmitter, progress));
+            streamToEmitter(sseEmitter, draftSummaryExtractor.withFallback(stream, () -> draft, "prefetch-sse-emitter"));
+        } catch (Exception e) {
+            log.error("prefetch sse emitter error", e);
+            sendErrorAndComplete(sseEmitter, "错误：读取日志失败 - " + e.getMessage());
+        }
+        return sseEmitter;
+    }
+
     /**
      * SSE 流式调用 生产调度分析助手（增强：thinking/message 分发）
      * GET 方法（保持向后兼容）
@@ -334,12 +770,50 @@ public class AiController {
      * 内部实现方法（共享逻辑）
      */
     private SseEmitter doChatWithDispatchAppServerSseEmitterInternal(String message, String chatId) {
-        // 创建一个超时时间较长的 SseEmitter（10分钟，处理大量日志内容）
-        SseEmitter sseEmitter = new SseEmitter(600000L); // 10 分钟超时
+        SseEmitter sseEmitter = newSseEmitter();
         
         log.info("[SSE] Starting chat stream, message length: {}, chatId: {}", 
                 message != null ? message.length() : 0, chatId);
         
+        // 参数验证
+        if (message == null || message.trim().isEmpty()) {
+            log.warn("[SSE] message parameter is null or empty");
+            sendErrorAndComplete(sseEmitter, "错误：message 参数不能为空");
+            return sseEmitter;
+        }
+        
+        // 如果 chatId 为空，使用默认值
+        if (chatId == null || chatId.trim().isEmpty()) {
+            chatId = "default-" + System.currentTimeMillis();
+            log.info("[SSE] Using default chatId: {}", chatId);
+        }
+        
+        // 消息中附带日志时，先推送按规则提取的初稿（draft 事件），模型尚未输出就出错或超时时以它作为答复
+        final String draft = draftSummaryExtractor.draftFromMessage(message);
+        sendDraft(sseEmitter, draft);
+
+        try {
+            // 获取 Flux 响应式数据流并且直接通过订阅推送给 SseEmitter
+            // 超长日志走分段汇总，分段进度以 progress 事件推送
+            Flux<String> stream = mapReduceSummarizer.isApplicable(message)
+                    ? mapReduceSummarizer.summarize(message, chatId, progress -> sendProgress(sseEmitter, progress))
+                    : dispatchAssistantApp.doChatByStream(message, chatId);
+            streamToEmitter(sseEmitter, draftSummaryExtractor.withFallback(stream, () -> draft, "SSE"));
+        } catch (Exception e) {
+            log.error("[SSE] Error setting up stream", e);
+            sendErrorAndComplete(sseEmitter, "设置流失败: " + e.getMessage());
+        }
+        
+        // 返回
+        return sseEmitter;
+    }
+
+    /**
+     * 创建超时时间较长的 SseEmitter（10分钟，处理大量日志内容），并注册超时、出错时的处理
+     */
+    private SseEmitter newSseEmitter() {
+        SseEmitter sseEmitter = new SseEmitter(600000L); // 10 分钟超时
+        
         // 设置响应头，确保使用 UTF-8 编码
         try {
             org.springframework.web.context.request.RequestAttributes requestAttributes = 
@@ -357,28 +831,6 @@ public class AiController {
             log.warn("[SSE] Failed to set response encoding, may cause encoding issues", e);
         }
         
-        // 参数验证
-        if (message == null || message.trim().isEmpty()) {
-            log.warn("[SSE] message parameter is null or empty");
-            try {
-                sseEmitter.send(SseEmitter.event()
-                        .name("error")
-                        .data("错误：message 参数不能为空"));
-                sseEmitter.complete();
-                return sseEmitter;
-            } catch (IOException e) {
-                log.error("[SSE] Error sending parameter validation error", e);
-                sseEmitter.completeWithError(e);
-                return sseEmitter;
-            }
-        }
-        
-        // 如果 chatId 为空，使用默认值
-        if (chatId == null || chatId.trim().isEmpty()) {
-            chatId = "default-" + System.currentTimeMillis();
-            log.info("[SSE] Using default chatId: {}", chatId);
-        }
-        
         // 设置字符编码
         sseEmitter.onCompletion(() -> log.info("[SSE] Connection completed"));
         sseEmitter.onTimeout(() -> {
@@ -404,137 +856,162 @@ public class AiController {
             }
         });
         
+        return sseEmitter;
+    }
+
+    /**
+     * 订阅模型输出并推送给 SseEmitter：思考内容为 thinking 事件，正文经实时格式化后为 message 事件，结束时发送 complete
+     */
+    private static void streamToEmitter(SseEmitter sseEmitter, Flux<String> stream) {
         // 用于追踪内容和状态
         final StringBuilder fullContent = new StringBuilder();
         final AtomicBoolean inThinkingBlock = new AtomicBoolean(false);
         final RealtimeStreamFormatter formatter = new RealtimeStreamFormatter();
         
-        try {
-            // 获取 Flux 响应式数据流并且直接通过订阅推送给 SseEmitter
-            dispatchAssistantApp.doChatByStream(message, chatId)
-                    .doOnSubscribe(subscription -> {
-                        log.info("[SSE] Stream subscription started");
-                    })
-                    .doOnError(error -> {
-                        log.error("[SSE] Stream error occurred", error);
-                    })
-                    .doOnComplete(() -> {
-                        log.info("[SSE] Stream completed");
-                    })
-                    .subscribe(chunk -> {
-                        try {
-                            if (chunk == null || chunk.isEmpty()) {
-                                return;
-                            }
-                            
-                            fullContent.append(chunk);
-                            String accumulated = fullContent.toString();
-                            
-                            // 查找thinking标签
-                            boolean hasThinkStart = accumulated.contains("<think>");
-                            boolean hasThinkEnd = accumulated.contains("</think>");
-                            
-                            // 清理标签字符
-                            String cleanChunk = chunk.replace("<think>", "")
-                                                   .replace("</think>", "");
-                            
-                            // 判断当前内容类型
-                            boolean isThinkingContent = hasThinkStart && !hasThinkEnd;
-                            
-                            // 更新状态
-                            if (hasThinkStart && !inThinkingBlock.get()) {
-                                inThinkingBlock.set(true);
-                            }
-                            if (hasThinkEnd && inThinkingBlock.get()) {
-                                inThinkingBlock.set(false);
-                            }
-                            
-                            // 只发送非空内容
-                            if (!cleanChunk.trim().isEmpty()) {
-                                if (isThinkingContent || inThinkingBlock.get()) {
-                                    // 发送thinking事件（不格式化思考内容）
+        stream
+                .doOnSubscribe(subscription -> {
+                    log.info("[SSE] Stream subscription started");
+                })
+                .doOnError(error -> {
+                    log.error("[SSE] Stream error occurred", error);
+                })
+                .doOnComplete(() -> {
+                    log.info("[SSE] Stream completed");
+                })
+                .subscribe(chunk -> {
+                    try {
+                        if (chunk == null || chunk.isEmpty()) {
+                            return;
+                        }
+                        
+                        fullContent.append(chunk);
+                        String accumulated = fullContent.toString();
+                        
+                        // 查找thinking标签
+                        boolean hasThinkStart = accumulated.contains("<think>");
+                        boolean hasThinkEnd = accumulated.contains("</think>");
+                        
+                        // 清理标签字符
+                        String cleanChunk = chunk.replace("<think>", "")
+                                               .replace("</think>", "");
+                        
+                        // 判断当前内容类型
+                        boolean isThinkingContent = hasThinkStart && !hasThinkEnd;
+                        
+                        // 更新状态
+                        if (hasThinkStart && !inThinkingBlock.get()) {
+                            inThinkingBlock.set(true);
+                        }
+                        if (hasThinkEnd && inThinkingBlock.get()) {
+                            inThinkingBlock.set(false);
+                        }
+                        
+                        // 只发送非空内容
+                        if (!cleanChunk.trim().isEmpty()) {
+                            if (isThinkingContent || inThinkingBlock.get()) {
+                                // 发送thinking事件（不格式化思考内容）
+                                sseEmitter.send(SseEmitter.event()
+                                        .name("thinking")
+                                        .data(cleanChunk));
+                            } else {
+                                // 使用实时格式化器处理chunk，逐字实时格式化
+                                String formattedChunk = formatter.processChunk(cleanChunk);
+                                
+                                // 立即发送格式化后的chunk（保持流式输出）
+                                if (!formattedChunk.isEmpty()) {
                                     sseEmitter.send(SseEmitter.event()
-                                            .name("thinking")
-                                            .data(cleanChunk));
-                                } else {
-                                    // 使用实时格式化器处理chunk，逐字实时格式化
-                                    String formattedChunk = formatter.processChunk(cleanChunk);
-                                    
-                                    // 立即发送格式化后的chunk（保持流式输出）
-                                    if (!formattedChunk.isEmpty()) {
-                                        sseEmitter.send(SseEmitter.event()
-                                                .name("message")
-                                                .data(formattedChunk));
-                                    }
+                                            .name("message")
+                                            .data(formattedChunk));
                                 }
                             }
-                        } catch (IOException e) {
-                            log.error("[SSE] Error sending SSE data chunk", e);
-                            try {
-                                sseEmitter.send(SseEmitter.event()
-                                        .name("error")
-                                        .data("发送数据错误: " + e.getMessage()));
-                                sseEmitter.completeWithError(e);
-                            } catch (IOException ex) {
-                                log.error("[SSE] Error completing after send error", ex);
-                            }
-                        } catch (Exception e) {
-                            log.error("[SSE] Unexpected error processing chunk", e);
-                            try {
-                                sseEmitter.send(SseEmitter.event()
-                                        .name("error")
-                                        .data("处理数据错误: " + e.getMessage()));
-                                sseEmitter.completeWithError(e);
-                            } catch (IOException ex) {
-                                log.error("[SSE] Error completing after processing error", ex);
-                            }
                         }
-                    }, error -> {
-                        log.error("[SSE] Error in stream processing", error);
+                    } catch (IOException e) {
+                        log.error("[SSE] Error sending SSE data chunk", e);
                         try {
                             sseEmitter.send(SseEmitter.event()
                                     .name("error")
-                                    .data("流处理错误: " + (error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName())));
-                            sseEmitter.complete();
-                        } catch (IOException e) {
-                            log.error("[SSE] Error completing after stream error", e);
-                            sseEmitter.completeWithError(error);
+                                    .data("发送数据错误: " + e.getMessage()));
+                            sseEmitter.completeWithError(e);
+                        } catch (IOException ex) {
+                            log.error("[SSE] Error completing after send error", ex);
                         }
-                    }, () -> {
+                    } catch (Exception e) {
+                        log.error("[SSE] Unexpected error processing chunk", e);
                         try {
-                            log.info("[SSE] Stream finished, total content length: {}", fullContent.length());
-                            // 处理剩余的缓冲区内容
-                            String remaining = formatter.finish();
-                            if (!remaining.isEmpty()) {
-                                sseEmitter.send(SseEmitter.event()
-                                        .name("message")
-                                        .data(remaining));
-                            }
-                            
                             sseEmitter.send(SseEmitter.event()
-                                    .name("complete")
-                                    .data("Stream completed"));
-                            sseEmitter.complete();
-                        } catch (IOException e) {
-                            log.error("[SSE] Error completing SSE", e);
+                                    .name("error")
+                                    .data("处理数据错误: " + e.getMessage()));
                             sseEmitter.completeWithError(e);
+                        } catch (IOException ex) {
+                            log.error("[SSE] Error completing after processing error", ex);
                         }
-                    });
-        } catch (Exception e) {
-            log.error("[SSE] Error setting up stream", e);
-            try {
-                sseEmitter.send(SseEmitter.event()
-                        .name("error")
-                        .data("设置流失败: " + e.getMessage()));
-                sseEmitter.complete();
-            } catch (IOException ex) {
-                log.error("[SSE] Error completing after setup error", ex);
-                sseEmitter.completeWithError(e);
-            }
+                    }
+                }, error -> {
+                    log.error("[SSE] Error in stream processing", error);
+                    try {
+                        sseEmitter.send(SseEmitter.event()
+                                .name("error")
+                                .data("流处理错误: " + (error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName())));
+                        sseEmitter.complete();
+                    } catch (IOException e) {
+                        log.error("[SSE] Error completing after stream error", e);
+                        sseEmitter.completeWithError(error);
+                    }
+                }, () -> {
+                    try {
+                        log.info("[SSE] Stream finished, total content length: {}", fullContent.length());
+                        // 处理剩余的缓冲区内容
+                        String remaining = formatter.finish();
+                        if (!remaining.isEmpty()) {
+                            sseEmitter.send(SseEmitter.event()
+                                    .name("message")
+                                    .data(remaining));
+                        }
+                        
+                        sseEmitter.send(SseEmitter.event()
+                                .name("complete")
+                                .data("Stream completed"));
+                        sseEmitter.complete();
+                    } catch (IOException e) {
+                        log.error("[SSE] Error completing SSE", e);
+                        sseEmitter.completeWithError(e);
+                    }
+                });
+    }
+
+    private static void sendDraft(SseEmitter sseEmitter, String draft) {
+        if (draft == null) {
+            return;
+        }
+        try {
+            sseEmitter.send(SseEmitter.event()
+                    .name("draft")
+                    .data(draft));
+        } catch (IOException e) {
+            log.warn("[SSE] Error sending draft event: {}", e.getMessage());
+        }
+    }
+
+    private static void sendErrorAndComplete(SseEmitter sseEmitter, String error) {
+        try {
+            sseEmitter.send(SseEmitter.event()
+                    .name("error")
+                    .data(error));
+            sseEmitter.complete();
+        } catch (IOException e) {
+            log.error("[SSE] Error sending error message", e);
+            sseEmitter.completeWithError(e);
+        }
+    }
+
+    private static void sendProgress(SseEmitter sseEmitter, MapReduceSummarizer.Progress progress) {
+        try {
+            sseEmitter.send(SseEmitter.event()
+                    .name("progress")
+                    .data(progress, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            log.warn("[SSE] Error sending progress event: {}", e.getMessage());
         }
-        
-        // 返回
-        return sseEmitter;
     }
 
     /**
@@ -708,50 +1185,31 @@ public class AiController {
 
     /**
      * 获取所有对话历史列表（生产调度分析助手）
+     * 直接读取会话清单索引，不反序列化会话内容；按最后修改时间倒序排列
+     *
+     * @param current  页码（从 1 开始），为空时返回全部
+     * @param pageSize 每页条数
      */
     @GetMapping("/dispatch_app/chat/history/list")
-    public List<ChatHistoryItem> getChatHistoryList() {
+    public List<ChatHistoryItem> getChatHistoryList(@RequestParam(required = false) Integer current,
+                                                    @RequestParam(required = false) Integer pageSize) {
         try {
-            ChatMemory chatMemory = dispatchAssistantApp.getChatMemory();
-            
-            // 获取文件目录
-            String fileDir = System.getProperty("user.dir") + "/tmp/chat-memory";
-            File directory = new File(fileDir);
-            
-            if (!directory.exists() || !directory.isDirectory()) {
-                return new ArrayList<>();
-            }
-            
-            // 读取所有 .kryo 文件
-            File[] files = directory.listFiles((dir, name) -> name.endsWith(".kryo"));
-            
-            if (files == null || files.length == 0) {
-                return new ArrayList<>();
+            // 先刷写缓存中尚未落盘的消息，保证清单包含最新的会话
+            cachingChatMemory.flush();
+            List<ConversationManifest.ConversationMeta> metas = fileBasedChatMemory.listConversations();
+
+            int from = 0;
+            int to = metas.size();
+            if (current != null && pageSize != null && current > 0 && pageSize > 0) {
+                from = (int) Math.min((long) (current - 1) * pageSize, metas.size());
+                to = Math.min(from + pageSize, metas.size());
             }
-            
-            // 转换为 ChatHistoryItem
-            List<ChatHistoryItem> historyList = new ArrayList<>();
-            
-            for (File file : files) {
-                try {
-                    String chatId = file.getName().replace(".kryo", "");
-                    List<Message> messages = chatMemory.get(chatId);
-                    
-                    if (messages != null && !messages.isEmpty()) {
-                        // 获取第一条用户消息作为标题
-                        String title = extractTitle(messages);
-                        String time = formatFileTime(file.lastModified());
-                        
-                        historyList.add(new ChatHistoryItem(chatId, title, time, messages.size()));
-                    }
-                } catch (Exception e) {
-                    log.error("Error reading chat file: " + file.getName(), e);
-                }
+
+            List<ChatHistoryItem> historyList = new ArrayList<>(to - from);
+            for (ConversationManifest.ConversationMeta meta : metas.subList(from, to)) {
+                historyList.add(new ChatHistoryItem(meta.id(), meta.title(),
+                        formatFileTime(meta.lastModified()), meta.messageCount()));
             }
-            
-            // 按时间倒序排序
-            historyList.sort((a, b) -> b.time.compareTo(a.time));
-            
             return historyList;
         } catch (Exception e) {
             log.error("Error getting chat history list", e);
@@ -765,24 +1223,17 @@ public class AiController {
     @GetMapping("/dispatch_app/chat/history/detail")
     public List<ChatMessageDto> getChatHistoryDetail(String chatId) {
         try {
-            ChatMemory chatMemory = dispatchAssistantApp.getChatMemory();
-            List<Message> messages = chatMemory.get(chatId);
+            // 直接读取完整历史（窗口记忆模式下 getChatMemory() 只返回最近几轮）
+            List<Message> messages = cachingChatMemory.get(chatId);
             
             if (messages == null || messages.isEmpty()) {
                 return new ArrayList<>();
             }
             
             // 转换为 DTO
-            List<ChatMessageDto> dtos = new ArrayList<>();
+            List<ChatMessageDto> dtos = new ArrayList<>(messages.size());
             for (Message message : messages) {
-                String content = extractMessageContent(message);
-                String role = "assistant";
-                if (message.getClass().getSimpleName().contains("User")) {
-                    role = "user";
-                } else if (message.getClass().getSimpleName().contains("System")) {
-                    role = "system";
-                }
-                dtos.add(new ChatMessageDto(role, content));
+                dtos.add(new ChatMessageDto(roleOf(message), contentOf(message)));
             }
             
             return dtos;
@@ -793,32 +1244,66 @@ public class AiController {
     }
 
     /**
-     * 从 Message 对象中提取内容
+     * 分页获取对话消息（NDJSON，每行一条消息）
+     * 只读取本页消息，长对话也能快速显示第一页；下一页游标通过响应头 X-Next-Cursor 返回，没有更多消息时不返回该响应头
+     *
+     * @param cursor 起始游标（首页不传）
+     * @param limit  每页消息数，最大 200
      */
-    private String extractMessageContent(Message message) {
-        try {
-            // 尝试 getContent
-            var getContent = message.getClass().getMethod("getContent");
-            String content = (String) getContent.invoke(message);
-            if (content != null && !content.isEmpty()) {
-                return content;
-            }
-        } catch (Exception e) {
-            log.debug("getContent() not found");
-        }
-        
-        try {
-            // 尝试 getText
-            var getText = message.getClass().getMethod("getText");
-            String text = (String) getText.invoke(message);
-            if (text != null && !text.isEmpty()) {
-                return text;
+    @GetMapping(value = "/dispatch_app/chat/history/messages", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamChatHistoryMessages(String chatId,
+                                                                           @RequestParam(defaultValue = "0") int cursor,
+                                                                           @RequestParam(defaultValue = "50") int limit) {
+        int offset = Math.max(0, cursor);
+        int pageSize = Math.max(1, Math.min(limit, 200));
+        // 多取一条用于判断是否还有下一页
+        List<Message> page = cachingChatMemory.getPage(chatId, offset, pageSize + 1);
+        boolean hasMore = page.size() > pageSize;
+        List<Message> messages = hasMore ? page.subList(0, pageSize) : page;
+
+        StreamingResponseBody body = outputStream -> {
+            for (int i = 0; i < messages.size(); i++) {
+                Message message = messages.get(i);
+                outputStream.write(objectMapper.writeValueAsBytes(
+                        new ChatMessageLine(offset + i, roleOf(message), contentOf(message))));
+                outputStream.write('\n');
             }
-        } catch (Exception e) {
-            log.debug("getText() not found");
+            outputStream.flush();
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON);
+        if (hasMore) {
+            response.header("X-Next-Cursor", String.valueOf(offset + pageSize));
         }
-        
-        return "";
+        return response.body(body);
+    }
+
+    /**
+     * 全文搜索对话历史，返回命中的会话及摘要片段
+     * 多个查询词用空格分隔，会话需包含所有词；写入后约 1 秒（缓存回写间隔）可被搜索到
+     */
+    @GetMapping("/dispatch_app/chat/history/search")
+    public ChatHistoryIndex.SearchResult searchChatHistory(String q, @RequestParam(defaultValue = "20") int limit) {
+        cachingChatMemory.flush();
+        return chatHistoryIndex.search(q, Math.min(limit, 100));
+    }
+
+    /**
+     * 消息角色（工具调用结果与此前一致按 assistant 显示）
+     */
+    private static String roleOf(Message message) {
+        return switch (message.getMessageType()) {
+            case USER -> "user";
+            case SYSTEM -> "system";
+            default -> "assistant";
+        };
+    }
+
+    /**
+     * 消息正文，直接调用 getText()，不再通过反射查找方法
+     */
+    private static String contentOf(Message message) {
+        String text = message.getText();
+        return text != null ? text : "";
     }
 
     /**
@@ -837,46 +1322,23 @@ public class AiController {
     }
 
     /**
-     * 从消息列表中提取标题（第一条用户消息的前50个字符）
+     * 对话记忆缓存统计（命中/未命中/回写次数等），用于评估缓存容量
      */
-    private String extractTitle(List<Message> messages) {
-        if (messages == null || messages.isEmpty()) {
-            return "新对话";
-        }
-        
-        try {
-            for (Message message : messages) {
-                // 检查是否为用户消息
-                if (message.getClass().getSimpleName().contains("User")) {
-                    // 使用反射获取内容
-                    try {
-                        var getContent = message.getClass().getMethod("getContent");
-                        String content = (String) getContent.invoke(message);
-                        if (content != null && !content.isEmpty()) {
-                            // 取前50个字符作为标题
-                            String title = content.length() > 50 ? content.substring(0, 50) + "..." : content;
-                            return title.replace("\n", " ").trim();
-                        }
-                    } catch (Exception e) {
-                        // 如果 getContent 不存在，尝试 getText
-                        try {
-                            var getText = message.getClass().getMethod("getText");
-                            String text = (String) getText.invoke(message);
-                            if (text != null && !text.isEmpty()) {
-                                String title = text.length() > 50 ? text.substring(0, 50) + "..." : text;
-                                return title.replace("\n", " ").trim();
-                            }
-                        } catch (Exception e2) {
-                            log.debug("Could not extract text from message", e2);
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error extracting title from messages", e);
+    @GetMapping("/dispatch_app/chat/memory/stats")
+    public CachingChatMemory.CacheStats getChatMemoryStats() {
+        return cachingChatMemory.getStats();
+    }
+
+    /**
+     * 去掉思考内容后节省的 token 统计；不传 chatId 时返回所有会话合计
+     */
+    @GetMapping("/dispatch_app/chat/memory/think_savings")
+    public ThinkStrippingChatMemory.SavingsStats getThinkSavings(@RequestParam(required = false) String chatId) {
+        if (chatId == null || chatId.isEmpty()) {
+            return thinkStrippingChatMemory.getTotalSavings();
         }
-        
-        return "新对话";
+        ThinkStrippingChatMemory.SavingsStats stats = thinkStrippingChatMemory.getSavings(chatId);
+        return stats != null ? stats : new ThinkStrippingChatMemory.SavingsStats(chatId, 0, 0, 0, 0);
     }
 
     /**
@@ -888,6 +1350,13 @@ public class AiController {
         return dateTime.format(formatter);
     }
 
+    /**
+     * 某天的重复合并报告
+     *
+     * @param tokenSavedRatio 合并后节省的估算 token 比例
+     */
+    public record DedupReport(String date, double tokenSavedRatio, DispatchLogDeduplicator.DedupResult result) {}
+
     /**
      * 对话历史项
      */
@@ -897,4 +1366,9 @@ public class AiController {
      * 对话消息 DTO
      */
     public record ChatMessageDto(String role, String content) {}
+
+    /**
+     * 分页消息接口的一行，index 为消息在会话中的下标
+     */
+    public record ChatMessageLine(int index, String role, String content) {}
 }
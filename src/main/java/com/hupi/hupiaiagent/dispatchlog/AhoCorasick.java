@@ -0,0 +1,119 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick 多模式匹配自动机（构建后不可变，可多线程共用）
+ * <p>
+ * 对文本只扫描一遍即可找出全部模式串的出现位置，耗时与文本长度加匹配数成正比，与词典大小无关。
+ * {@link #find} 返回从左到右、同一起点取最长、互不重叠的匹配，例如词典中同时有"白豹作业区"和"白豹"时只取前者。
+ */
+final class AhoCorasick {
+
+    private final List<Map<Character, Integer>> children = new ArrayList<>();
+    private final List<Integer> fail = new ArrayList<>();
+    // 以该节点结尾的最长模式编号，没有为 -1
+    private final List<Integer> output = new ArrayList<>();
+    // 沿失败链第一个有输出的节点，没有为 -1
+    private final List<Integer> dictLink = new ArrayList<>();
+    private final int[] lengths;
+
+    /**
+     * @param patterns 模式串，编号即下标；空串忽略
+     */
+    AhoCorasick(List<String> patterns) {
+        lengths = new int[patterns.size()];
+        newNode();
+        for (int id = 0; id < patterns.size(); id++) {
+            String pattern = patterns.get(id);
+            lengths[id] = pattern.length();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = children.get(node).get(pattern.charAt(i));
+                if (next == null) {
+                    next = newNode();
+                    children.get(node).put(pattern.charAt(i), next);
+                }
+                node = next;
+            }
+            if (output.get(node) < 0) {
+                output.set(node, id);
+            }
+        }
+        // 按层建立失败链
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : children.get(0).values()) {
+            fail.set(child, 0);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (Map.Entry<Character, Integer> entry : children.get(node).entrySet()) {
+                int child = entry.getValue();
+                int f = fail.get(node);
+                while (f > 0 && !children.get(f).containsKey(entry.getKey())) {
+                    f = fail.get(f);
+                }
+                Integer target = children.get(f).get(entry.getKey());
+                int childFail = target != null && target != child ? target : 0;
+                fail.set(child, childFail);
+                dictLink.set(child, output.get(childFail) >= 0 ? childFail : dictLink.get(childFail));
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * 文本中全部互不重叠的匹配（从左到右，同一起点取最长）
+     */
+    List<Match> find(CharSequence text) {
+        List<Match> all = new ArrayList<>();
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            while (node > 0 && !children.get(node).containsKey(c)) {
+                node = fail.get(node);
+            }
+            node = children.get(node).getOrDefault(c, 0);
+            for (int n = output.get(node) >= 0 ? node : dictLink.get(node); n > 0; n = dictLink.get(n)) {
+                int id = output.get(n);
+                all.add(new Match(i + 1 - lengths[id], i + 1, id));
+            }
+        }
+        all.sort(Comparator.comparingInt(Match::start).thenComparing(Comparator.comparingInt(Match::end).reversed()));
+        List<Match> selected = new ArrayList<>();
+        int covered = 0;
+        for (Match match : all) {
+            if (match.start() >= covered) {
+                selected.add(match);
+                covered = match.end();
+            }
+        }
+        return selected;
+    }
+
+    private int newNode() {
+        children.add(new HashMap<>());
+        fail.add(0);
+        output.add(-1);
+        dictLink.add(-1);
+        return children.size() - 1;
+    }
+
+    /**
+     * 一次匹配，[start, end) 为在文本中的位置
+     *
+     * @param pattern 模式编号
+     */
+    record Match(int start, int end, int pattern) {
+    }
+}
@@ -0,0 +1,414 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 调度日志目录册
+ * <p>
+ * 启动时扫描日志目录（dispatch.logs.dir，其次为 {user.dir}/tmp/dispatch-logs），记录每天日志的大小、修改时间和内容哈希；
+ * 之后由 WatchService 监听目录变化，文件只是追加时只读取新增部分并续算哈希，不重读整个文件。
+ * 未能监听全部目录时（关闭监听、监听启动失败或配置目录启动时尚不存在），查询时比对文件大小和修改时间，有变化再同步。
+ * 内容确有变化时向已注册的 {@link DispatchLogListener} 发出事件，供事件索引、摘要缓存等失效或增量更新。
+ * 同一日期在多个目录都存在时，以配置目录中的为准。
+ */
+@Component
+@Slf4j
+public class DispatchLogCatalog {
+
+    private static final Pattern LOG_FILE = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})\\.txt");
+
+    // 判断"只是追加"时比对的原文件末尾字节数
+    private static final int TAIL_BYTES = 64;
+
+    @Value("${dispatch.logs.dir:}")
+    private String configuredDir;
+
+    @Value("${dispatch.log-catalog.watch:true}")
+    private boolean watch;
+
+    @Value("${dispatch.log-catalog.debounce-ms:200}")
+    private long debounceMs;
+
+    private List<File> dirs;
+
+    private final Map<String, Tracked> entries = new ConcurrentHashMap<>();
+
+    private final List<DispatchLogListener> listeners = new CopyOnWriteArrayList<>();
+
+    private WatchService watchService;
+
+    // 所有目录都已注册监听时为 true，此时查询直接使用目录册
+    private volatile boolean watching;
+
+    public DispatchLogCatalog() {
+    }
+
+    /**
+     * 直接指定日志目录（按优先级排列，用于测试或非 Spring 环境），不启动目录监听
+     */
+    DispatchLogCatalog(List<File> dirs) {
+        this.dirs = new ArrayList<>(dirs);
+        rescan();
+    }
+
+    @PostConstruct
+    public void init() {
+        dirs = new ArrayList<>();
+        if (configuredDir != null && !configuredDir.isBlank()) {
+            File dir = new File(configuredDir.trim());
+            // 目录暂不存在时仍保留，之后出现的日志在查询时被发现
+            if (!dir.isDirectory()) {
+                log.warn("[DispatchLogCatalog] configured dir not found: {}", dir.getAbsolutePath());
+            }
+            dirs.add(dir);
+        }
+        File defaultDir = new File(System.getProperty("user.dir"), "tmp/dispatch-logs");
+        if (!defaultDir.isDirectory() && !defaultDir.mkdirs()) {
+            log.warn("[DispatchLogCatalog] failed to create {}", defaultDir.getAbsolutePath());
+        }
+        dirs.add(defaultDir);
+        long start = System.currentTimeMillis();
+        rescan();
+        log.info("[DispatchLogCatalog] {} logs in {}, cost={}ms", entries.size(), dirs, System.currentTimeMillis() - start);
+        if (watch) {
+            startWatcher();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("[DispatchLogCatalog] failed to close watch service", e);
+            }
+        }
+    }
+
+    public void addListener(DispatchLogListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 某天日志的文件位置；目录册中没有时再检查一次磁盘（文件可能刚出现、监听事件尚未处理），仍不存在时返回第一个已存在目录下的占位文件
+     */
+    public File resolve(String date) {
+        Tracked tracked = lookup(date);
+        if (tracked != null) {
+            return tracked.file;
+        }
+        if (LOG_FILE.matcher(date + ".txt").matches()) {
+            refresh(date);
+            tracked = entries.get(date);
+            if (tracked != null) {
+                return tracked.file;
+            }
+        }
+        for (File dir : dirs) {
+            if (dir.isDirectory()) {
+                return new File(dir, date + ".txt");
+            }
+        }
+        return new File(dirs.get(0), date + ".txt");
+    }
+
+    /**
+     * 某天日志的目录册信息，不存在时返回 null
+     */
+    public Entry get(String date) {
+        Tracked tracked = lookup(date);
+        return tracked != null ? tracked.toEntry() : null;
+    }
+
+    /**
+     * 目录册中的条目；没有监听时先确认文件未变（位置、大小、修改时间），有变化再同步
+     */
+    private Tracked lookup(String date) {
+        Tracked tracked = entries.get(date);
+        if (tracked == null || watching) {
+            return tracked;
+        }
+        File file = locate(date);
+        if (file == null || !file.equals(tracked.file) || file.length() != tracked.size || file.lastModified() != tracked.lastModified) {
+            refresh(date);
+            tracked = entries.get(date);
+        }
+        return tracked;
+    }
+
+    /**
+     * 全部日志（按日期排序）
+     */
+    public List<Entry> list() {
+        Map<String, Entry> sorted = new TreeMap<>();
+        entries.forEach((date, tracked) -> sorted.put(date, tracked.toEntry()));
+        return new ArrayList<>(sorted.values());
+    }
+
+    /**
+     * 重新扫描所有目录
+     */
+    public void rescan() {
+        Set<String> dates = new TreeSet<>(entries.keySet());
+        for (File dir : dirs) {
+            String[] names = dir.list();
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                Matcher matcher = LOG_FILE.matcher(name);
+                if (matcher.matches()) {
+                    dates.add(matcher.group(1));
+                }
+            }
+        }
+        dates.forEach(this::refresh);
+    }
+
+    /**
+     * 同步某天日志的状态，内容有变化时通知监听器
+     */
+    synchronized void refresh(String date) {
+        Tracked previous = entries.get(date);
+        File file = locate(date);
+        if (file == null) {
+            if (previous != null) {
+                entries.remove(date);
+                fire(new DispatchLogListener.LogChangeEvent(date, DispatchLogListener.ChangeType.DELETED, previous.size, 0, null));
+            }
+            return;
+        }
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (previous != null && previous.file.equals(file) && previous.size == size && previous.lastModified == lastModified) {
+            return;
+        }
+        try {
+            if (previous != null && previous.file.equals(file) && size > previous.size && previous.tailMatches(file)) {
+                Tracked appended = previous.append(file, size, lastModified);
+                entries.put(date, appended);
+                fire(new DispatchLogListener.LogChangeEvent(date, DispatchLogListener.ChangeType.APPENDED, previous.size, size, appended.sha256));
+                return;
+            }
+            Tracked tracked = Tracked.read(file, lastModified);
+            entries.put(date, tracked);
+            if (previous == null) {
+                fire(new DispatchLogListener.LogChangeEvent(date, DispatchLogListener.ChangeType.CREATED, 0, tracked.size, tracked.sha256));
+            } else if (!previous.sha256.equals(tracked.sha256)) {
+                fire(new DispatchLogListener.LogChangeEvent(date, DispatchLogListener.ChangeType.MODIFIED, previous.size, tracked.size, tracked.sha256));
+            }
+        } catch (IOException e) {
+            log.warn("[DispatchLogCatalog] failed to read {}: {}", file, e.getMessage());
+        }
+    }
+
+    private File locate(String date) {
+        for (File dir : dirs) {
+            File file = new File(dir, date + ".txt");
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private void fire(DispatchLogListener.LogChangeEvent event) {
+        log.info("[DispatchLogCatalog] {} {} ({} -> {} bytes)", event.type(), event.date(), event.previousSize(), event.size());
+        for (DispatchLogListener listener : listeners) {
+            try {
+                listener.onLogChanged(event);
+            } catch (Exception e) {
+                log.warn("[DispatchLogCatalog] listener {} failed on {}", listener.getClass().getSimpleName(), event, e);
+            }
+        }
+    }
+
+    private void startWatcher() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            boolean all = true;
+            for (File dir : dirs) {
+                if (!dir.isDirectory()) {
+                    all = false;
+                    continue;
+                }
+                dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+            watching = all;
+        } catch (IOException e) {
+            log.warn("[DispatchLogCatalog] watch service unavailable, changes are picked up on lookup only", e);
+            return;
+        }
+        Thread watcher = new Thread(this::watchLoop, "dispatch-log-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // 同一次写入常触发多个 MODIFY 事件，稍等片刻合并后再处理
+                Set<String> dates = new TreeSet<>();
+                boolean overflow = false;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                            continue;
+                        }
+                        Matcher matcher = LOG_FILE.matcher(((Path) event.context()).getFileName().toString());
+                        if (matcher.matches()) {
+                            dates.add(matcher.group(1));
+                        }
+                    }
+                    key.reset();
+                    key = watchService.poll(debounceMs, TimeUnit.MILLISECONDS);
+                }
+                if (overflow) {
+                    rescan();
+                } else {
+                    dates.forEach(this::refresh);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // 应用关闭
+        }
+    }
+
+    /**
+     * 日志目录册条目
+     *
+     * @param sha256 文件内容哈希
+     */
+    public record Entry(String date, String path, long size, long lastModified, String sha256) {
+    }
+
+    /**
+     * 跟踪中的日志文件；digest 保存已读部分的哈希状态，追加时续算
+     */
+    private static final class Tracked {
+
+        private final File file;
+        private final long size;
+        private final long lastModified;
+        private final MessageDigest digest;
+        private final String sha256;
+        private final byte[] tail;
+
+        private Tracked(File file, long size, long lastModified, MessageDigest digest, byte[] tail) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+            this.sha256 = hex(digest);
+            this.tail = tail;
+        }
+
+        static Tracked read(File file, long lastModified) throws IOException {
+            MessageDigest digest = newDigest();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                long size = update(digest, raf, 0, raf.length());
+                return new Tracked(file, size, lastModified, digest, readTail(raf, size));
+            }
+        }
+
+        Tracked append(File file, long size, long lastModified) throws IOException {
+            MessageDigest next = cloneDigest(digest);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                long end = this.size + update(next, raf, this.size, size);
+                return new Tracked(file, end, lastModified, next, readTail(raf, end));
+            }
+        }
+
+        boolean tailMatches(File file) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                return Arrays.equals(tail, readTail(raf, size));
+            }
+        }
+
+        Entry toEntry() {
+            return new Entry(file.getName().substring(0, file.getName().length() - 4), file.getAbsolutePath(), size, lastModified, sha256);
+        }
+
+        private static long update(MessageDigest digest, RandomAccessFile raf, long from, long to) throws IOException {
+            raf.seek(from);
+            InputStream in = Channels.newInputStream(raf.getChannel());
+            byte[] buffer = new byte[64 * 1024];
+            long read = 0;
+            while (read < to - from) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, to - from - read));
+                if (n < 0) {
+                    break;
+                }
+                digest.update(buffer, 0, n);
+                read += n;
+            }
+            return read;
+        }
+
+        private static byte[] readTail(RandomAccessFile raf, long size) throws IOException {
+            int length = (int) Math.min(TAIL_BYTES, size);
+            byte[] bytes = new byte[length];
+            raf.seek(size - length);
+            raf.readFully(bytes);
+            return bytes;
+        }
+
+        private static String hex(MessageDigest digest) {
+            return HexFormat.of().formatHex(cloneDigest(digest).digest());
+        }
+
+        private static MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static MessageDigest cloneDigest(MessageDigest digest) {
+            try {
+                return (MessageDigest) digest.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import com.hupi.hupiaiagent.util.TokenEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 调度日志近似重复条目合并
+ * <p>
+ * 同一状态常被反复上报（如光缆中断每小时报一次，措辞略有不同），原样送入模型白白占用 token。
+ * 这里对每条事件的正文按字符二元组计算 64 位 SimHash，海明距离在阈值内、且类别和单位一致的条目归为一组
+ * （设备名称是启发式提取的，同一条线路常因前缀不同而提取结果不同，不作为条件；不同线路的条目指纹相差已远超阈值），
+ * 每组只保留一条：位置和时间取首次出现，正文取最后一次上报（状态最新），并注明上报次数和时间范围。
+ * 过短的条目（如"收到"）指纹不稳定，不参与合并。
+ */
+@Component
+public class DispatchLogDeduplicator {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+    @Value("${dispatch.log-dedup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${dispatch.log-dedup.similarity:0.85}")
+    private double similarity;
+
+    @Value("${dispatch.log-dedup.min-chars:12}")
+    private int minChars;
+
+    public DispatchLogDeduplicator() {
+    }
+
+    /**
+     * 直接指定参数（用于测试或非 Spring 环境）
+     */
+    public DispatchLogDeduplicator(double similarity, int minChars) {
+        this.enabled = true;
+        this.similarity = similarity;
+        this.minChars = minChars;
+    }
+
+    /**
+     * 合并近似重复的事件，保持原有顺序
+     */
+    public DedupResult collapse(List<DispatchLogEvent> events) {
+        int originalTokens = 0;
+        for (DispatchLogEvent event : events) {
+            originalTokens += TokenEstimator.estimate(event.render());
+        }
+        if (!enabled) {
+            return new DedupResult(events, events.size(), 0, originalTokens, originalTokens, List.of());
+        }
+        int maxDistance = maxDistance();
+        List<Group> groups = new ArrayList<>();
+        // 每条事件作为代表所在的组（不参与合并的为 null），以及是否已并入前面的组
+        Group[] owners = new Group[events.size()];
+        boolean[] merged = new boolean[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            DispatchLogEvent event = events.get(i);
+            if (event.time() == null || normalizedLength(event.text()) < minChars) {
+                continue;
+            }
+            long hash = simHash(event.text());
+            Group match = null;
+            for (Group group : groups) {
+                if (group.accepts(event, hash, maxDistance)) {
+                    match = group;
+                    break;
+                }
+            }
+            if (match != null) {
+                match.add(event);
+                merged[i] = true;
+            } else {
+                owners[i] = new Group(event, hash);
+                groups.add(owners[i]);
+            }
+        }
+
+        List<DispatchLogEvent> result = new ArrayList<>();
+        List<Duplicate> duplicates = new ArrayList<>();
+        int tokens = 0;
+        for (int i = 0; i < events.size(); i++) {
+            if (merged[i]) {
+                continue;
+            }
+            DispatchLogEvent event = owners[i] != null ? owners[i].representative() : events.get(i);
+            if (owners[i] != null && owners[i].members.size() > 1) {
+                duplicates.add(owners[i].toDuplicate());
+            }
+            result.add(event);
+            tokens += TokenEstimator.estimate(event.render());
+        }
+        return new DedupResult(result, events.size(), events.size() - result.size(), originalTokens, tokens, duplicates);
+    }
+
+    /**
+     * 当前参数的指纹（用于摘要缓存的键）
+     */
+    public String fingerprint() {
+        return enabled + "|" + similarity + "|" + minChars;
+    }
+
+    private int maxDistance() {
+        return (int) Math.floor((1 - similarity) * 64);
+    }
+
+    /**
+     * 正文的 64 位 SimHash，特征为去掉空白和标点后的相邻两个字符
+     */
+    static long simHash(String text) {
+        int[] weights = new int[64];
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                continue;
+            }
+            if (previous != 0) {
+                long feature = mix(((long) previous << 16) | c);
+                for (int bit = 0; bit < 64; bit++) {
+                    weights[bit] += ((feature >>> bit) & 1) != 0 ? 1 : -1;
+                }
+            }
+            previous = c;
+        }
+        long hash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                hash |= 1L << bit;
+            }
+        }
+        return hash;
+    }
+
+    static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    // splitmix64 的混合函数，使相邻特征的哈希位分布均匀
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    private static int normalizedLength(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    private static final class Group {
+
+        private final long hash;
+        private final List<DispatchLogEvent> members = new ArrayList<>();
+
+        Group(DispatchLogEvent first, long hash) {
+            this.hash = hash;
+            members.add(first);
+        }
+
+        boolean accepts(DispatchLogEvent event, long hash, int maxDistance) {
+            DispatchLogEvent first = members.get(0);
+            return first.category() == event.category()
+                    && Objects.equals(first.unit(), event.unit())
+                    && distance(this.hash, hash) <= maxDistance;
+        }
+
+        void add(DispatchLogEvent event) {
+            members.add(event);
+        }
+
+        DispatchLogEvent representative() {
+            DispatchLogEvent first = members.get(0);
+            if (members.size() == 1) {
+                return first;
+            }
+            DispatchLogEvent latest = members.get(members.size() - 1);
+            String text = latest.text() + String.format("（相近内容共上报%d次，%s 至 %s）",
+                    members.size(), first.time().format(TIME_FORMATTER), latest.time().format(TIME_FORMATTER));
+            return new DispatchLogEvent(first.seq(), first.time(), first.unit(), first.device(), text,
+                    first.category(), latest.lineCount());
+        }
+
+        Duplicate toDuplicate() {
+            DispatchLogEvent latest = members.get(members.size() - 1);
+            return new Duplicate(latest.text(), members.size(), members.get(0).time(), latest.time());
+        }
+    }
+
+    /**
+     * 一组被合并的近似重复条目
+     *
+     * @param text  保留的正文（最后一次上报）
+     * @param count 合并前的条目数
+     */
+    public record Duplicate(String text, int count, LocalDateTime first, LocalDateTime last) {
+    }
+
+    /**
+     * 合并结果
+     *
+     * @param events          合并后的事件
+     * @param originalEvents  合并前的事件数
+     * @param collapsedEvents 被合并掉的事件数
+     * @param originalTokens  合并前的估算 token 数
+     * @param tokens          合并后的估算 token 数
+     * @param duplicates      被合并的各组
+     */
+    public record DedupResult(List<DispatchLogEvent> events, int originalEvents, int collapsedEvents,
+                              int originalTokens, int tokens, List<Duplicate> duplicates) {
+
+        /**
+         * 不含事件列表的统计信息，用于接口返回
+         */
+        public DedupResult withoutEvents() {
+            return new DedupResult(null, originalEvents, collapsedEvents, originalTokens, tokens, duplicates);
+        }
+
+        public String summary() {
+            return String.format("collapsed %d/%d events in %d groups, ~%d -> %d tokens",
+                    collapsedEvents, originalEvents, duplicates.size(), originalTokens, tokens);
+        }
+    }
+}
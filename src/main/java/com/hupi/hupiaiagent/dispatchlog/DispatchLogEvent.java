@@ -0,0 +1,37 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 一条调度日志事件（行首带时间戳的一行及其续行）
+ *
+ * @param seq       在原文件中的序号（从 0 开始）
+ * @param time      行首时间戳，第一个时间戳之前的内容为 null
+ * @param unit      单位（如"第二输油处白豹作业区"），未识别时为 null
+ * @param device    设备或线路（如"铁西线0-13"），未识别时为 null
+ * @param text      时间戳之后的正文，多行条目以换行连接
+ * @param category  事件类别
+ * @param lineCount 原文行数
+ */
+public record DispatchLogEvent(int seq, LocalDateTime time, String unit, String device, String text,
+                               EventCategory category, int lineCount) {
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm");
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+    /**
+     * HH:mm，没有时间戳时返回空字符串
+     */
+    public String timeText() {
+        return time != null ? time.format(TIME_FORMATTER) : "";
+    }
+
+    /**
+     * 还原为日志原文格式（时间戳统一为 yyyy/MM/dd HH:mm）
+     */
+    public String render() {
+        return time != null ? time.format(TIMESTAMP_FORMATTER) + " " + text : text;
+    }
+}
@@ -0,0 +1,188 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import com.hupi.hupiaiagent.util.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 调度日志噪声过滤
+ * <p>
+ * 在日志送入模型之前，按规则去掉系统提示词中要求忽略的条目：纯计产上报、视频监控、巡检/例行检查。
+ * 以 {@link DispatchLogParser} 解析出的事件为单位判断（行首带时间戳的一行及其续行），避免把一条多行日志拆开；
+ * 条目中只要出现保留关键词（清管、检修、抢修、中断、停输等）就一律保留，宁可多留不可误删。
+ * 规则均为关键词匹配，结果确定、可复现。
+ */
+@Component
+@Slf4j
+public class DispatchLogFilter {
+
+    static final String DEFAULT_KEEP_KEYWORDS = "清管,检修,抢修,中断,停输,停产,降产,隐患,技改,故障,泄漏,冻堵,放空,动火";
+
+    static final String DEFAULT_PRODUCTION_KEYWORDS = "完成商品量,计划商品量,调度商品量,阶段商品量,任务商品量,计划量,欠产,超产,乙烷产量";
+
+    static final String DEFAULT_VIDEO_KEYWORDS = "视频,摄像机,录像率,上线率";
+
+    static final String DEFAULT_INSPECTION_KEYWORDS = "巡检,巡查,例行检查";
+
+    @Value("${dispatch.log-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${dispatch.log-filter.keep-keywords:" + DEFAULT_KEEP_KEYWORDS + "}")
+    private List<String> keepKeywords;
+
+    @Value("${dispatch.log-filter.production-keywords:" + DEFAULT_PRODUCTION_KEYWORDS + "}")
+    private List<String> productionKeywords;
+
+    @Value("${dispatch.log-filter.video-keywords:" + DEFAULT_VIDEO_KEYWORDS + "}")
+    private List<String> videoKeywords;
+
+    @Value("${dispatch.log-filter.inspection-keywords:" + DEFAULT_INSPECTION_KEYWORDS + "}")
+    private List<String> inspectionKeywords;
+
+    public DispatchLogFilter() {
+    }
+
+    /**
+     * 直接指定规则（用于测试或非 Spring 环境）
+     */
+    public DispatchLogFilter(List<String> keepKeywords, List<String> productionKeywords,
+                             List<String> videoKeywords, List<String> inspectionKeywords) {
+        this.enabled = true;
+        this.keepKeywords = keepKeywords;
+        this.productionKeywords = productionKeywords;
+        this.videoKeywords = videoKeywords;
+        this.inspectionKeywords = inspectionKeywords;
+    }
+
+    /**
+     * 使用默认规则的过滤器
+     */
+    public static DispatchLogFilter withDefaults() {
+        return new DispatchLogFilter(List.of(DEFAULT_KEEP_KEYWORDS.split(",")), List.of(DEFAULT_PRODUCTION_KEYWORDS.split(",")),
+                List.of(DEFAULT_VIDEO_KEYWORDS.split(",")), List.of(DEFAULT_INSPECTION_KEYWORDS.split(",")));
+    }
+
+    /**
+     * 过滤日志文本
+     */
+    public FilterResult filter(String content) {
+        if (content == null || content.isEmpty()) {
+            return new FilterResult("", 0, 0, 0, 0, 0, Map.of());
+        }
+        return filter(DispatchLogParser.parse(content));
+    }
+
+    /**
+     * 过滤已解析的事件，返回过滤后按日志原文格式拼接的文本
+     */
+    public FilterResult filter(List<DispatchLogEvent> events) {
+        int totalLines = 0;
+        int originalTokens = 0;
+        StringBuilder kept = new StringBuilder();
+        Map<String, Integer> removedByRule = new LinkedHashMap<>();
+        int removedLines = 0;
+        int removedEntries = 0;
+        int removedTokens = 0;
+        for (DispatchLogEvent event : events) {
+            String text = event.render();
+            int tokens = TokenEstimator.estimate(text);
+            totalLines += event.lineCount();
+            originalTokens += tokens;
+            String rule = enabled ? matchRule(event.text()) : null;
+            if (rule == null) {
+                kept.append(text).append('\n');
+                continue;
+            }
+            removedEntries++;
+            removedLines += event.lineCount();
+            removedTokens += tokens;
+            removedByRule.merge(rule, 1, Integer::sum);
+        }
+        return new FilterResult(kept.toString(), totalLines, removedLines, removedEntries,
+                originalTokens, removedTokens, removedByRule);
+    }
+
+    /**
+     * 过滤已解析的事件，返回保留的事件
+     */
+    public List<DispatchLogEvent> keep(List<DispatchLogEvent> events) {
+        if (!enabled) {
+            return events;
+        }
+        return events.stream().filter(event -> matchRule(event.text()) == null).toList();
+    }
+
+    /**
+     * 单条事件是否会被过滤掉
+     */
+    public boolean isNoise(DispatchLogEvent event) {
+        return enabled && matchRule(event.text()) != null;
+    }
+
+    /**
+     * 当前规则的指纹，规则变化时过滤结果随之变化（用于摘要缓存的键）
+     */
+    public String fingerprint() {
+        return enabled + "|" + keepKeywords + "|" + productionKeywords + "|" + videoKeywords + "|" + inspectionKeywords;
+    }
+
+    /**
+     * 返回命中的过滤规则名称，应保留时返回 null
+     */
+    private String matchRule(String text) {
+        if (containsAny(text, keepKeywords)) {
+            return null;
+        }
+        if (containsAny(text, productionKeywords)) {
+            return "production";
+        }
+        if (containsAny(text, videoKeywords)) {
+            return "video";
+        }
+        if (containsAny(text, inspectionKeywords)) {
+            return "inspection";
+        }
+        return null;
+    }
+
+    private static boolean containsAny(String text, List<String> keywords) {
+        if (keywords == null) {
+            return false;
+        }
+        for (String keyword : keywords) {
+            if (!keyword.isBlank() && text.contains(keyword.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 过滤结果
+     *
+     * @param content        过滤后的日志文本
+     * @param originalTokens 过滤前的估算 token 数
+     * @param removedTokens  去掉的内容估算 token 数
+     * @param removedByRule  各规则去掉的条目数（production/video/inspection）
+     */
+    public record FilterResult(String content, int totalLines, int removedLines, int removedEntries,
+                               int originalTokens, int removedTokens, Map<String, Integer> removedByRule) {
+
+        /**
+         * 不含过滤后文本的统计信息，用于接口返回
+         */
+        public FilterResult withoutContent() {
+            return new FilterResult(null, totalLines, removedLines, removedEntries, originalTokens, removedTokens, removedByRule);
+        }
+
+        public String summary() {
+            return String.format("removed %d/%d lines (%d entries), ~%d/%d tokens %s",
+                    removedLines, totalLines, removedEntries, removedTokens, originalTokens, removedByRule);
+        }
+    }
+}
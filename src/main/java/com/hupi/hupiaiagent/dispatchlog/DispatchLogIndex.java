@@ -0,0 +1,307 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.hupi.hupiaiagent.chatmemory.StripedLocks;
+import com.hupi.hupiaiagent.util.DispatchLogFileUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按天缓存的调度日志事件索引
+ * <p>
+ * 首次访问某天时解析 {date}.txt，之后直接返回内存中的事件列表；文件的修改时间或大小变化时自动重新解析。
+ * 目录册通知文件追加时只解析新增部分并入已有索引，其他变化直接使缓存失效。
+ * 追加的内容只解析到最后一个换行符，末尾写了一半的行（可能截断在多字节字符中间）留到下次追加时再解析；
+ * 整体解析时文件末尾没有换行的行照常解析，之后再有追加则整体重新解析。
+ * 事件按时间排序（没有时间的排在最前，同一时间保持原文顺序），并按分钟和类别建立下标，
+ * 时间段切片、按类别筛选不需要再扫描原文。
+ */
+@Component
+@Slf4j
+public class DispatchLogIndex implements DispatchLogListener {
+
+    @Resource
+    private DispatchLogFileUtil dispatchLogFileUtil;
+
+    @Resource
+    private DispatchLogCatalog dispatchLogCatalog;
+
+    @Value("${dispatch.log-index.max-days:62}")
+    private int maxDays;
+
+    private LRUCache<String, DayIndex> cache;
+
+    private final StripedLocks locks = new StripedLocks(16);
+
+    @PostConstruct
+    public void init() {
+        cache = CacheUtil.newLRUCache(maxDays);
+        dispatchLogCatalog.addListener(this);
+    }
+
+    /**
+     * 获取某天的事件索引，日志文件不存在时返回 null
+     */
+    public DayIndex getDay(String date) throws IOException {
+        File file = dispatchLogFileUtil.resolveLogFile(date);
+        if (!file.exists() || !file.isFile()) {
+            cache.remove(date);
+            return null;
+        }
+        DayIndex cached = cache.get(date);
+        if (cached != null && cached.isCurrent(file)) {
+            return cached;
+        }
+        ReentrantLock lock = locks.get(date);
+        lock.lock();
+        try {
+            cached = cache.get(date);
+            if (cached != null && cached.isCurrent(file)) {
+                return cached;
+            }
+            long start = System.currentTimeMillis();
+            long lastModified = file.lastModified();
+            long size = file.length();
+            DayIndex day = new DayIndex(date, lastModified, size, size, !endsWithNewline(file, size),
+                    DispatchLogParser.parse(file.toPath()));
+            cache.put(date, day);
+            log.info("[DispatchLogIndex] indexed {}: {} events, {} bytes, cost={}ms",
+                    date, day.size(), size, System.currentTimeMillis() - start);
+            return day;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onLogChanged(LogChangeEvent event) {
+        String date = event.date();
+        DayIndex cached = cache.get(date);
+        if (cached == null) {
+            return;
+        }
+        if (event.type() != ChangeType.APPENDED || cached.size != event.previousSize() || cached.partialTail) {
+            cache.remove(date);
+            return;
+        }
+        ReentrantLock lock = locks.get(date);
+        lock.lock();
+        try {
+            File file = dispatchLogFileUtil.resolveLogFile(date);
+            long start = System.currentTimeMillis();
+            // 从已解析的位置读起，包括上次留下的半行
+            byte[] bytes = new byte[(int) (event.size() - cached.parsedSize)];
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                long position = cached.parsedSize;
+                while (buffer.hasRemaining()) {
+                    int n = channel.read(buffer, position);
+                    if (n < 0) {
+                        break;
+                    }
+                    position += n;
+                }
+            }
+            // 处理期间文件可能又有追加，此时修改时间记为 -1，下次访问会整体重新解析（或等下一次追加事件）
+            long lastModified = file.length() == event.size() ? file.lastModified() : -1;
+            DayIndex day = cached.appendBytes(bytes, lastModified, event.size());
+            cache.put(date, day);
+            log.info("[DispatchLogIndex] appended {}: +{} bytes, {} -> {} events, cost={}ms",
+                    date, bytes.length, cached.size(), day.size(), System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            log.warn("[DispatchLogIndex] incremental update of {} failed, invalidated: {}", date, e.getMessage());
+            cache.remove(date);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean endsWithNewline(File file, long size) throws IOException {
+        if (size == 0) {
+            return true;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(size - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    /**
+     * 使某天的缓存失效，下次访问时重新解析
+     */
+    public void invalidate(String date) {
+        cache.remove(date);
+    }
+
+    /**
+     * 一天的事件索引（不可变）
+     */
+    public static final class DayIndex {
+
+        private final String date;
+        private final long lastModified;
+        // 文件大小
+        private final long size;
+        // 已解析到的字节位置，其后是尚未写完的半行
+        private final long parsedSize;
+        // 已解析的内容末尾没有换行（最后一行可能还会续写），不能在其后增量解析
+        private final boolean partialTail;
+        private final List<DispatchLogEvent> events;
+        // 与 events 一一对应的分钟时间戳（没有时间的事件为 Long.MIN_VALUE），用于二分查找
+        private final long[] minutes;
+        private final Map<EventCategory, int[]> byCategory;
+        // 文件中的最后一条事件，追加的续行并入这一条
+        private final DispatchLogEvent last;
+
+        DayIndex(String date, long lastModified, long size, List<DispatchLogEvent> parsed) {
+            this(date, lastModified, size, size, false, parsed);
+        }
+
+        DayIndex(String date, long lastModified, long size, long parsedSize, boolean partialTail,
+                 List<DispatchLogEvent> parsed) {
+            this.date = date;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.parsedSize = parsedSize;
+            this.partialTail = partialTail;
+            this.last = parsed.stream().max(Comparator.comparingInt(DispatchLogEvent::seq)).orElse(null);
+            List<DispatchLogEvent> sorted = new ArrayList<>(parsed);
+            sorted.sort(Comparator.comparing(DispatchLogEvent::time, Comparator.nullsFirst(Comparator.naturalOrder())));
+            this.events = Collections.unmodifiableList(sorted);
+            this.minutes = new long[sorted.size()];
+            Map<EventCategory, List<Integer>> positions = new EnumMap<>(EventCategory.class);
+            for (int i = 0; i < sorted.size(); i++) {
+                DispatchLogEvent event = sorted.get(i);
+                minutes[i] = toMinute(event.time());
+                positions.computeIfAbsent(event.category(), k -> new ArrayList<>()).add(i);
+            }
+            this.byCategory = new EnumMap<>(EventCategory.class);
+            positions.forEach((category, list) -> byCategory.put(category, list.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        /**
+         * 并入从 parsedSize 起读到的追加内容：只解析到最后一个换行符，其后的半行留待下次
+         *
+         * @param size 追加后的文件大小
+         */
+        DayIndex appendBytes(byte[] bytes, long lastModified, long size) throws IOException {
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            if (end == 0) {
+                return new DayIndex(date, lastModified, size, parsedSize, false, events);
+            }
+            List<DispatchLogEvent> appended = DispatchLogParser.parseAppended(
+                    new BufferedReader(new StringReader(new String(bytes, 0, end, StandardCharsets.UTF_8))), last);
+            return append(appended, lastModified, size, parsedSize + end);
+        }
+
+        /**
+         * 并入追加部分解析出的事件（第一条替换原来的最后一条）
+         */
+        DayIndex append(List<DispatchLogEvent> appended, long lastModified, long size, long parsedSize) {
+            List<DispatchLogEvent> merged = new ArrayList<>(events.size() + appended.size());
+            for (DispatchLogEvent event : events) {
+                if (event != last) {
+                    merged.add(event);
+                }
+            }
+            merged.addAll(appended);
+            return new DayIndex(date, lastModified, size, parsedSize, false, merged);
+        }
+
+        boolean isCurrent(File file) {
+            return file.lastModified() == lastModified && file.length() == size;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public int size() {
+            return events.size();
+        }
+
+        /**
+         * 按时间排序的全部事件
+         */
+        public List<DispatchLogEvent> events() {
+            return events;
+        }
+
+        /**
+         * [from, to) 时间段内的事件，参数为 null 表示不限
+         */
+        public List<DispatchLogEvent> between(LocalDateTime from, LocalDateTime to) {
+            int start = from == null ? 0 : lowerBound(toMinute(from));
+            int end = to == null ? events.size() : lowerBound(toMinute(to));
+            return start >= end ? List.of() : events.subList(start, end);
+        }
+
+        /**
+         * 指定类别的事件（按时间排序）
+         */
+        public List<DispatchLogEvent> byCategory(Set<EventCategory> categories) {
+            int[] positions = categories.stream()
+                    .flatMapToInt(category -> Arrays.stream(byCategory.getOrDefault(category, new int[0])))
+                    .sorted()
+                    .toArray();
+            List<DispatchLogEvent> result = new ArrayList<>(positions.length);
+            for (int position : positions) {
+                result.add(events.get(position));
+            }
+            return result;
+        }
+
+        /**
+         * 各类别的事件数
+         */
+        public Map<EventCategory, Integer> categoryCounts() {
+            Map<EventCategory, Integer> counts = new EnumMap<>(EventCategory.class);
+            byCategory.forEach((category, positions) -> counts.put(category, positions.length));
+            return counts;
+        }
+
+        private int lowerBound(long minute) {
+            int index = Arrays.binarySearch(minutes, minute);
+            if (index < 0) {
+                return -index - 1;
+            }
+            // 同一分钟可能有多条事件，取第一条
+            while (index > 0 && minutes[index - 1] == minute) {
+                index--;
+            }
+            return index;
+        }
+
+        private static long toMinute(LocalDateTime time) {
+            return time == null ? Long.MIN_VALUE : time.toEpochSecond(ZoneOffset.UTC) / 60;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+/**
+ * 调度日志文件变化监听器，通过 {@link DispatchLogCatalog#addListener} 注册
+ * <p>
+ * 回调在目录监听线程上执行，实现应尽快返回。
+ */
+public interface DispatchLogListener {
+
+    void onLogChanged(LogChangeEvent event);
+
+    enum ChangeType {
+        /** 新出现的日志文件 */
+        CREATED,
+        /** 在原内容之后追加（原有部分未变） */
+        APPENDED,
+        /** 内容被改写 */
+        MODIFIED,
+        DELETED
+    }
+
+    /**
+     * 日志文件变化事件
+     *
+     * @param previousSize 变化前的文件大小，CREATED 时为 0
+     * @param size         变化后的文件大小，DELETED 时为 0
+     * @param sha256       变化后的内容哈希，DELETED 时为 null
+     */
+    record LogChangeEvent(String date, ChangeType type, long previousSize, long size, String sha256) {
+    }
+}
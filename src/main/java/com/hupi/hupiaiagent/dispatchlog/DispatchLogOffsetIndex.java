@@ -0,0 +1,254 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.hupi.hupiaiagent.util.DispatchLogFileUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 调度日志文件的稀疏时间 -> 字节偏移索引
+ * <p>
+ * 每个文件顺序扫描一次，按约 block-bytes 字节分块（块边界总在带时间戳的行首，不会拆开一条日志），
+ * 记录每块的起始偏移和块内最早、最晚时间。按时间段取日志时只用 FileChannel 定位读取与时间段相交的块，
+ * 再按时间精确筛选；块内记录时间即使略有乱序也不会漏。跨午夜的班次（如 08:00 至次日 08:00）依次读取两天的文件。
+ */
+@Component
+@Slf4j
+public class DispatchLogOffsetIndex implements DispatchLogListener {
+
+    @Resource
+    private DispatchLogFileUtil dispatchLogFileUtil;
+
+    @Resource
+    private DispatchLogCatalog dispatchLogCatalog;
+
+    @Value("${dispatch.log-offset-index.block-bytes:4096}")
+    private int blockBytes;
+
+    @Value("${dispatch.log-index.max-days:62}")
+    private int maxDays;
+
+    private LRUCache<String, FileTimeIndex> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = CacheUtil.newLRUCache(maxDays);
+        dispatchLogCatalog.addListener(this);
+    }
+
+    @Override
+    public void onLogChanged(LogChangeEvent event) {
+        cache.remove(event.date());
+    }
+
+    /**
+     * [from, to) 时间段内的日志事件（按时间排序），可跨多天
+     */
+    public List<DispatchLogEvent> slice(LocalDateTime from, LocalDateTime to) throws IOException {
+        List<DispatchLogEvent> result = new ArrayList<>();
+        if (!from.isBefore(to)) {
+            return result;
+        }
+        long fromMinute = toMinute(from);
+        long toMinute = toMinute(to);
+        // 日志里的时间戳可能略晚于文件日期（如次日 00:05 的记录仍写在前一天的文件中），多看前一天
+        for (LocalDate date = from.toLocalDate().minusDays(1); date.atStartOfDay().isBefore(to); date = date.plusDays(1)) {
+            FileTimeIndex index = getIndex(date.toString());
+            if (index == null) {
+                continue;
+            }
+            long[] range = index.byteRange(fromMinute, toMinute);
+            if (range == null) {
+                continue;
+            }
+            String text = read(index.file, range[0], range[1]);
+            for (DispatchLogEvent event : DispatchLogParser.parse(new BufferedReader(new StringReader(text)))) {
+                if (event.time() != null && !event.time().isBefore(from) && event.time().isBefore(to)) {
+                    result.add(event);
+                }
+            }
+        }
+        result.sort(Comparator.comparing(DispatchLogEvent::time));
+        return result;
+    }
+
+    FileTimeIndex getIndex(String date) throws IOException {
+        File file = dispatchLogFileUtil.resolveLogFile(date);
+        if (!file.isFile()) {
+            cache.remove(date);
+            return null;
+        }
+        FileTimeIndex cached = cache.get(date);
+        if (cached != null && cached.isCurrent(file)) {
+            return cached;
+        }
+        long start = System.currentTimeMillis();
+        FileTimeIndex index = FileTimeIndex.build(file, blockBytes);
+        cache.put(date, index);
+        log.info("[DispatchLogOffsetIndex] indexed {}: {} bytes, {} blocks, cost={}ms",
+                date, index.size, index.offsets.length, System.currentTimeMillis() - start);
+        return index;
+    }
+
+    private static String read(File file, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = from;
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    break;
+                }
+                position += n;
+            }
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    static long toMinute(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    /**
+     * 单个文件的分块索引（不可变）
+     */
+    static final class FileTimeIndex {
+
+        // 行首只需看这么多字节就能判断是否带时间戳
+        private static final int PREFIX_BYTES = 40;
+
+        private final File file;
+        private final long size;
+        private final long lastModified;
+        private final long[] offsets;
+        private final long[] minMinutes;
+        private final long[] maxMinutes;
+
+        private FileTimeIndex(File file, long size, long lastModified, long[] offsets, long[] minMinutes, long[] maxMinutes) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.offsets = offsets;
+            this.minMinutes = minMinutes;
+            this.maxMinutes = maxMinutes;
+        }
+
+        static FileTimeIndex build(File file, int blockBytes) throws IOException {
+            long lastModified = file.lastModified();
+            long[] offsets = new long[16];
+            long[] mins = new long[16];
+            long[] maxs = new long[16];
+            int blocks = 0;
+            long blockStart = 0;
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            byte[] prefix = new byte[PREFIX_BYTES];
+            int prefixLength = 0;
+            long lineStart = 0;
+            long position = 0;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+                int b;
+                do {
+                    b = in.read();
+                    if (b >= 0 && b != '\n') {
+                        if (prefixLength < PREFIX_BYTES) {
+                            prefix[prefixLength++] = (byte) b;
+                        }
+                        position++;
+                        continue;
+                    }
+                    // 一行结束
+                    LocalDateTime time = prefixLength == 0 ? null
+                            : DispatchLogParser.timestampOf(new String(prefix, 0, prefixLength, StandardCharsets.UTF_8));
+                    if (time != null) {
+                        if (lineStart - blockStart >= blockBytes) {
+                            if (blocks == offsets.length) {
+                                offsets = Arrays.copyOf(offsets, blocks * 2);
+                                mins = Arrays.copyOf(mins, blocks * 2);
+                                maxs = Arrays.copyOf(maxs, blocks * 2);
+                            }
+                            offsets[blocks] = blockStart;
+                            mins[blocks] = min;
+                            maxs[blocks] = max;
+                            blocks++;
+                            blockStart = lineStart;
+                            min = Long.MAX_VALUE;
+                            max = Long.MIN_VALUE;
+                        }
+                        long minute = toMinute(time);
+                        min = Math.min(min, minute);
+                        max = Math.max(max, minute);
+                    }
+                    if (b >= 0) {
+                        position++;
+                    }
+                    lineStart = position;
+                    prefixLength = 0;
+                } while (b >= 0);
+            }
+            if (position > blockStart || blocks == 0) {
+                offsets = Arrays.copyOf(offsets, blocks + 1);
+                mins = Arrays.copyOf(mins, blocks + 1);
+                maxs = Arrays.copyOf(maxs, blocks + 1);
+                offsets[blocks] = blockStart;
+                mins[blocks] = min;
+                maxs[blocks] = max;
+                blocks++;
+            }
+            return new FileTimeIndex(file, position, lastModified,
+                    Arrays.copyOf(offsets, blocks), Arrays.copyOf(mins, blocks), Arrays.copyOf(maxs, blocks));
+        }
+
+        boolean isCurrent(File file) {
+            return this.file.equals(file) && file.length() == size && file.lastModified() == lastModified;
+        }
+
+        /**
+         * 与 [fromMinute, toMinute) 相交的块覆盖的字节范围 [start, end)，没有时返回 null
+         */
+        long[] byteRange(long fromMinute, long toMinute) {
+            int first = -1;
+            int last = -1;
+            for (int i = 0; i < offsets.length; i++) {
+                if (maxMinutes[i] >= fromMinute && minMinutes[i] < toMinute) {
+                    if (first < 0) {
+                        first = i;
+                    }
+                    last = i;
+                }
+            }
+            if (first < 0) {
+                return null;
+            }
+            long end = last + 1 < offsets.length ? offsets[last + 1] : size;
+            return new long[]{offsets[first], end};
+        }
+
+        int blockCount() {
+            return offsets.length;
+        }
+    }
+}
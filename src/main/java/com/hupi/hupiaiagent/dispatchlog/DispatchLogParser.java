@@ -0,0 +1,160 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 调度日志解析器
+ * <p>
+ * 逐行读取日志，行首带时间戳的行开始一条新事件，之后不带时间戳的行作为续行并入该事件；
+ * 第一个时间戳之前的每一行单独作为一条没有时间的事件。空行忽略。
+ * 单位、设备/线路按常见命名后缀启发式提取（如"…采气厂""…作业区""…干线""…站"），识别不到时为 null。
+ */
+public final class DispatchLogParser {
+
+    private static final Pattern TIMESTAMP = Pattern.compile(
+            "^\\s*(\\d{4})[/-](\\d{1,2})[/-](\\d{1,2})\\s+(\\d{1,2}):(\\d{2})(?::(\\d{2}))?\\s*");
+
+    private static final Pattern UNIT = Pattern.compile(
+            "([\\u4e00-\\u9fa5\\d]{1,10}?(?:采油厂|采气厂|输油处|输气处|净化厂|处理厂|管理处|公司|作业区))([\\u4e00-\\u9fa5\\d]{1,8}?作业区)?");
+
+    private static final Pattern DEVICE = Pattern.compile(
+            "([\\u4e00-\\u9fa5]{1,3}[\\dA-Za-z\\-#]*(?:干线|管线|集输站|集气站|增压站|阀室|储气库|线|站|井|转|联))([\\dA-Za-z\\-#]+)?");
+
+    // 单位名称前常见的人称、口语前缀
+    private static final Pattern UNIT_PREFIX = Pattern.compile("^(?:我们|我厂|我单位|我|领导|总调)");
+
+    // 设备名称中出现这些字时，只保留其后的部分（如"组织苏6-4干线" -> "苏6-4干线"）
+    private static final String DEVICE_BOUNDARY_CHARS = "的在对将由向从至与和及把给了织展行经";
+
+    private DispatchLogParser() {
+    }
+
+    public static List<DispatchLogEvent> parse(String content) {
+        try {
+            return parse(new BufferedReader(new StringReader(content == null ? "" : content)));
+        } catch (IOException e) {
+            // StringReader 不会抛出 IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static List<DispatchLogEvent> parse(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * 流式解析，内存中只保留当前事件的续行
+     */
+    public static List<DispatchLogEvent> parse(BufferedReader reader) throws IOException {
+        return parse(reader, null);
+    }
+
+    /**
+     * 解析文件追加的内容：开头不带时间戳的行作为 last 的续行，返回的第一条是更新后的 last（seq 不变），之后依次编号
+     *
+     * @param last 追加前文件中的最后一条事件
+     */
+    public static List<DispatchLogEvent> parseAppended(BufferedReader reader, DispatchLogEvent last) throws IOException {
+        return parse(reader, last);
+    }
+
+    private static List<DispatchLogEvent> parse(BufferedReader reader, DispatchLogEvent last) throws IOException {
+        List<DispatchLogEvent> events = new ArrayList<>();
+        int seqBase = last != null ? last.seq() : 0;
+        // 同一天的日志中单位、设备名称大量重复，共用同一个字符串实例
+        Map<String, String> names = new HashMap<>();
+        LocalDateTime time = last != null ? last.time() : null;
+        StringBuilder text = last != null ? new StringBuilder(last.text()) : null;
+        int lineCount = last != null ? last.lineCount() : 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            Matcher matcher = TIMESTAMP.matcher(line);
+            LocalDateTime lineTime = matcher.find() ? toTime(matcher) : null;
+            if (lineTime != null || text == null || time == null) {
+                if (text != null) {
+                    events.add(buildEvent(seqBase + events.size(), time, text.toString(), lineCount, names));
+                }
+                time = lineTime;
+                text = new StringBuilder(lineTime != null ? line.substring(matcher.end()) : line.strip());
+                lineCount = 1;
+            } else {
+                text.append('\n').append(line);
+                lineCount++;
+            }
+        }
+        if (text != null) {
+            events.add(buildEvent(seqBase + events.size(), time, text.toString(), lineCount, names));
+        }
+        return events;
+    }
+
+    /**
+     * 行首时间戳，没有或非法时返回 null
+     */
+    static LocalDateTime timestampOf(CharSequence line) {
+        Matcher matcher = TIMESTAMP.matcher(line);
+        return matcher.find() ? toTime(matcher) : null;
+    }
+
+    private static DispatchLogEvent buildEvent(int seq, LocalDateTime time, String text, int lineCount,
+                                               Map<String, String> names) {
+        int unitEnd = 0;
+        String unit = null;
+        Matcher unitMatcher = UNIT.matcher(text);
+        if (unitMatcher.find()) {
+            unit = UNIT_PREFIX.matcher(unitMatcher.group()).replaceFirst("");
+            unit = unit.isEmpty() ? null : names.computeIfAbsent(unit, k -> k);
+            unitEnd = unitMatcher.end();
+        }
+        String device = null;
+        Matcher deviceMatcher = DEVICE.matcher(text);
+        if (deviceMatcher.find(unitEnd)) {
+            device = trimDevice(deviceMatcher.group());
+            device = names.computeIfAbsent(device, k -> k);
+        }
+        return new DispatchLogEvent(seq, time, unit, device, text, EventCategory.classify(text), lineCount);
+    }
+
+    private static String trimDevice(String device) {
+        int cut = -1;
+        for (int i = 0; i < device.length(); i++) {
+            char c = device.charAt(i);
+            if (c < 0x4e00 || c > 0x9fa5) {
+                break;
+            }
+            if (DEVICE_BOUNDARY_CHARS.indexOf(c) >= 0) {
+                cut = i;
+            }
+        }
+        return cut >= 0 && cut < device.length() - 1 ? device.substring(cut + 1) : device;
+    }
+
+    private static LocalDateTime toTime(Matcher matcher) {
+        try {
+            return LocalDateTime.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+                    Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4)), Integer.parseInt(matcher.group(5)),
+                    matcher.group(6) != null ? Integer.parseInt(matcher.group(6)) : 0);
+        } catch (DateTimeException e) {
+            // 非法日期（如 13 月）按普通文本处理
+            return null;
+        }
+    }
+}
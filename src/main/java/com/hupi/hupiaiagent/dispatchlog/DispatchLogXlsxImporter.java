@@ -0,0 +1,387 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.SecureUtil;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 调度日志 Excel（如 调度日志.xlsx，列 ADDTIME / CONTENT）导入为按天的日志文件 {date}.txt
+ * <p>
+ * 不依赖 POI：用 ZipFile 打开工作簿，StAX 逐个读取单元格，工作表再大也只占用共享字符串表和当前一行的内存。
+ * 读到的行按日期追加到临时目录中的当天暂存文件（每行一条，换行转义），全部读完后逐天按时间排序、
+ * 写成 "yyyy/MM/dd HH:mm:ss 内容" 格式并原子替换目标文件；内容与现有文件相同的日期不改动，
+ * 避免摘要缓存、事件索引无谓失效。写入后立即通知 {@link DispatchLogCatalog}，不等目录监听。
+ */
+@Component
+@Slf4j
+public class DispatchLogXlsxImporter {
+
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private static final XMLInputFactory FACTORY = newFactory();
+
+    private static final DateTimeFormatter LINE_TIME = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+    // Excel 序列日期的起点（1900 日期系统，已包含 1900-02-29 的历史误差）
+    private static final LocalDateTime EXCEL_EPOCH = LocalDateTime.of(1899, 12, 30, 0, 0);
+
+    @Resource
+    private DispatchLogCatalog dispatchLogCatalog;
+
+    public DispatchLogXlsxImporter() {
+    }
+
+    DispatchLogXlsxImporter(DispatchLogCatalog dispatchLogCatalog) {
+        this.dispatchLogCatalog = dispatchLogCatalog;
+    }
+
+    /**
+     * 导入工作簿的第一个工作表
+     */
+    public ImportResult importWorkbook(File workbook) throws IOException {
+        long start = System.currentTimeMillis();
+        Path staging = Files.createTempDirectory("dispatch-xlsx-");
+        try (ZipFile zip = new ZipFile(workbook)) {
+            List<String> sharedStrings = readSharedStrings(zip);
+            RowSpooler spooler = new RowSpooler(staging);
+            try {
+                readSheet(zip, firstSheetPath(zip), sharedStrings, spooler);
+            } finally {
+                spooler.close();
+            }
+            List<String> written = new ArrayList<>();
+            List<String> unchanged = new ArrayList<>();
+            for (String date : spooler.dates) {
+                if (writeDay(date, staging.resolve(date))) {
+                    written.add(date);
+                } else {
+                    unchanged.add(date);
+                }
+            }
+            ImportResult result = new ImportResult(spooler.rows, spooler.skipped, written, unchanged,
+                    System.currentTimeMillis() - start);
+            log.info("[DispatchLogXlsxImporter] {}: rows={}, skipped={}, written={}, unchanged={}, cost={}ms",
+                    workbook.getName(), result.rows(), result.skipped(), written.size(), unchanged.size(), result.costMs());
+            return result;
+        } catch (XMLStreamException e) {
+            throw new IOException("工作簿格式错误：" + e.getMessage(), e);
+        } finally {
+            FileUtil.del(staging);
+        }
+    }
+
+    /**
+     * 把某天的暂存行排序后写成日志文件，内容未变化时返回 false
+     */
+    private boolean writeDay(String date, Path spool) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(spool, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                rows.add(new String[]{line.substring(0, tab), line.substring(tab + 1)});
+            }
+        }
+        // 导出通常按时间倒序，这里统一按时间升序；同一秒内保持原顺序
+        rows.sort(Comparator.comparingLong(row -> Long.parseLong(row[0])));
+        StringBuilder sb = new StringBuilder();
+        for (String[] row : rows) {
+            LocalDateTime time = LocalDateTime.ofEpochSecond(Long.parseLong(row[0]), 0, ZoneOffset.UTC);
+            sb.append(LINE_TIME.format(time)).append(' ').append(unescape(row[1])).append('\n');
+        }
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        File target = dispatchLogCatalog.resolve(date);
+        DispatchLogCatalog.Entry existing = dispatchLogCatalog.get(date);
+        if (existing != null && existing.sha256().equals(SecureUtil.sha256().digestHex(content))) {
+            return false;
+        }
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        Files.write(tmp.toPath(), content);
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dispatchLogCatalog.refresh(date);
+        return true;
+    }
+
+    private static List<String> readSharedStrings(ZipFile zip) throws IOException, XMLStreamException {
+        List<String> strings = new ArrayList<>();
+        ZipEntry entry = zip.getEntry("xl/sharedStrings.xml");
+        if (entry == null) {
+            return strings;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            XMLStreamReader reader = newReader(in);
+            StringBuilder current = null;
+            // 注音（rPh）中的 t 不属于正文
+            int phoneticDepth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if ("si".equals(name)) {
+                        current = new StringBuilder();
+                    } else if ("rPh".equals(name)) {
+                        phoneticDepth++;
+                    } else if ("t".equals(name) && current != null && phoneticDepth == 0) {
+                        current.append(reader.getElementText());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if ("si".equals(name) && current != null) {
+                        strings.add(current.toString());
+                        current = null;
+                    } else if ("rPh".equals(name)) {
+                        phoneticDepth--;
+                    }
+                }
+            }
+            reader.close();
+        }
+        return strings;
+    }
+
+    /**
+     * 第一个工作表在压缩包中的路径（workbook.xml 中的第一个 sheet，经 workbook.xml.rels 解析）
+     */
+    private static String firstSheetPath(ZipFile zip) throws IOException, XMLStreamException {
+        String relId = null;
+        ZipEntry workbook = zip.getEntry("xl/workbook.xml");
+        if (workbook != null) {
+            try (InputStream in = zip.getInputStream(workbook)) {
+                XMLStreamReader reader = newReader(in);
+                while (reader.hasNext() && relId == null) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && "sheet".equals(reader.getLocalName())) {
+                        relId = reader.getAttributeValue(REL_NS, "id");
+                    }
+                }
+                reader.close();
+            }
+        }
+        ZipEntry rels = zip.getEntry("xl/_rels/workbook.xml.rels");
+        if (relId != null && rels != null) {
+            try (InputStream in = zip.getInputStream(rels)) {
+                XMLStreamReader reader = newReader(in);
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && "Relationship".equals(reader.getLocalName())
+                            && relId.equals(reader.getAttributeValue(null, "Id"))) {
+                        String target = reader.getAttributeValue(null, "Target");
+                        return target.startsWith("/") ? target.substring(1) : "xl/" + target;
+                    }
+                }
+                reader.close();
+            }
+        }
+        return "xl/worksheets/sheet1.xml";
+    }
+
+    private static void readSheet(ZipFile zip, String path, List<String> sharedStrings, RowSpooler spooler)
+            throws IOException, XMLStreamException {
+        ZipEntry entry = zip.getEntry(path);
+        if (entry == null) {
+            throw new IOException("工作簿中没有工作表：" + path);
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            XMLStreamReader reader = newReader(in);
+            Map<Integer, String> row = new HashMap<>();
+            int timeColumn = 0;
+            int contentColumn = 1;
+            boolean headerSeen = false;
+            int column = -1;
+            String type = null;
+            String value = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "row" -> row.clear();
+                        case "c" -> {
+                            String ref = reader.getAttributeValue(null, "r");
+                            column = ref != null ? columnIndex(ref) : column + 1;
+                            type = reader.getAttributeValue(null, "t");
+                            value = null;
+                        }
+                        case "v" -> value = reader.getElementText();
+                        case "t" -> {
+                            // 行内字符串 <is><t>
+                            if ("inlineStr".equals(type)) {
+                                value = value == null ? reader.getElementText() : value + reader.getElementText();
+                            }
+                        }
+                        default -> {
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if ("c".equals(reader.getLocalName())) {
+                        if (value != null) {
+                            row.put(column, "s".equals(type) ? sharedStrings.get(Integer.parseInt(value.trim())) : value);
+                        }
+                    } else if ("row".equals(reader.getLocalName())) {
+                        if (!headerSeen) {
+                            headerSeen = true;
+                            int headerTime = findColumn(row, "ADDTIME", "时间", "日期");
+                            int headerContent = findColumn(row, "CONTENT", "内容");
+                            if (headerTime >= 0 || headerContent >= 0) {
+                                timeColumn = headerTime >= 0 ? headerTime : timeColumn;
+                                contentColumn = headerContent >= 0 ? headerContent : contentColumn;
+                                continue;
+                            }
+                        }
+                        spooler.add(parseTime(row.get(timeColumn)), row.get(contentColumn));
+                    }
+                }
+            }
+            reader.close();
+        }
+    }
+
+    private static int findColumn(Map<Integer, String> row, String... names) {
+        for (Map.Entry<Integer, String> cell : row.entrySet()) {
+            String text = cell.getValue().strip().toUpperCase(Locale.ROOT);
+            for (String name : names) {
+                if (text.equals(name)) {
+                    return cell.getKey();
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 单元格引用（如 "AB12"）的列号，从 0 开始
+     */
+    static int columnIndex(String ref) {
+        int column = 0;
+        for (int i = 0; i < ref.length() && Character.isLetter(ref.charAt(i)); i++) {
+            column = column * 26 + (Character.toUpperCase(ref.charAt(i)) - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    /**
+     * 时间单元格：Excel 序列日期（数字）或 "yyyy-MM-dd HH:mm[:ss]" / "yyyy/MM/dd HH:mm[:ss]" 文本
+     */
+    static LocalDateTime parseTime(String cell) {
+        if (cell == null || cell.isBlank()) {
+            return null;
+        }
+        try {
+            double serial = Double.parseDouble(cell.trim());
+            return EXCEL_EPOCH.plusSeconds(Math.round(serial * 86400));
+        } catch (NumberFormatException e) {
+            return DispatchLogParser.timestampOf(cell);
+        }
+    }
+
+    private static XMLInputFactory newFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static XMLStreamReader newReader(InputStream in) throws XMLStreamException {
+        return FACTORY.createXMLStreamReader(in);
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\r", "").replace("\n", "\\n").replace("\t", " ");
+    }
+
+    private static String unescape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                sb.append(next == 'n' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 把行按日期追加到暂存文件；导出按时间排列，同一天的行连续出现，只保持一个打开的文件
+     */
+    private static final class RowSpooler {
+
+        private final Path dir;
+        private final TreeSet<String> dates = new TreeSet<>();
+        private String currentDate;
+        private BufferedWriter writer;
+        private int rows;
+        private int skipped;
+
+        RowSpooler(Path dir) {
+            this.dir = dir;
+        }
+
+        void add(LocalDateTime time, String content) throws IOException {
+            if (time == null || content == null || content.isBlank()) {
+                skipped++;
+                return;
+            }
+            String date = time.toLocalDate().toString();
+            if (!date.equals(currentDate)) {
+                close();
+                writer = Files.newBufferedWriter(dir.resolve(date), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                currentDate = date;
+                dates.add(date);
+            }
+            writer.write(Long.toString(time.toEpochSecond(ZoneOffset.UTC)));
+            writer.write('\t');
+            writer.write(escape(content.strip()));
+            writer.write('\n');
+            rows++;
+        }
+
+        void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     * 导入结果
+     *
+     * @param rows      导入的行数
+     * @param skipped   跳过的行数（没有时间或内容）
+     * @param written   新写入或更新的日期
+     * @param unchanged 内容与现有日志相同、未改动的日期
+     */
+    public record ImportResult(int rows, int skipped, List<String> written, List<String> unchanged, long costMs) {
+    }
+}
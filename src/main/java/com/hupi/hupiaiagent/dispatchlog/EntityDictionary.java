@@ -0,0 +1,244 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import cn.hutool.crypto.SecureUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 实体词典：输油处、采气厂、作业区、站场、管线等真实名称
+ * <p>
+ * 从词典文件（dispatch.entity-dict.path）加载，编译为 Aho-Corasick 自动机，一遍扫描即可标出一行日志提到的全部实体，
+ * 别名归并到标准名称。文件修改后下次使用时自动重新加载，文件不存在时词典为空。
+ * 标注结果用于按实体统计日志，以及在不再调用模型的情况下检查生成的总结：提到了日志中没有出现的词典实体，
+ * 或出现了词典和日志里都没有的"××作业区""××站"之类名称，都视为可能编造。
+ * <p>
+ * 文件格式：每行"类型: 名称[, 别名...]"，# 开头为注释，例如
+ * <pre>
+ * 输油处: 第二输油处, 输油二处
+ * 作业区: 白豹作业区
+ * 管线: 苏6-4干线
+ * </pre>
+ */
+@Component
+@Slf4j
+public class EntityDictionary {
+
+    // 总结中看起来像实体名称的片段：若干字 + 常见的单位/站场/管线后缀
+    private static final Pattern CANDIDATE = Pattern.compile(
+            "[\\u4e00-\\u9fa5A-Za-z0-9#\\-]{1,10}?(作业区|输油处|输气处|采油厂|采气厂|净化厂|处理厂|联合站|集气站|增压站|注水站|首站|末站|阀室|干线|支线)");
+
+    private static final Pattern LINE = Pattern.compile("\\s*([^:：#]+?)\\s*[:：]\\s*(.+)");
+
+    @Value("${dispatch.entity-dict.path:tmp/entity-dict.txt}")
+    private String path;
+
+    private volatile Compiled compiled = Compiled.of(List.of(), "");
+
+    private long loadedModified = -1;
+
+    public EntityDictionary() {
+    }
+
+    /**
+     * 直接指定词典内容（用于测试或非 Spring 环境）
+     */
+    EntityDictionary(List<String> lines) {
+        this.compiled = Compiled.of(lines, String.join("\n", lines));
+    }
+
+    @PostConstruct
+    public void init() {
+        reloadIfChanged();
+        log.info("[EntityDictionary] {} entities from {}", size(), new File(path).getAbsolutePath());
+    }
+
+    /**
+     * 文本中提到的实体（按首次出现的顺序，别名已归并为标准名称）
+     */
+    public List<Entity> tag(String text) {
+        return tag(current(), text);
+    }
+
+    // 批量调用时由调用方取一次词典快照，避免每条文本都检查文件、争用锁
+    private static List<Entity> tag(Compiled current, String text) {
+        Set<Entity> found = new LinkedHashSet<>();
+        if (text != null) {
+            for (AhoCorasick.Match match : current.automaton.find(text)) {
+                found.add(current.entities.get(match.pattern()));
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * 按实体统计日志事件：每个实体被哪些事件提到（按实体首次出现的顺序）
+     */
+    public List<Mentions> mentions(List<DispatchLogEvent> events) {
+        Compiled current = current();
+        Map<Entity, List<LocalDateTime>> times = new LinkedHashMap<>();
+        for (DispatchLogEvent event : events) {
+            for (Entity entity : tag(current, event.text())) {
+                times.computeIfAbsent(entity, e -> new ArrayList<>()).add(event.time());
+            }
+        }
+        List<Mentions> result = new ArrayList<>(times.size());
+        times.forEach((entity, list) -> result.add(new Mentions(entity.type(), entity.name(), list.size(), list)));
+        return result;
+    }
+
+    /**
+     * 检查生成的总结中的实体名称
+     *
+     * @param generated 模型输出
+     * @param source    生成所依据的日志原文
+     */
+    public EntityCheck check(String generated, String source) {
+        Compiled current = current();
+        Set<String> sourceNames = new LinkedHashSet<>();
+        tag(current, source).forEach(entity -> sourceNames.add(entity.name()));
+        List<String> mentioned = new ArrayList<>();
+        List<String> notInLog = new ArrayList<>();
+        for (Entity entity : tag(current, generated)) {
+            mentioned.add(entity.name());
+            if (!sourceNames.contains(entity.name())) {
+                notInLog.add(entity.name());
+            }
+        }
+        Set<String> unknown = new LinkedHashSet<>();
+        Matcher matcher = CANDIDATE.matcher(generated != null ? generated : "");
+        while (matcher.find()) {
+            if (!isKnown(matcher.group(), matcher.group(1).length(), current, source)) {
+                unknown.add(matcher.group());
+            }
+        }
+        return new EntityCheck(mentioned, notInLog, new ArrayList<>(unknown));
+    }
+
+    /**
+     * 候选名称的某个后缀（至少比后缀词多一个字）是词典名称或在日志原文中出现过，即视为真实名称
+     * （候选片段前面可能带着"协调""组织"之类的字，逐个去掉再比对）
+     */
+    private static boolean isKnown(String candidate, int suffixLength, Compiled current, String source) {
+        for (int start = 0; start < candidate.length() - suffixLength; start++) {
+            String name = candidate.substring(start);
+            if (current.names.contains(name) || source != null && source.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 当前词典内容的指纹
+     */
+    public String fingerprint() {
+        return current().fingerprint;
+    }
+
+    /**
+     * 词典中的实体数（不含别名）
+     */
+    public int size() {
+        return new LinkedHashSet<>(current().entities).size();
+    }
+
+    private Compiled current() {
+        if (path != null) {
+            reloadIfChanged();
+        }
+        return compiled;
+    }
+
+    private synchronized void reloadIfChanged() {
+        File file = new File(path);
+        long modified = file.isFile() ? file.lastModified() : 0;
+        if (modified == loadedModified) {
+            return;
+        }
+        loadedModified = modified;
+        if (modified == 0) {
+            compiled = Compiled.of(List.of(), "");
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            compiled = Compiled.of(lines, String.join("\n", lines));
+            log.info("[EntityDictionary] loaded {} entities, {} names", new LinkedHashSet<>(compiled.entities).size(),
+                    compiled.names.size());
+        } catch (IOException e) {
+            log.warn("[EntityDictionary] failed to read {}, keeping previous dictionary: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 一个实体（标准名称及类型）
+     */
+    public record Entity(String type, String name) {
+    }
+
+    /**
+     * 某个实体在日志中的出现情况
+     *
+     * @param times 提到它的各条事件的时间
+     */
+    public record Mentions(String type, String name, int count, List<LocalDateTime> times) {
+    }
+
+    /**
+     * 总结的实体检查结果
+     *
+     * @param mentioned 总结提到的词典实体
+     * @param notInLog  总结提到、但日志中没有出现的词典实体
+     * @param unknown   像实体名称、但词典和日志中都没有的片段
+     */
+    public record EntityCheck(List<String> mentioned, List<String> notInLog, List<String> unknown) {
+
+        public boolean passed() {
+            return notInLog.isEmpty() && unknown.isEmpty();
+        }
+    }
+
+    /**
+     * 编译后的词典，自动机中的模式编号对应 entities 的下标（别名对应其标准名称的实体）
+     */
+    private record Compiled(AhoCorasick automaton, List<Entity> entities, Set<String> names, String fingerprint) {
+
+        static Compiled of(List<String> lines, String content) {
+            List<String> patterns = new ArrayList<>();
+            List<Entity> entities = new ArrayList<>();
+            Set<String> names = new LinkedHashSet<>();
+            for (String line : lines) {
+                Matcher matcher = LINE.matcher(line);
+                if (line.isBlank() || line.strip().startsWith("#") || !matcher.matches()) {
+                    continue;
+                }
+                String[] parts = matcher.group(2).split("[,，、]");
+                Entity entity = new Entity(matcher.group(1), parts[0].strip());
+                for (String part : parts) {
+                    String name = part.strip();
+                    if (!name.isEmpty() && names.add(name)) {
+                        patterns.add(name);
+                        entities.add(entity);
+                    }
+                }
+            }
+            return new Compiled(new AhoCorasick(patterns), entities, names, SecureUtil.sha256(content));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+/**
+ * 调度日志事件类别
+ * 按声明顺序依次匹配关键词，先命中的类别优先（例如带"故障"说明的欠产上报归为隐患/故障，而不是计产）
+ */
+public enum EventCategory {
+
+    PIGGING("清管", "清管", "通球", "发球", "收球"),
+    REPAIR("抢修", "抢修", "泄漏", "刺漏", "火灾"),
+    INTERRUPTION("中断/停输", "中断", "停输", "停产", "停气", "停电", "关停"),
+    MAINTENANCE("检修/技改", "检修", "维修", "保养", "技改", "改造", "动火"),
+    HAZARD("隐患/故障", "隐患", "故障", "冻堵", "超标", "预警"),
+    PRODUCTION("计产", "商品量", "欠产", "超产", "乙烷产量", "计划量"),
+    VIDEO("视频监控", "视频", "摄像机", "录像率", "上线率"),
+    INSPECTION("巡检", "巡检", "巡查", "例行检查"),
+    COORDINATION("协调/申请", "协调", "申请", "请示", "汇报", "配合"),
+    OTHER("其他");
+
+    private final String label;
+
+    private final String[] keywords;
+
+    EventCategory(String label, String... keywords) {
+        this.label = label;
+        this.keywords = keywords;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static EventCategory classify(String text) {
+        if (text == null || text.isEmpty()) {
+            return OTHER;
+        }
+        for (EventCategory category : values()) {
+            for (String keyword : category.keywords) {
+                if (text.contains(keyword)) {
+                    return category;
+                }
+            }
+        }
+        return OTHER;
+    }
+}
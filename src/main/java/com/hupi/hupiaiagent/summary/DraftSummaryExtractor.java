@@ -0,0 +1,152 @@
+package com.hupi.hupiaiagent.summary;
+
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogParser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 按规则生成交接班总结初稿
+ * <p>
+ * 模型要先经过较长的思考阶段才输出正文，这期间前端没有任何内容可显示。这里直接从日志中挑出
+ * 清管、检修、抢修、停输、技改等条目，时间统一为 HH:mm，按时间排序编号，排成
+ * "昨日处理主要工作 / 今日关注工作" 两节（含计划、预计、正在处理等字样的条目归入今日关注），毫秒级即可返回。
+ * 结果确定、不经过模型，既作为 draft 事件先行推送，也在模型尚未输出就不可用或超时时作为兜底答复。
+ */
+@Component
+@Slf4j
+public class DraftSummaryExtractor {
+
+    static final String DEFAULT_KEYWORDS = "清管,检修,抢修,停输,技改";
+
+    static final String DEFAULT_FOLLOW_UP_KEYWORDS = "计划,预计,将于,拟,正在,继续,尚未,未完成,待";
+
+    public static final String FALLBACK_NOTE = "（模型服务暂不可用，以下为按规则从日志中提取的初稿，仅供参考）\n";
+
+    private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+
+    // 单条正文最多保留的字数，超出部分省略
+    private static final int MAX_ITEM_CHARS = 150;
+
+    @Value("${dispatch.draft.keywords:" + DEFAULT_KEYWORDS + "}")
+    private List<String> keywords;
+
+    @Value("${dispatch.draft.follow-up-keywords:" + DEFAULT_FOLLOW_UP_KEYWORDS + "}")
+    private List<String> followUpKeywords;
+
+    public DraftSummaryExtractor() {
+    }
+
+    /**
+     * 直接指定关键词（用于测试或非 Spring 环境）
+     */
+    public DraftSummaryExtractor(List<String> keywords, List<String> followUpKeywords) {
+        this.keywords = keywords;
+        this.followUpKeywords = followUpKeywords;
+    }
+
+    /**
+     * 使用默认关键词的提取器
+     */
+    public static DraftSummaryExtractor withDefaults() {
+        return new DraftSummaryExtractor(List.of(DEFAULT_KEYWORDS.split(",")), List.of(DEFAULT_FOLLOW_UP_KEYWORDS.split(",")));
+    }
+
+    /**
+     * 由某天的日志事件生成初稿
+     */
+    public String draft(String date, List<DispatchLogEvent> events) {
+        List<DispatchLogEvent> selected = events.stream()
+                .filter(event -> event.time() != null && containsAny(event.text(), keywords))
+                .sorted(Comparator.comparing(DispatchLogEvent::time))
+                .toList();
+        List<String> done = new ArrayList<>();
+        List<String> followUp = new ArrayList<>();
+        for (DispatchLogEvent event : selected) {
+            String item = event.timeText() + compact(event.text());
+            (containsAny(event.text(), followUpKeywords) ? followUp : done).add(item);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(date).append("交接班总结（初稿）\n");
+        appendSection(sb, "昨日处理主要工作", done);
+        appendSection(sb, "今日关注工作", followUp);
+        return sb.toString();
+    }
+
+    /**
+     * 由用户消息中附带的日志生成初稿；消息中没有带时间戳的日志行时返回 null
+     */
+    public String draftFromMessage(String message) {
+        if (message == null || message.isBlank()) {
+            return null;
+        }
+        List<DispatchLogEvent> events = DispatchLogParser.parse(message);
+        LocalDateTime first = events.stream().map(DispatchLogEvent::time).filter(time -> time != null)
+                .min(Comparator.naturalOrder()).orElse(null);
+        if (first == null) {
+            return null;
+        }
+        Matcher matcher = DATE.matcher(message);
+        return draft(matcher.find() ? matcher.group() : first.toLocalDate().toString(), events);
+    }
+
+    /**
+     * 模型流在输出任何内容之前出错（服务不可用、超时等）时改为输出初稿；
+     * 已经输出部分内容，或初稿为 null 时照常抛出错误，避免在半截答复后面再接一份初稿
+     */
+    public Flux<String> withFallback(Flux<String> stream, Supplier<String> draft, String tag) {
+        return Flux.defer(() -> {
+            AtomicBoolean emitted = new AtomicBoolean(false);
+            return stream.doOnNext(chunk -> emitted.set(true)).onErrorResume(e -> {
+                String text = emitted.get() ? null : draft.get();
+                if (text == null) {
+                    return Flux.error(e);
+                }
+                log.warn("[{}] model stream failed, falling back to rule-based draft: {}", tag, e.toString());
+                return Flux.just(FALLBACK_NOTE, text);
+            });
+        });
+    }
+
+    private static void appendSection(StringBuilder sb, String title, List<String> items) {
+        sb.append(title).append('\n');
+        if (items.isEmpty()) {
+            sb.append("无\n");
+            return;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            sb.append(i + 1).append('.').append(items.get(i)).append('\n');
+        }
+    }
+
+    /**
+     * 多行正文合并为一行，过长时截断
+     */
+    private static String compact(String text) {
+        String line = text.replaceAll("\\s*\\n\\s*", "").strip();
+        return line.length() > MAX_ITEM_CHARS ? line.substring(0, MAX_ITEM_CHARS) + "…" : line;
+    }
+
+    private static boolean containsAny(String text, List<String> keywords) {
+        if (keywords == null) {
+            return false;
+        }
+        for (String keyword : keywords) {
+            if (!keyword.isBlank() && text.contains(keyword.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
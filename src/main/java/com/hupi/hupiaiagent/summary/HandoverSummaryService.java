@@ -0,0 +1,218 @@
+package com.hupi.hupiaiagent.summary;
+
+import com.hupi.hupiaiagent.app.DispatchAssistantApp;
+import com.hupi.hupiaiagent.app.MapReduceSummarizer;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogDeduplicator;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogFilter;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogIndex;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogOffsetIndex;
+import com.hupi.hupiaiagent.dispatchlog.EntityDictionary;
+import com.hupi.hupiaiagent.util.DispatchLogFileUtil;
+import com.hupi.hupiaiagent.util.ThinkContentUtil;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 按日期生成交接班总结（预取接口、定时预生成、多日汇总共用）
+ * <p>
+ * 读取当天日志（经事件索引、近似重复合并、噪声过滤和 token 预算裁剪）拼成用户消息；摘要缓存命中时直接回放缓存结果，
+ * 并把这一轮对话写入记忆以便追问；未命中时调用模型（超长日志走分段汇总），完整生成后写入缓存。
+ * 跨午夜的班次按时间段从偏移索引切出日志，其余流程相同。
+ */
+@Component
+@Slf4j
+public class HandoverSummaryService {
+
+    private static final String MESSAGE_TEMPLATE = "请基于[%s]的调度日志生成交接班总结：\n\n%s";
+
+    private static final String SHIFT_MESSAGE_TEMPLATE = "请基于[%s 至 %s]班次的调度日志生成交接班总结：\n\n%s";
+
+    private static final DateTimeFormatter SHIFT_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private static final String TEMP_CHAT_ID_PREFIX = "summary-";
+
+    @Resource
+    private DispatchAssistantApp dispatchAssistantApp;
+
+    @Resource
+    private MapReduceSummarizer mapReduceSummarizer;
+
+    @Resource
+    private DispatchLogIndex dispatchLogIndex;
+
+    @Resource
+    private DispatchLogOffsetIndex dispatchLogOffsetIndex;
+
+    @Resource
+    private DispatchLogDeduplicator dispatchLogDeduplicator;
+
+    @Resource
+    private DispatchLogFilter dispatchLogFilter;
+
+    @Resource
+    private DispatchLogFileUtil dispatchLogFileUtil;
+
+    @Resource
+    private PromptBudgetBuilder promptBudgetBuilder;
+
+    @Resource
+    private DraftSummaryExtractor draftSummaryExtractor;
+
+    @Resource
+    private SummaryCache summaryCache;
+
+    @Resource
+    private EntityDictionary entityDictionary;
+
+    /**
+     * 构建某天的用户消息（日志已合并近似重复条目、去掉噪声条目，并按 token 预算裁剪）
+     */
+    public String buildMessage(String date, String tag) throws IOException {
+        DispatchLogIndex.DayIndex day = dispatchLogIndex.getDay(date);
+        List<DispatchLogEvent> events = day != null ? prepare(day.events(), tag) : List.of();
+        return promptBudgetBuilder.build(String.format(MESSAGE_TEMPLATE, date, ""), events, tag).message();
+    }
+
+    /**
+     * 构建跨天班次 [from, to) 的用户消息，只读取偏移索引定位到的那部分日志
+     */
+    public String buildShiftMessage(LocalDateTime from, LocalDateTime to, String tag) throws IOException {
+        List<DispatchLogEvent> events = dispatchLogOffsetIndex.slice(from, to);
+        log.info("[{}] shift {} ~ {} sliced", tag, from, to);
+        String prefix = String.format(SHIFT_MESSAGE_TEMPLATE, SHIFT_TIME.format(from), SHIFT_TIME.format(to), "");
+        return promptBudgetBuilder.build(prefix, prepare(events, tag), tag).message();
+    }
+
+    private List<DispatchLogEvent> prepare(List<DispatchLogEvent> events, String tag) {
+        DispatchLogDeduplicator.DedupResult deduped = dispatchLogDeduplicator.collapse(events);
+        List<DispatchLogEvent> kept = dispatchLogFilter.keep(deduped.events());
+        log.info("[{}] read ok, events={}, dedup: {}, noise removed: {}", tag, events.size(), deduped.summary(),
+                deduped.events().size() - kept.size());
+        return kept;
+    }
+
+    /**
+     * 某天的规则初稿（合并近似重复条目后提取），日志不存在时返回 null
+     */
+    public String draft(String date) throws IOException {
+        DispatchLogIndex.DayIndex day = dispatchLogIndex.getDay(date);
+        if (day == null) {
+            return null;
+        }
+        return draftSummaryExtractor.draft(date, dispatchLogDeduplicator.collapse(day.events()).events());
+    }
+
+    /**
+     * 日志当前内容对应的缓存结果，未命中返回 null
+     */
+    public SummaryCache.Entry getCached(String date) {
+        return summaryCache.get(date, dispatchLogFileUtil.resolveLogFile(date));
+    }
+
+    /**
+     * 流式生成某天的交接班总结，缓存命中时按行回放
+     *
+     * @param onProgress 分段汇总的进度回调
+     */
+    public Flux<String> stream(String date, String chatId, String tag,
+                               Consumer<MapReduceSummarizer.Progress> onProgress) throws IOException {
+        File logFile = dispatchLogFileUtil.resolveLogFile(date);
+        // 缓存键取自构建消息之前的日志，生成期间日志有变化时结果不写入缓存
+        SummaryCache.Snapshot snapshot = summaryCache.snapshot(logFile);
+        String message = buildMessage(date, tag);
+        SummaryCache.Entry cached = summaryCache.get(date, logFile);
+        if (cached != null) {
+            log.info("[{}] summary cache hit for {}, generated at {} (cost={}ms)", tag, date, cached.createdAt(), cached.costMs());
+            dispatchAssistantApp.getChatMemory().add(chatId,
+                    List.of(new UserMessage(message), new AssistantMessage(cached.content())));
+            return Flux.fromArray(cached.content().split("(?<=\n)"));
+        }
+        long start = System.currentTimeMillis();
+        StringBuilder full = new StringBuilder();
+        return generate(message, chatId, onProgress)
+                .doOnNext(full::append)
+                .doOnComplete(() -> {
+                    String content = ThinkContentUtil.stripThink(full.toString());
+                    summaryCache.put(date, logFile, snapshot, content, System.currentTimeMillis() - start);
+                    checkEntities(date, content, message, tag);
+                });
+    }
+
+    /**
+     * 流式生成跨天班次（如 08:00 至次日 08:00）的交接班总结；时间段任意，不走摘要缓存
+     */
+    public Flux<String> streamShift(LocalDateTime from, LocalDateTime to, String chatId, String tag,
+                                    Consumer<MapReduceSummarizer.Progress> onProgress) throws IOException {
+        return generate(buildShiftMessage(from, to, tag), chatId, onProgress);
+    }
+
+    /**
+     * 检查总结中的实体名称，可能编造的名称只记录日志
+     */
+    private void checkEntities(String date, String content, String message, String tag) {
+        if (entityDictionary.size() == 0) {
+            return;
+        }
+        EntityDictionary.EntityCheck check = entityDictionary.check(content, message);
+        if (!check.passed()) {
+            log.warn("[{}] {} summary mentions entities not found in log: {}, unknown names: {}", tag, date,
+                    check.notInLog(), check.unknown());
+        }
+    }
+
+    private Flux<String> generate(String message, String chatId, Consumer<MapReduceSummarizer.Progress> onProgress) {
+        return mapReduceSummarizer.isApplicable(message)
+                ? mapReduceSummarizer.summarize(message, chatId, onProgress)
+                : dispatchAssistantApp.doChatByStream(message, chatId);
+    }
+
+    /**
+     * 生成某天的交接班总结（不保留对话记录），优先取缓存；日志不存在时返回空
+     */
+    public Mono<DaySummary> summarizeDay(String date, Consumer<MapReduceSummarizer.Progress> onProgress) {
+        return Mono.defer(() -> {
+            if (!dispatchLogFileUtil.resolveLogFile(date).isFile()) {
+                return Mono.empty();
+            }
+            SummaryCache.Entry cached = getCached(date);
+            if (cached != null) {
+                return Mono.just(new DaySummary(date, cached.content(), true, 0));
+            }
+            // reduce 经过对话记忆（与普通请求共用同一个 ChatClient），用临时会话并在结束后清除，不出现在历史记录中
+            String chatId = TEMP_CHAT_ID_PREFIX + date + "-" + System.nanoTime();
+            long start = System.currentTimeMillis();
+            try {
+                return stream(date, chatId, "summarize-day", onProgress)
+                        .collect(Collectors.joining())
+                        .map(content -> new DaySummary(date, ThinkContentUtil.stripThink(content), false,
+                                System.currentTimeMillis() - start))
+                        .doFinally(signal -> dispatchAssistantApp.getChatMemory().clear(chatId));
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+        });
+    }
+
+    /**
+     * 单日总结
+     *
+     * @param cached 是否取自摘要缓存
+     * @param costMs 生成耗时（取自缓存时为 0）
+     */
+    public record DaySummary(String date, String content, boolean cached, long costMs) {
+    }
+}
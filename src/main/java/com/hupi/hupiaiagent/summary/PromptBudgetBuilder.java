@@ -0,0 +1,237 @@
+package com.hupi.hupiaiagent.summary;
+
+import com.hupi.hupiaiagent.app.DispatchAssistantApp;
+import com.hupi.hupiaiagent.app.MapReduceSummarizer;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.EventCategory;
+import com.hupi.hupiaiagent.util.TokenEstimator;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 按 token 预算组装交接班总结的用户消息
+ * <p>
+ * 模型上下文装不下时 Ollama 会从前面截断，丢掉的恰好是清晨的记录。这里先估算系统提示词、说明文字和各条日志的 token 数，
+ * 超出预算时按类别优先级从低到高（巡检、视频、计产……最后才是清管、抢修）删除条目，同一类别内先删最长的，
+ * 保持其余条目的原有顺序，并在消息末尾注明省略了哪些内容。超过分段汇总阈值的消息交给分段汇总处理，不在这里截断。
+ * 每次组装的最终 token 数都会计入统计，供接口查看。
+ */
+@Component
+@Slf4j
+public class PromptBudgetBuilder {
+
+    static final String DEFAULT_DROP_ORDER =
+            "INSPECTION,VIDEO,PRODUCTION,OTHER,COORDINATION,HAZARD,MAINTENANCE,INTERRUPTION,REPAIR,PIGGING";
+
+    // 保留最近若干次组装记录
+    private static final int RECENT_SIZE = 50;
+
+    @Resource
+    private DispatchAssistantApp dispatchAssistantApp;
+
+    @Resource
+    private MapReduceSummarizer mapReduceSummarizer;
+
+    @Value("${dispatch.prompt-budget.enabled:true}")
+    private boolean enabled;
+
+    @Value("${dispatch.prompt-budget.context-tokens:8192}")
+    private int contextTokens;
+
+    @Value("${dispatch.prompt-budget.reserve-output-tokens:2048}")
+    private int reserveOutputTokens;
+
+    @Value("${dispatch.prompt-budget.drop-order:" + DEFAULT_DROP_ORDER + "}")
+    private List<EventCategory> dropOrder;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong totalTokens = new AtomicLong();
+    private final AtomicLong maxTokens = new AtomicLong();
+    private final AtomicLong truncatedRequests = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final Deque<Build> recent = new ArrayDeque<>();
+
+    public PromptBudgetBuilder() {
+    }
+
+    /**
+     * 直接指定预算（用于测试或非 Spring 环境），不考虑系统提示词和分段汇总
+     */
+    PromptBudgetBuilder(int contextTokens, int reserveOutputTokens, List<EventCategory> dropOrder) {
+        this.enabled = true;
+        this.contextTokens = contextTokens;
+        this.reserveOutputTokens = reserveOutputTokens;
+        this.dropOrder = dropOrder;
+    }
+
+    /**
+     * 组装用户消息：说明文字 + 按预算保留的日志条目
+     *
+     * @param prefix 说明文字（如"请基于[2025-10-19]的调度日志生成交接班总结："加空行）
+     * @param events 已经过去重和噪声过滤的日志条目
+     */
+    public Build build(String prefix, List<DispatchLogEvent> events, String tag) {
+        int budget = budget();
+        int prefixTokens = TokenEstimator.estimate(prefix);
+        // 每条只渲染、估算一次，截断后重新组装时直接复用
+        String[] lines = new String[events.size()];
+        int[] tokens = new int[events.size()];
+        int logTokens = 0;
+        StringBuilder full = new StringBuilder(prefix);
+        for (int i = 0; i < events.size(); i++) {
+            lines[i] = events.get(i).render();
+            tokens[i] = TokenEstimator.estimate(lines[i]);
+            logTokens += tokens[i];
+            full.append(lines[i]).append('\n');
+        }
+        String fullMessage = full.toString();
+        if (!enabled || prefixTokens + logTokens <= budget
+                || (mapReduceSummarizer != null && mapReduceSummarizer.isApplicable(fullMessage))) {
+            return record(new Build(tag, LocalDateTime.now(), fullMessage, prefixTokens + logTokens, budget, 0, Map.of()));
+        }
+
+        boolean[] dropped = new boolean[events.size()];
+        Map<EventCategory, Integer> droppedByCategory = new LinkedHashMap<>();
+        int remaining = prefixTokens + logTokens;
+        Map<EventCategory, List<Integer>> byCategory = new EnumMap<>(EventCategory.class);
+        for (int i = 0; i < events.size(); i++) {
+            // 没有时间的表头行（如"10月19日 白班"）不删
+            if (events.get(i).time() != null) {
+                byCategory.computeIfAbsent(events.get(i).category(), c -> new ArrayList<>()).add(i);
+            }
+        }
+        for (EventCategory category : dropOrder) {
+            List<Integer> candidates = new ArrayList<>(byCategory.getOrDefault(category, List.of()));
+            candidates.sort(Comparator.comparingInt((Integer i) -> tokens[i]).reversed());
+            for (int i : candidates) {
+                if (remaining + noteTokens(droppedByCategory) <= budget) {
+                    break;
+                }
+                dropped[i] = true;
+                remaining -= tokens[i];
+                droppedByCategory.merge(category, 1, Integer::sum);
+            }
+        }
+        StringBuilder sb = new StringBuilder(prefix);
+        for (int i = 0; i < events.size(); i++) {
+            if (!dropped[i]) {
+                sb.append(lines[i]).append('\n');
+            }
+        }
+        String note = note(droppedByCategory);
+        sb.append(note);
+        int finalTokens = remaining + TokenEstimator.estimate(note);
+        int droppedCount = droppedByCategory.values().stream().mapToInt(Integer::intValue).sum();
+        if (finalTokens > budget) {
+            log.warn("[{}] prompt still over budget after dropping {} events: ~{}/{} tokens", tag, droppedCount, finalTokens, budget);
+        }
+        Map<String, Integer> droppedByLabel = new LinkedHashMap<>();
+        droppedByCategory.forEach((category, count) -> droppedByLabel.put(category.name(), count));
+        return record(new Build(tag, LocalDateTime.now(), sb.toString(), finalTokens, budget, droppedCount, droppedByLabel));
+    }
+
+    /**
+     * 当前预算参数的指纹，参数变化时组装结果随之变化（用于摘要缓存的键）
+     */
+    public String fingerprint() {
+        return enabled + "|" + contextTokens + "|" + reserveOutputTokens + "|" + dropOrder;
+    }
+
+    /**
+     * 组装统计：次数、平均/最大 token 数、截断次数，以及最近若干次的记录
+     */
+    public Stats getStats() {
+        long count = requests.get();
+        List<Build> latest;
+        synchronized (recent) {
+            latest = recent.stream().map(Build::withoutMessage).collect(Collectors.toList());
+        }
+        return new Stats(count, count == 0 ? 0 : totalTokens.get() / count, maxTokens.get(),
+                truncatedRequests.get(), droppedEvents.get(), budget(), latest);
+    }
+
+    /**
+     * 用户消息可用的 token 数：上下文长度减去预留的输出（含思考内容）和系统提示词
+     */
+    private int budget() {
+        int systemTokens = dispatchAssistantApp != null
+                ? TokenEstimator.estimate(dispatchAssistantApp.getSystemPrompt()) + TokenEstimator.MESSAGE_OVERHEAD : 0;
+        return contextTokens - reserveOutputTokens - systemTokens - TokenEstimator.MESSAGE_OVERHEAD;
+    }
+
+    private Build record(Build build) {
+        requests.incrementAndGet();
+        totalTokens.addAndGet(build.tokens());
+        maxTokens.accumulateAndGet(build.tokens(), Math::max);
+        if (build.droppedEvents() > 0) {
+            truncatedRequests.incrementAndGet();
+            droppedEvents.addAndGet(build.droppedEvents());
+        }
+        synchronized (recent) {
+            recent.addFirst(build.withoutMessage());
+            while (recent.size() > RECENT_SIZE) {
+                recent.removeLast();
+            }
+        }
+        log.info("[{}] prompt ~{}/{} tokens, dropped {} events {}", build.tag(), build.tokens(), build.budget(),
+                build.droppedEvents(), build.droppedByCategory());
+        return build;
+    }
+
+    private static int noteTokens(Map<EventCategory, Integer> droppedByCategory) {
+        return TokenEstimator.estimate(note(droppedByCategory));
+    }
+
+    private static String note(Map<EventCategory, Integer> droppedByCategory) {
+        if (droppedByCategory.isEmpty()) {
+            return "";
+        }
+        int total = droppedByCategory.values().stream().mapToInt(Integer::intValue).sum();
+        String detail = droppedByCategory.entrySet().stream()
+                .map(e -> e.getKey().getLabel() + e.getValue() + "条")
+                .collect(Collectors.joining("、"));
+        return "\n（因篇幅限制，已省略" + total + "条较次要的记录：" + detail + "）\n";
+    }
+
+    /**
+     * 一次组装的结果
+     *
+     * @param message           用户消息，统计记录中为 null
+     * @param tokens            最终估算 token 数
+     * @param budget            用户消息可用的 token 预算
+     * @param droppedEvents     因超出预算删除的条目数
+     * @param droppedByCategory 各类别删除的条目数
+     */
+    public record Build(String tag, LocalDateTime time, String message, int tokens, int budget,
+                        int droppedEvents, Map<String, Integer> droppedByCategory) {
+
+        Build withoutMessage() {
+            return new Build(tag, time, null, tokens, budget, droppedEvents, droppedByCategory);
+        }
+    }
+
+    /**
+     * 组装统计
+     *
+     * @param avgTokens 平均估算 token 数
+     * @param budget    当前用户消息预算
+     * @param recent    最近的组装记录（新的在前）
+     */
+    public record Stats(long requests, long avgTokens, long maxTokens, long truncatedRequests,
+                        long droppedEvents, int budget, List<Build> recent) {
+    }
+}
@@ -0,0 +1,168 @@
+package com.hupi.hupiaiagent.summary;
+
+import com.hupi.hupiaiagent.advisor.MyLoggerAdvisor;
+import com.hupi.hupiaiagent.util.ThinkContentUtil;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多日（周）生产调度汇总
+ * <p>
+ * 先并发取得区间内每天的交接班总结（优先用摘要缓存，未缓存的按单日流程生成并写入缓存），
+ * 再把各天的总结交给模型做一次简短的合并。合并输入只有各天的总结，远小于多天日志原文，
+ * 一周的耗时约为最慢一天的生成时间加一次合并。
+ */
+@Component
+@Slf4j
+public class RollupSummaryService {
+
+    private static final String ROLLUP_SYSTEM_PROMPT = """
+            你是油气田生产调度总结助手。用户会给出连续若干天的"交接班总结"，请合并生成多日生产调度总结：
+            1) 以用户指定的标题开头，然后是"主要工作"小节，最后是"后续关注工作"小节；
+            2) "主要工作"按主题归并多日事项（清管、检修、抢修、中断或停输、隐患治理、技改、产量影响、协调配合），
+               同一单位、设备或线路跨天的事项合并为一条，写明起止日期和最终状态；
+            3) 每条以"MM-DD"或"MM-DD至MM-DD"开头，后接单位、设备或线路、事件及结果，用自然语言完整句子表述，条目前以"1."、"2."等编号；
+            4) "后续关注工作"只列截至最后一天仍未完成的事项及计划；
+            5) 单位、设备、线路名称必须原样引用各天总结中的名称，不得编造或泛化。
+            """;
+
+    private final ChatClient rollupClient;
+
+    @Resource
+    private HandoverSummaryService handoverSummaryService;
+
+    @Value("${dispatch.rollup.max-days:31}")
+    private int maxDays;
+
+    @Value("${dispatch.rollup.parallelism:4}")
+    private int parallelism;
+
+    public RollupSummaryService(ChatModel dashscopeChatModel, ChatMemory chatMemory) {
+        this.rollupClient = ChatClient.builder(dashscopeChatModel)
+                .defaultSystem(ROLLUP_SYSTEM_PROMPT)
+                .defaultAdvisors(
+                        MessageChatMemoryAdvisor.builder(chatMemory).build(),
+                        new MyLoggerAdvisor()
+                )
+                .build();
+    }
+
+    public int getMaxDays() {
+        return maxDays;
+    }
+
+    /**
+     * 汇总 [from, to] 区间，事件依次为：每天完成时一条 progress，随后合并结果的 thinking/message 片段
+     */
+    public Flux<RollupEvent> rollup(LocalDate from, LocalDate to, String chatId) {
+        List<String> dates = from.datesUntil(to.plusDays(1)).map(LocalDate::toString).toList();
+        int total = dates.size();
+        long start = System.currentTimeMillis();
+        Map<String, String> summaries = new ConcurrentSkipListMap<>();
+        AtomicInteger completed = new AtomicInteger();
+
+        Flux<RollupEvent> days = Flux.fromIterable(dates)
+                .flatMap(date -> handoverSummaryService.summarizeDay(date,
+                                        progress -> log.info("[Rollup] {} progress: {}", date, progress))
+                                .map(summary -> {
+                                    summaries.put(date, summary.content());
+                                    return new DayProgress(date, summary.cached() ? "cache" : "generated", 0, total, summary.costMs());
+                                })
+                                .defaultIfEmpty(new DayProgress(date, "missing", 0, total, 0))
+                                .onErrorResume(e -> {
+                                    log.warn("[Rollup] summarize {} failed: {}", date, e.toString());
+                                    return Mono.just(new DayProgress(date, "failed", 0, total, 0));
+                                })
+                                .map(progress -> new RollupEvent("progress", progress.withCompleted(completed.incrementAndGet()))),
+                        Math.max(1, parallelism));
+
+        Flux<RollupEvent> merge = Flux.defer(() -> {
+            log.info("[Rollup] {} ~ {}: {}/{} days summarized in {}ms", from, to, summaries.size(), total,
+                    System.currentTimeMillis() - start);
+            if (summaries.isEmpty()) {
+                return Flux.just(new RollupEvent("error", "所选日期范围内没有调度日志"));
+            }
+            AtomicBoolean inThink = new AtomicBoolean(false);
+            return rollupClient.prompt()
+                    .user(buildRollupMessage(from, to, summaries))
+                    .advisors(spec -> spec.param(ChatMemory.CONVERSATION_ID, chatId))
+                    .stream()
+                    .content()
+                    .concatMapIterable(chunk -> splitThink(chunk, inThink));
+        });
+        return days.concatWith(merge);
+    }
+
+    static String title(LocalDate from, LocalDate to) {
+        if (from.plusDays(6).equals(to)) {
+            return "本周生产调度总结（" + from + "至" + to + "）";
+        }
+        return from + "至" + to + "生产调度总结";
+    }
+
+    static String buildRollupMessage(LocalDate from, LocalDate to, Map<String, String> summaries) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("请基于以下各天的交接班总结，生成\"").append(title(from, to)).append("\"：\n\n");
+        summaries.forEach((date, content) -> sb.append("【").append(date).append("】\n")
+                .append(ThinkContentUtil.stripThink(content).strip()).append("\n\n"));
+        return sb.toString();
+    }
+
+    /**
+     * 按 &lt;think&gt; 标签把模型输出片段拆成 thinking / message 事件
+     */
+    static List<RollupEvent> splitThink(String chunk, AtomicBoolean inThink) {
+        List<RollupEvent> events = new ArrayList<>();
+        String rest = chunk;
+        while (!rest.isEmpty()) {
+            String tag = inThink.get() ? ThinkContentUtil.THINK_END : ThinkContentUtil.THINK_START;
+            int index = rest.indexOf(tag);
+            String part = index >= 0 ? rest.substring(0, index) : rest;
+            if (!part.isEmpty()) {
+                events.add(new RollupEvent(inThink.get() ? "thinking" : "message", part));
+            }
+            if (index < 0) {
+                break;
+            }
+            inThink.set(!inThink.get());
+            rest = rest.substring(index + tag.length());
+        }
+        return events;
+    }
+
+    /**
+     * 汇总过程中的一个 SSE 事件
+     *
+     * @param event progress、thinking、message 或 error
+     */
+    public record RollupEvent(String event, Object data) {
+    }
+
+    /**
+     * 单日完成进度
+     *
+     * @param source cache（取自摘要缓存）、generated（本次生成）、missing（没有日志）、failed（生成失败）
+     */
+    public record DayProgress(String date, String source, int completed, int total, long costMs) {
+
+        DayProgress withCompleted(int completed) {
+            return new DayProgress(date, source, completed, total, costMs);
+        }
+    }
+}
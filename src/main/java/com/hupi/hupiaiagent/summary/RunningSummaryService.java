@@ -0,0 +1,310 @@
+package com.hupi.hupiaiagent.summary;
+
+import com.hupi.hupiaiagent.app.DispatchAssistantApp;
+import com.hupi.hupiaiagent.app.MapReduceSummarizer;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogCatalog;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogFilter;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogIndex;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogListener;
+import com.hupi.hupiaiagent.util.DispatchLogFileUtil;
+import com.hupi.hupiaiagent.util.ThinkContentUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 随日志追加滚动更新的交接班总结
+ * <p>
+ * 日志全天陆续写入，按天生成只能等到最后读整份文件。这里由目录册通知哪天的日志有追加，后台线程定期把
+ * 上次总结之后新增的条目（按文件顺序，最后一条追加了续行时一并重发）连同上一版总结发给模型，得到更新后的总结，
+ * 最新版本保存在内存中，调度员随时可以查看。当天日志第一次有追加或新增部分过长（超过分段汇总阈值）时整体生成一次；
+ * 日志被改写时只丢弃旧总结，等到再有追加（或手动刷新）才重新生成，不因导入、改写自动整体调用模型。
+ * 更新期间日志没有再变化时，结果同时写入摘要缓存，交接班时的预取接口直接命中，不再整份重新生成。
+ * 后台会定期调用模型，默认关闭，由 dispatch.running-summary.enabled 开启。
+ */
+@Component
+@Slf4j
+public class RunningSummaryService implements DispatchLogListener {
+
+    private static final String DELTA_MESSAGE_TEMPLATE = """
+            以下是[%s]截至%s的交接班总结：
+
+            %s
+
+            此后新增的调度日志如下，请结合新增内容更新上述总结（已完成的事项移入已处理工作，新出现的事项补充进去），输出完整的交接班总结：
+
+            %s""";
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm");
+
+    private static final String TEMP_CHAT_ID_PREFIX = "running-summary-";
+
+    @Resource
+    private HandoverSummaryService handoverSummaryService;
+
+    @Resource
+    private DispatchAssistantApp dispatchAssistantApp;
+
+    @Resource
+    private MapReduceSummarizer mapReduceSummarizer;
+
+    @Resource
+    private DispatchLogIndex dispatchLogIndex;
+
+    @Resource
+    private DispatchLogFilter dispatchLogFilter;
+
+    @Resource
+    private DispatchLogCatalog dispatchLogCatalog;
+
+    @Resource
+    private DispatchLogFileUtil dispatchLogFileUtil;
+
+    @Resource
+    private SummaryCache summaryCache;
+
+    @Value("${dispatch.running-summary.enabled:false}")
+    private boolean enabled;
+
+    @Value("${dispatch.running-summary.interval-seconds:300}")
+    private long intervalSeconds;
+
+    @Value("${dispatch.running-summary.min-new-events:1}")
+    private int minNewEvents;
+
+    @Value("${dispatch.running-summary.timeout-minutes:10}")
+    private long timeoutMinutes;
+
+    @Value("${dispatch.running-summary.keep-days:3}")
+    private int keepDays;
+
+    private ScheduledExecutorService executor;
+
+    // 日期 -> 最新一版总结，按日期倒序
+    private final ConcurrentSkipListMap<String, RunningSummary> summaries = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+
+    // 有追加、尚未并入总结的日期
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    // 日志被改写的次数；更新期间发生改写时丢弃该次结果
+    private final Map<String, Integer> rewrites = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "running-summary");
+            t.setDaemon(true);
+            return t;
+        });
+        if (enabled) {
+            dispatchLogCatalog.addListener(this);
+            executor.scheduleWithFixedDelay(this::tickQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+            log.info("[RunningSummary] enabled, update every {}s", intervalSeconds);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void onLogChanged(LogChangeEvent event) {
+        String date = event.date();
+        // 只有追加才触发自动更新；改写、删除丢弃旧总结，等下次追加再整体生成
+        if (event.type() == ChangeType.APPENDED) {
+            dirty.add(date);
+        } else if (event.type() == ChangeType.MODIFIED || event.type() == ChangeType.DELETED) {
+            rewrites.merge(date, 1, Integer::sum);
+            summaries.remove(date);
+            dirty.remove(date);
+        }
+    }
+
+    /**
+     * 某天的最新一版总结，尚未生成时返回 null
+     */
+    public RunningSummary get(String date) {
+        return summaries.get(date);
+    }
+
+    /**
+     * 最近几天的滚动总结（日期倒序）
+     */
+    public List<RunningSummary> list() {
+        return new ArrayList<>(summaries.values());
+    }
+
+    /**
+     * 立即并入指定日期的新增日志（没有新增时不调用模型），在工作线程上排队执行
+     */
+    public void refreshNow(String date) {
+        executor.execute(() -> {
+            try {
+                update(date);
+            } catch (Exception e) {
+                log.warn("[RunningSummary] manual refresh for {} failed", date, e);
+            }
+        });
+    }
+
+    private void tickQuietly() {
+        try {
+            // 只处理有追加的日期；当天没有总结时整体生成一版，之前几天只更新已有总结
+            String today = LocalDate.now().toString();
+            for (String date : new ArrayList<>(dirty)) {
+                if (date.equals(today) || summaries.containsKey(date)) {
+                    update(date);
+                } else {
+                    dirty.remove(date);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("[RunningSummary] update failed", e);
+        }
+    }
+
+    void update(String date) throws IOException {
+        File file = dispatchLogFileUtil.resolveLogFile(date);
+        if (!file.isFile()) {
+            return;
+        }
+        int rewrite = rewrites.getOrDefault(date, 0);
+        dirty.remove(date);
+        SummaryCache.Snapshot snapshot = summaryCache.snapshot(file);
+        DispatchLogIndex.DayIndex day = dispatchLogIndex.getDay(date);
+        if (day == null || day.size() == 0) {
+            return;
+        }
+        DispatchLogEvent last = day.events().stream().max(Comparator.comparingInt(DispatchLogEvent::seq)).orElseThrow();
+        LocalDateTime asOf = day.events().stream().map(DispatchLogEvent::time).filter(Objects::nonNull)
+                .max(Comparator.naturalOrder()).orElse(null);
+        RunningSummary previous = summaries.get(date);
+        long start = System.currentTimeMillis();
+        String content;
+        int deltaEvents;
+        boolean full;
+        if (previous == null) {
+            content = fullSummary(date);
+            deltaEvents = day.size();
+            full = true;
+        } else {
+            List<DispatchLogEvent> delta = newEvents(day.events(), previous.coveredSeq(), previous.coveredText());
+            if (delta.size() < minNewEvents) {
+                return;
+            }
+            List<DispatchLogEvent> kept = dispatchLogFilter.keep(delta);
+            deltaEvents = delta.size();
+            if (kept.isEmpty()) {
+                // 新增的都是噪声条目，只前移进度
+                content = previous.content();
+                full = false;
+            } else {
+                String message = deltaMessage(date, previous.content(), previous.asOf(), kept);
+                full = mapReduceSummarizer.isApplicable(message);
+                content = full ? fullSummary(date) : deltaSummary(message, date);
+            }
+        }
+        long cost = System.currentTimeMillis() - start;
+        if (content == null || content.isBlank()) {
+            log.warn("[RunningSummary] {} produced empty summary, keeping previous version", date);
+            return;
+        }
+        if (rewrites.getOrDefault(date, 0) != rewrite) {
+            log.info("[RunningSummary] {} rewritten during update, result discarded", date);
+            return;
+        }
+        RunningSummary next = new RunningSummary(date, content, asOf, last.seq(), last.text(), day.size(),
+                previous != null ? previous.updates() + 1 : 1, deltaEvents, full, cost, System.currentTimeMillis());
+        summaries.put(date, next);
+        while (summaries.size() > keepDays) {
+            summaries.pollLastEntry();
+        }
+        // 整体生成已经写过缓存；增量结果在日志未再变化时写入，供交接班预取直接命中
+        if (!full && handoverSummaryService.getCached(date) == null) {
+            summaryCache.put(date, file, snapshot, content, cost);
+        }
+        log.info("[RunningSummary] {} updated as of {} ({}, +{} events, cost={}ms)", date,
+                asOf != null ? TIME.format(asOf) : "-", full ? "full" : "delta", deltaEvents, cost);
+    }
+
+    private String fullSummary(String date) {
+        HandoverSummaryService.DaySummary summary = handoverSummaryService.summarizeDay(date,
+                        progress -> log.info("[RunningSummary] {} progress: {}", date, progress))
+                .block(Duration.ofMinutes(timeoutMinutes));
+        return summary != null ? summary.content() : null;
+    }
+
+    private String deltaSummary(String message, String date) {
+        // 与按天生成相同，用临时会话并在结束后清除，不出现在历史记录中
+        String chatId = TEMP_CHAT_ID_PREFIX + date + "-" + System.nanoTime();
+        try {
+            String content = dispatchAssistantApp.doChatByStream(message, chatId)
+                    .collect(Collectors.joining())
+                    .block(Duration.ofMinutes(timeoutMinutes));
+            return content != null ? ThinkContentUtil.stripThink(content) : null;
+        } finally {
+            dispatchAssistantApp.getChatMemory().clear(chatId);
+        }
+    }
+
+    /**
+     * 上次总结之后新增的事件（按文件顺序）；上次的最后一条追加了续行时一并返回
+     *
+     * @param coveredSeq  上次总结覆盖到的最后一条事件序号
+     * @param coveredText 该事件当时的正文
+     */
+    static List<DispatchLogEvent> newEvents(List<DispatchLogEvent> events, int coveredSeq, String coveredText) {
+        return events.stream()
+                .filter(event -> event.seq() > coveredSeq
+                        || event.seq() == coveredSeq && !event.text().equals(coveredText))
+                .sorted(Comparator.comparingInt(DispatchLogEvent::seq))
+                .toList();
+    }
+
+    /**
+     * 增量更新的用户消息：上一版总结 + 新增日志
+     */
+    static String deltaMessage(String date, String previous, LocalDateTime asOf, List<DispatchLogEvent> delta) {
+        String lines = delta.stream().map(DispatchLogEvent::render).collect(Collectors.joining("\n"));
+        return String.format(DELTA_MESSAGE_TEMPLATE, date, asOf != null ? TIME.format(asOf) : "目前", previous.strip(), lines);
+    }
+
+    /**
+     * 某天的滚动总结
+     *
+     * @param asOf        已并入的最新一条日志的时间
+     * @param coveredSeq  已并入的最后一条事件序号（文件顺序）
+     * @param coveredText 该事件并入时的正文，之后追加了续行时会重新发送
+     * @param events      已并入的事件数
+     * @param deltaEvents 最近一次更新新增的事件数
+     * @param full        最近一次是否整体生成
+     * @param costMs      最近一次更新的耗时
+     */
+    public record RunningSummary(String date, String content, LocalDateTime asOf, int coveredSeq, String coveredText,
+                                 int events, int updates, int deltaEvents, boolean full, long costMs, long updatedAt) {
+    }
+}
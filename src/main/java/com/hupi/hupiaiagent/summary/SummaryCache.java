@@ -0,0 +1,245 @@
+package com.hupi.hupiaiagent.summary;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hupi.hupiaiagent.app.DispatchAssistantApp;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogCatalog;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogDeduplicator;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogFilter;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogListener;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 交接班总结的磁盘缓存
+ * <p>
+ * 缓存键由 日志文件内容哈希、系统提示词哈希、模型名称及参数、噪声过滤规则、重复合并和 token 预算参数 共同决定，
+ * 任何一项变化都会得到新的键，旧结果自然不再命中；目录册通知日志变化、或写入新结果时，同一天的旧条目会被删除。
+ * 文件布局：{dir}/{date}/{key}.json
+ */
+@Component
+@Slf4j
+public class SummaryCache implements DispatchLogListener {
+
+    private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private DispatchAssistantApp dispatchAssistantApp;
+
+    @Resource
+    private DispatchLogFilter dispatchLogFilter;
+
+    @Resource
+    private DispatchLogDeduplicator dispatchLogDeduplicator;
+
+    @Resource
+    private PromptBudgetBuilder promptBudgetBuilder;
+
+    @Resource
+    private ChatModel dashscopeChatModel;
+
+    @Resource
+    private DispatchLogCatalog dispatchLogCatalog;
+
+    @Value("${dispatch.summary-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${dispatch.summary-cache.dir:tmp/summary-cache}")
+    private String dir;
+
+    // 日志文件路径 -> 最近一次计算的内容哈希（不在目录册中的文件使用，修改时间、大小不变时直接复用）
+    private final Map<String, FileHash> fileHashes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        dispatchLogCatalog.addListener(this);
+    }
+
+    /**
+     * 日志内容变化后，该日期的旧结果不会再命中，直接删除
+     */
+    @Override
+    public void onLogChanged(LogChangeEvent event) {
+        if (event.type() != ChangeType.CREATED) {
+            evict(event.date());
+        }
+    }
+
+    /**
+     * 记下日志文件当前内容对应的缓存键，应在读取日志、构建消息之前调用，生成结束后交给 {@link #put}
+     */
+    public Snapshot snapshot(File logFile) {
+        String logSha256 = hashOf(logFile);
+        return new Snapshot(keyOf(logSha256), logSha256);
+    }
+
+    /**
+     * 查找日志文件当前内容对应的缓存结果，未命中返回 null
+     */
+    public Entry get(String date, File logFile) {
+        if (!enabled || !isValidDate(date) || !logFile.isFile()) {
+            return null;
+        }
+        File file = entryFile(date, snapshot(logFile).key());
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(file, Entry.class);
+        } catch (IOException e) {
+            log.warn("[SummaryCache] failed to read {}, ignored: {}", file, e.getMessage());
+            FileUtil.del(file);
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存，并删除同一天其他键的旧条目
+     * <p>
+     * 生成期间日志有追加或改写时（当前内容与快照不同），结果对应的是旧日志，不写入，避免以新日志的键缓存过时的总结。
+     *
+     * @param snapshot 生成前 {@link #snapshot} 取得的缓存键
+     * @param content  模型输出（应已去掉思考内容）
+     * @param costMs   生成耗时
+     */
+    public Entry put(String date, File logFile, Snapshot snapshot, String content, long costMs) {
+        if (!enabled || !isValidDate(date) || !logFile.isFile() || content == null || content.isBlank()) {
+            return null;
+        }
+        if (isStale(logFile, snapshot, date)) {
+            return null;
+        }
+        String key = snapshot.key();
+        Entry entry = new Entry(date, key, snapshot.logSha256(), modelName(), System.currentTimeMillis(), costMs, content);
+        File file = entryFile(date, key);
+        try {
+            FileUtil.mkdir(file.getParentFile());
+            File tmp = new File(file.getParentFile(), key + ".tmp");
+            objectMapper.writeValue(tmp, entry);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("[SummaryCache] failed to write {}: {}", file, e.getMessage());
+            return null;
+        }
+        // 写入过程中日志恰好变化时，变化通知可能已先于写入清理过缓存，这里再检查一次
+        if (isStale(logFile, snapshot, date)) {
+            FileUtil.del(file);
+            return null;
+        }
+        File[] stale = file.getParentFile().listFiles((d, name) -> name.endsWith(".json") && !name.equals(file.getName()));
+        if (stale != null) {
+            for (File f : stale) {
+                FileUtil.del(f);
+            }
+        }
+        log.info("[SummaryCache] stored {} key={} ({} chars, cost={}ms)", date, key.substring(0, 12), content.length(), costMs);
+        return entry;
+    }
+
+    private boolean isStale(File logFile, Snapshot snapshot, String date) {
+        if (logFile.isFile() && hashOf(logFile).equals(snapshot.logSha256())) {
+            return false;
+        }
+        log.info("[SummaryCache] log of {} changed during generation, result not cached", date);
+        return true;
+    }
+
+    /**
+     * 删除某天的全部缓存
+     */
+    public void evict(String date) {
+        if (isValidDate(date)) {
+            FileUtil.del(new File(dir, date));
+        }
+    }
+
+    // 日期用作目录名，只接受 YYYY-MM-DD
+    private static boolean isValidDate(String date) {
+        return date != null && DATE.matcher(date).matches();
+    }
+
+    private String keyOf(String logSha256) {
+        return SecureUtil.sha256(String.join("\n",
+                logSha256,
+                SecureUtil.sha256(dispatchAssistantApp.getSystemPrompt()),
+                modelName(),
+                optionsFingerprint(),
+                dispatchLogFilter.fingerprint(),
+                dispatchLogDeduplicator.fingerprint(),
+                promptBudgetBuilder.fingerprint()));
+    }
+
+    private String hashOf(File logFile) {
+        long lastModified = logFile.lastModified();
+        long size = logFile.length();
+        String name = logFile.getName();
+        DispatchLogCatalog.Entry entry = name.endsWith(".txt") ? dispatchLogCatalog.get(name.substring(0, name.length() - 4)) : null;
+        if (entry != null && entry.path().equals(logFile.getAbsolutePath()) && entry.lastModified() == lastModified && entry.size() == size) {
+            return entry.sha256();
+        }
+        FileHash cached = fileHashes.get(logFile.getAbsolutePath());
+        if (cached != null && cached.lastModified() == lastModified && cached.size() == size) {
+            return cached.sha256();
+        }
+        String sha256 = SecureUtil.sha256(logFile);
+        fileHashes.put(logFile.getAbsolutePath(), new FileHash(lastModified, size, sha256));
+        return sha256;
+    }
+
+    private String modelName() {
+        ChatOptions options = dashscopeChatModel.getDefaultOptions();
+        return options != null && options.getModel() != null ? options.getModel() : dashscopeChatModel.getClass().getSimpleName();
+    }
+
+    private String optionsFingerprint() {
+        ChatOptions options = dashscopeChatModel.getDefaultOptions();
+        if (options == null) {
+            return "";
+        }
+        return "temperature=" + options.getTemperature() + ",topP=" + options.getTopP() + ",topK=" + options.getTopK()
+                + ",maxTokens=" + options.getMaxTokens() + ",stop=" + options.getStopSequences();
+    }
+
+    private File entryFile(String date, String key) {
+        return new File(new File(dir, date), key + ".json");
+    }
+
+    private record FileHash(long lastModified, long size, String sha256) {
+    }
+
+    /**
+     * 生成开始时日志对应的缓存键
+     *
+     * @param logSha256 当时日志文件的内容哈希
+     */
+    public record Snapshot(String key, String logSha256) {
+    }
+
+    /**
+     * 缓存条目
+     *
+     * @param logSha256 生成时日志文件的内容哈希
+     * @param createdAt 生成时间（毫秒时间戳）
+     * @param costMs    生成耗时
+     */
+    public record Entry(String date, String key, String logSha256, String model, long createdAt, long costMs,
+                        String content) {
+    }
+}
@@ -0,0 +1,266 @@
+package com.hupi.hupiaiagent.summary;
+
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogIndex;
+import com.hupi.hupiaiagent.util.DispatchLogFileUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 交接班总结定时预生成
+ * <p>
+ * 后台线程定期检查昨天的日志：日志已完整（最后一条记录晚于 complete-after 且文件 quiet-minutes 分钟内没有变化），
+ * 或当前时间已过 cutoff 时，通过 {@link HandoverSummaryService} 生成总结并写入摘要缓存，
+ * 交接班时预取接口直接命中缓存。失败按指数退避重试，超过最大次数后放弃，直到日志文件再次变化。
+ * 只有一个工作线程，同一时间最多生成一份总结，不与白天的交互请求争抢过多算力。
+ */
+@Component
+@Slf4j
+public class SummaryPregenerator {
+
+    @Resource
+    private HandoverSummaryService handoverSummaryService;
+
+    @Resource
+    private DispatchLogFileUtil dispatchLogFileUtil;
+
+    @Resource
+    private DispatchLogIndex dispatchLogIndex;
+
+    @Value("${dispatch.summary-pregen.enabled:true}")
+    private boolean enabled;
+
+    @Value("${dispatch.summary-pregen.check-interval-seconds:300}")
+    private long checkIntervalSeconds;
+
+    @Value("${dispatch.summary-pregen.cutoff:07:30}")
+    private String cutoff;
+
+    @Value("${dispatch.summary-pregen.complete-after:23:00}")
+    private String completeAfter;
+
+    @Value("${dispatch.summary-pregen.quiet-minutes:30}")
+    private long quietMinutes;
+
+    @Value("${dispatch.summary-pregen.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${dispatch.summary-pregen.initial-backoff-seconds:60}")
+    private long initialBackoffSeconds;
+
+    @Value("${dispatch.summary-pregen.max-backoff-seconds:1800}")
+    private long maxBackoffSeconds;
+
+    @Value("${dispatch.summary-pregen.timeout-minutes:20}")
+    private long timeoutMinutes;
+
+    @Value("${dispatch.summary-pregen.keep-days:14}")
+    private int keepDays;
+
+    private ScheduledExecutorService executor;
+
+    // 日期 -> 最近一次状态，按日期倒序
+    private final ConcurrentSkipListMap<String, Status> statuses = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "summary-pregen");
+            t.setDaemon(true);
+            return t;
+        });
+        if (enabled) {
+            executor.scheduleWithFixedDelay(this::checkQuietly, checkIntervalSeconds, checkIntervalSeconds, TimeUnit.SECONDS);
+            log.info("[SummaryPregen] enabled, check every {}s, cutoff={}", checkIntervalSeconds, cutoff);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 立即为指定日期生成（忽略就绪判断和退避，但仍会复用已有缓存），在工作线程上排队执行
+     */
+    public void runNow(String date) {
+        executor.execute(() -> {
+            try {
+                File file = dispatchLogFileUtil.resolveLogFile(date);
+                if (!file.isFile()) {
+                    update(Status.of(date, State.WAITING, 0, 0).withError("日志文件不存在"));
+                    return;
+                }
+                Status previous = statuses.get(date);
+                generate(date, file, previous != null && previous.logModified() == file.lastModified() ? previous.attempts() : 0);
+            } catch (Exception e) {
+                log.warn("[SummaryPregen] manual run for {} failed", date, e);
+            }
+        });
+    }
+
+    /**
+     * 最近几天的预生成状态（日期倒序）
+     */
+    public List<Status> getStatuses() {
+        return new ArrayList<>(statuses.values());
+    }
+
+    private void checkQuietly() {
+        try {
+            check(LocalDate.now().minusDays(1).toString());
+        } catch (Exception e) {
+            log.warn("[SummaryPregen] check failed", e);
+        }
+    }
+
+    void check(String date) throws IOException {
+        File file = dispatchLogFileUtil.resolveLogFile(date);
+        if (!file.isFile()) {
+            update(Status.of(date, State.WAITING, 0, 0).withError("日志文件不存在"));
+            return;
+        }
+        Status previous = statuses.get(date);
+        if (previous != null && previous.logModified() != file.lastModified()) {
+            // 日志变化后重新计数
+            previous = null;
+        }
+        if (previous != null) {
+            State state = previous.state();
+            if (state == State.RUNNING || state == State.GAVE_UP
+                    || state == State.FAILED && System.currentTimeMillis() < previous.nextAttemptAt()) {
+                return;
+            }
+        }
+        if (handoverSummaryService.getCached(date) != null) {
+            if (previous == null || previous.state() != State.SUCCEEDED && previous.state() != State.CACHED) {
+                update(Status.of(date, State.CACHED, 0, file.lastModified()));
+            }
+            return;
+        }
+        int attempts = previous != null && previous.state() == State.FAILED ? previous.attempts() : 0;
+        if (!isReady(date, file)) {
+            update(Status.of(date, State.WAITING, 0, file.lastModified()));
+            return;
+        }
+        generate(date, file, attempts);
+    }
+
+    /**
+     * 日志是否已经可以生成总结
+     */
+    private boolean isReady(String date, File file) throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate logDate = LocalDate.parse(date);
+        if (!now.isBefore(logDate.plusDays(1).atTime(LocalTime.parse(cutoff)))) {
+            return true;
+        }
+        if (System.currentTimeMillis() - file.lastModified() < TimeUnit.MINUTES.toMillis(quietMinutes)) {
+            return false;
+        }
+        DispatchLogIndex.DayIndex day = dispatchLogIndex.getDay(date);
+        if (day == null || day.size() == 0) {
+            return false;
+        }
+        DispatchLogEvent last = day.events().get(day.size() - 1);
+        return last.time() != null && !last.time().isBefore(logDate.atTime(LocalTime.parse(completeAfter)));
+    }
+
+    private void generate(String date, File file, int previousAttempts) {
+        int attempt = previousAttempts + 1;
+        long logModified = file.lastModified();
+        long start = System.currentTimeMillis();
+        update(Status.of(date, State.RUNNING, attempt, logModified).withStartedAt(start));
+        try {
+            HandoverSummaryService.DaySummary summary = handoverSummaryService.summarizeDay(date,
+                            progress -> log.info("[SummaryPregen] {} progress: {}", date, progress))
+                    .block(Duration.ofMinutes(timeoutMinutes));
+            if (handoverSummaryService.getCached(date) == null) {
+                throw new IllegalStateException("生成结果为空或未写入缓存，输出长度 " + (summary == null ? 0 : summary.content().length()));
+            }
+            long cost = System.currentTimeMillis() - start;
+            update(Status.of(date, State.SUCCEEDED, attempt, logModified).withStartedAt(start).withFinished(cost));
+            log.info("[SummaryPregen] {} generated in {}ms (attempt {})", date, cost, attempt);
+        } catch (Exception e) {
+            long cost = System.currentTimeMillis() - start;
+            long backoff = Math.min(maxBackoffSeconds, initialBackoffSeconds << Math.min(attempt - 1, 20));
+            boolean giveUp = attempt >= maxAttempts;
+            update(Status.of(date, giveUp ? State.GAVE_UP : State.FAILED, attempt, logModified)
+                    .withStartedAt(start)
+                    .withFinished(cost)
+                    .withNextAttemptAt(giveUp ? 0 : System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(backoff))
+                    .withError(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+            log.warn("[SummaryPregen] {} attempt {} failed after {}ms, {}: {}", date, attempt, cost,
+                    giveUp ? "giving up" : "retry in " + backoff + "s", e.toString());
+        }
+    }
+
+    private void update(Status status) {
+        statuses.put(status.date(), status);
+        while (statuses.size() > keepDays) {
+            statuses.pollLastEntry();
+        }
+    }
+
+    public enum State {
+        /** 日志不存在或尚未完整 */
+        WAITING,
+        RUNNING,
+        SUCCEEDED,
+        /** 缓存中已有当前日志的总结（如白天已有人生成过） */
+        CACHED,
+        /** 失败，等待退避后重试 */
+        FAILED,
+        /** 达到最大重试次数，日志变化前不再尝试 */
+        GAVE_UP
+    }
+
+    /**
+     * 某天的预生成状态
+     *
+     * @param logModified   生成所基于的日志文件修改时间
+     * @param costMs        最近一次尝试的耗时
+     * @param nextAttemptAt 下次重试时间（毫秒时间戳），0 表示不再重试
+     */
+    public record Status(String date, State state, int attempts, long logModified, long startedAt,
+                         long costMs, long nextAttemptAt, String error, long updatedAt) {
+
+        static Status of(String date, State state, int attempts, long logModified) {
+            return new Status(date, state, attempts, logModified, 0, 0, 0, null, System.currentTimeMillis());
+        }
+
+        Status withStartedAt(long startedAt) {
+            return new Status(date, state, attempts, logModified, startedAt, costMs, nextAttemptAt, error, updatedAt);
+        }
+
+        Status withFinished(long costMs) {
+            return new Status(date, state, attempts, logModified, startedAt, costMs, nextAttemptAt, error, updatedAt);
+        }
+
+        Status withNextAttemptAt(long nextAttemptAt) {
+            return new Status(date, state, attempts, logModified, startedAt, costMs, nextAttemptAt, error, updatedAt);
+        }
+
+        Status withError(String error) {
+            return new Status(date, state, attempts, logModified, startedAt, costMs, nextAttemptAt, error, updatedAt);
+        }
+    }
+}
@@ -1,18 +1,39 @@
 package com.hupi.hupiaiagent.tools;
 
 import cn.hutool.core.io.FileUtil;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogFilter;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogIndex;
+import com.hupi.hupiaiagent.dispatchlog.EventCategory;
 import com.hupi.hupiaiagent.util.DispatchLogFileUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 调度日志查询工具（内嵌实现）
- * 使用统一的 DispatchLogFileUtil 解析文件路径
+ * 使用统一的 DispatchLogFileUtil 解析文件路径，优先从 DispatchLogIndex 读取已解析的事件，返回前经 DispatchLogFilter 去掉噪声条目
+ * <p>
+ * 工具结果会留在智能体的消息列表里、每一步思考都重新发送，整天的原文很快就把上下文占满。
+ * 因此另提供概览和分页查询：按时间段、类别、关键词在事件索引上筛选，每条压缩为一行，
+ * 一次最多返回 limit 条，并给出下一页的 offset。
  */
 @Component
 @Slf4j
@@ -21,7 +42,23 @@ public class DispatchLogTool {
     @Autowired
     private DispatchLogFileUtil dispatchLogFileUtil;
 
-    @Tool(description = "查询指定日期的调度日志原文。参数格式：YYYY-MM-DD。存在返回全文，不存在返回空值。")
+    @Autowired
+    private DispatchLogFilter dispatchLogFilter;
+
+    @Autowired
+    private DispatchLogIndex dispatchLogIndex;
+
+    @Value("${dispatch.log-tool.default-limit:30}")
+    private int defaultLimit;
+
+    @Value("${dispatch.log-tool.max-limit:100}")
+    private int maxLimit;
+
+    @Value("${dispatch.log-tool.max-chars:200}")
+    private int maxChars;
+
+    @Tool(description = "查询指定日期的调度日志原文。参数格式：YYYY-MM-DD。存在返回全文，不存在返回空值。"
+            + "全文可能很长，只需要部分内容时请先用 dispatch_log_overview 了解概况，再用 dispatch_log_query 分页查询。")
     public String dispatch_log(@ToolParam(description = "日志日期，格式 YYYY-MM-DD") String date) {
         log.info("=== DispatchLogTool 调用 ===");
         log.info("请求查询日期: {}", date);
@@ -41,9 +78,19 @@ public class DispatchLogTool {
                 return null;
             }
             
-            String content = FileUtil.readUtf8String(file);
-            int contentLength = content != null ? content.length() : 0;
-            log.info("成功读取文件，内容长度: {} 字符", contentLength);
+            String content;
+            if (dispatchLogFilter != null && dispatchLogIndex != null) {
+                DispatchLogIndex.DayIndex day = dispatchLogIndex.getDay(trimmedDate);
+                if (day == null) {
+                    return null;
+                }
+                DispatchLogFilter.FilterResult filtered = dispatchLogFilter.filter(day.events());
+                log.info("成功读取事件索引，事件数: {}，噪声过滤: {}", day.size(), filtered.summary());
+                content = filtered.content();
+            } else {
+                content = FileUtil.readUtf8String(file);
+                log.info("成功读取文件，内容长度: {} 字符", content != null ? content.length() : 0);
+            }
             if (content != null && content.length() > 0) {
                 String preview = content.length() > 200 ? content.substring(0, 200) + "..." : content;
                 log.debug("文件内容预览: {}", preview);
@@ -54,6 +101,154 @@ public class DispatchLogTool {
             return null;
         }
     }
-}
 
+    @Tool(description = "调度日志概况：总条数、时间范围、各类别条数。参数格式：YYYY-MM-DD。日志不存在时返回提示。")
+    public String dispatch_log_overview(@ToolParam(description = "日志日期，格式 YYYY-MM-DD") String date) {
+        DispatchLogIndex.DayIndex day = loadDay(date);
+        if (day == null) {
+            return "未找到 " + date + " 的调度日志";
+        }
+        List<DispatchLogEvent> events = dispatchLogFilter.keep(day.events());
+        String range = events.stream().filter(e -> e.time() != null).findFirst()
+                .map(first -> first.timeText() + " 至 " + events.get(events.size() - 1).timeText())
+                .orElse("无时间记录");
+        Map<EventCategory, Long> counts = events.stream()
+                .collect(Collectors.groupingBy(DispatchLogEvent::category, () -> new EnumMap<>(EventCategory.class),
+                        Collectors.counting()));
+        String categories = counts.entrySet().stream()
+                .map(e -> e.getKey().getLabel() + " " + e.getValue() + "条")
+                .collect(Collectors.joining("，"));
+        return date + " 共" + events.size() + "条记录（已去掉噪声条目），时间 " + range + "\n类别：" + categories;
+    }
 
+    @Tool(description = "分页查询调度日志：可按时间段、类别、关键词筛选，每条压缩为一行（时间 [类别] 正文）。"
+            + "结果末尾给出下一页的 offset，需要更多时再次调用并传入该 offset。")
+    public String dispatch_log_query(
+            @ToolParam(description = "日志日期，格式 YYYY-MM-DD") String date,
+            @ToolParam(description = "开始时间（含），格式 HH:mm，不限时留空", required = false) String from,
+            @ToolParam(description = "结束时间（不含），格式 HH:mm，不限时留空", required = false) String to,
+            @ToolParam(description = "类别，可多个（逗号分隔）：清管、抢修、中断/停输、检修/技改、隐患/故障、计产、视频监控、巡检、协调/申请、其他", required = false) String category,
+            @ToolParam(description = "关键词，多个用空格分隔，需全部包含", required = false) String keyword,
+            @ToolParam(description = "跳过的条数，首次查询为 0", required = false) Integer offset,
+            @ToolParam(description = "返回条数，默认 30", required = false) Integer limit) {
+        DispatchLogIndex.DayIndex day = loadDay(date);
+        if (day == null) {
+            return "未找到 " + date + " 的调度日志";
+        }
+        LocalDate logDate = LocalDate.parse(date.trim());
+        List<DispatchLogEvent> candidates;
+        try {
+            candidates = day.between(isBlank(from) ? null : logDate.atTime(LocalTime.parse(from.trim())),
+                    isBlank(to) ? null : logDate.atTime(LocalTime.parse(to.trim())));
+        } catch (DateTimeParseException e) {
+            return "时间格式错误（期望 HH:mm）";
+        }
+        Set<EventCategory> categories = parseCategories(category);
+        if (categories == null) {
+            return "未知类别：" + category;
+        }
+        List<String> keywords = isBlank(keyword) ? List.of() : Arrays.asList(keyword.trim().split("\\s+"));
+        int size = limit == null || limit <= 0 ? defaultLimit : Math.min(limit, maxLimit);
+        Page page = query(dispatchLogFilter.keep(candidates), categories, keywords,
+                offset == null ? 0 : Math.max(0, offset), size, maxChars);
+        log.info("[dispatch_log_query] {} {}~{} category={} keyword={} -> {}/{} (offset {})", date, from, to,
+                category, keyword, page.lines().size(), page.total(), page.offset());
+        return page.render();
+    }
+
+    private DispatchLogIndex.DayIndex loadDay(String date) {
+        if (isBlank(date)) {
+            return null;
+        }
+        try {
+            LocalDate.parse(date.trim());
+            return dispatchLogIndex.getDay(date.trim());
+        } catch (DateTimeParseException | IOException e) {
+            log.warn("读取 {} 的事件索引失败: {}", date, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 解析类别参数（类别名称或枚举名），为空时返回空集合（不限），有无法识别的类别时返回 null
+     */
+    static Set<EventCategory> parseCategories(String category) {
+        Set<EventCategory> categories = EnumSet.noneOf(EventCategory.class);
+        if (isBlank(category)) {
+            return categories;
+        }
+        for (String name : category.split("[,，、]")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            EventCategory matched = Arrays.stream(EventCategory.values())
+                    .filter(c -> c.name().equalsIgnoreCase(trimmed) || c.getLabel().equals(trimmed)
+                            || Arrays.asList(c.getLabel().split("/")).contains(trimmed))
+                    .findFirst()
+                    .orElse(null);
+            if (matched == null) {
+                return null;
+            }
+            categories.add(matched);
+        }
+        return categories;
+    }
+
+    /**
+     * 在候选事件（按时间排序）中按类别、关键词筛选并取一页
+     *
+     * @param categories 为空表示不限
+     * @param maxChars   每条正文最多保留的字数
+     */
+    static Page query(List<DispatchLogEvent> candidates, Set<EventCategory> categories, List<String> keywords,
+                      int offset, int limit, int maxChars) {
+        List<DispatchLogEvent> matched = candidates.stream()
+                .filter(e -> categories.isEmpty() || categories.contains(e.category()))
+                .filter(e -> keywords.stream().allMatch(e.text()::contains))
+                .toList();
+        List<String> lines = new ArrayList<>();
+        for (int i = offset; i < matched.size() && lines.size() < limit; i++) {
+            DispatchLogEvent event = matched.get(i);
+            String text = event.text().replaceAll("\\s*\\n\\s*", " ").strip();
+            if (text.length() > maxChars) {
+                text = text.substring(0, maxChars) + "…";
+            }
+            lines.add((event.time() != null ? event.timeText() : "--:--") + " [" + event.category().getLabel() + "] " + text);
+        }
+        return new Page(matched.size(), offset, lines);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * 一页查询结果
+     *
+     * @param total  符合条件的总条数
+     * @param offset 本页第一条在结果中的位置
+     */
+    record Page(int total, int offset, List<String> lines) {
+
+        int nextOffset() {
+            return offset + lines.size() < total ? offset + lines.size() : -1;
+        }
+
+        String render() {
+            if (total == 0) {
+                return "没有符合条件的记录";
+            }
+            if (lines.isEmpty()) {
+                return "共" + total + "条符合条件的记录，offset=" + offset + " 之后没有更多记录";
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append("共").append(total).append("条符合条件的记录，本次返回第").append(offset + 1)
+                    .append("-").append(offset + lines.size()).append("条：\n");
+            lines.forEach(line -> sb.append(line).append('\n'));
+            int next = nextOffset();
+            sb.append(next < 0 ? "（已全部返回）" : "（还有" + (total - next) + "条，继续查询请传 offset=" + next + "）");
+            return sb.toString();
+        }
+    }
+}
@@ -14,11 +14,13 @@ public class ToolRegistration {
 //    @Value("${search-api.api-key}")
 //    private String searchApiKey;
 
+    /**
+     * DispatchLogTool 依赖日志索引等组件，需使用容器中的实例
+     */
     @Bean
-    public ToolCallback[] allTools() {
+    public ToolCallback[] allTools(DispatchLogTool dispatchLogTool) {
         // 精简为生产调度分析助手所需工具
         TerminateTool terminateTool = new TerminateTool();
-        DispatchLogTool dispatchLogTool = new DispatchLogTool();
         return ToolCallbacks.from(
                 terminateTool,
                 dispatchLogTool
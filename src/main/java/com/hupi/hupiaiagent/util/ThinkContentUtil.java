@@ -0,0 +1,80 @@
+package com.hupi.hupiaiagent.util;
+
+/**
+ * 推理模型（如 deepseek-r1）&lt;think&gt; 思考内容处理工具
+ */
+public class ThinkContentUtil {
+
+    public static final String THINK_START = "<think>";
+
+    public static final String THINK_END = "</think>";
+
+    private ThinkContentUtil() {
+    }
+
+    /**
+     * 去掉思考内容，只保留最终回答
+     * 兼容只有结束标签（开始标签被模型模板吞掉）和只有开始标签（输出被截断）的情况
+     */
+    public static String stripThink(String text) {
+        if (text == null || (!text.contains(THINK_START) && !text.contains(THINK_END))) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        int pos = 0;
+        int firstEnd = text.indexOf(THINK_END);
+        int firstStart = text.indexOf(THINK_START);
+        if (firstEnd >= 0 && (firstStart < 0 || firstEnd < firstStart)) {
+            // 开头的思考内容缺少开始标签
+            pos = firstEnd + THINK_END.length();
+        }
+        while (pos < text.length()) {
+            int start = text.indexOf(THINK_START, pos);
+            if (start < 0) {
+                result.append(text, pos, text.length());
+                break;
+            }
+            result.append(text, pos, start);
+            int end = text.indexOf(THINK_END, start + THINK_START.length());
+            if (end < 0) {
+                // 思考未结束（输出被截断），丢弃剩余部分
+                break;
+            }
+            pos = end + THINK_END.length();
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * 提取所有思考内容（不含标签），没有思考内容时返回空字符串
+     */
+    public static String extractThink(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder();
+        int firstEnd = text.indexOf(THINK_END);
+        int firstStart = text.indexOf(THINK_START);
+        int pos = 0;
+        if (firstEnd >= 0 && (firstStart < 0 || firstEnd < firstStart)) {
+            result.append(text, 0, firstEnd);
+            pos = firstEnd + THINK_END.length();
+        }
+        while (pos < text.length()) {
+            int start = text.indexOf(THINK_START, pos);
+            if (start < 0) {
+                break;
+            }
+            int end = text.indexOf(THINK_END, start + THINK_START.length());
+            if (result.length() > 0) {
+                result.append('\n');
+            }
+            result.append(text, start + THINK_START.length(), end < 0 ? text.length() : end);
+            if (end < 0) {
+                break;
+            }
+            pos = end + THINK_END.length();
+        }
+        return result.toString().trim();
+    }
+}
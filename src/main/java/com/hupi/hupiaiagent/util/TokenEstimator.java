@@ -0,0 +1,55 @@
+package com.hupi.hupiaiagent.util;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * Token 数量估算工具
+ * 不依赖具体模型的分词器，按字符类别近似估算（偏保守，宁多勿少）：
+ * - 中日韩文字、全角标点：每个字符约 1 个 token
+ * - 英文、数字、半角符号：约 3.5 个字符 1 个 token
+ * - 空白字符不计
+ */
+public class TokenEstimator {
+
+    /**
+     * 每条消息的固定开销（角色标记、分隔符等）
+     */
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int wide = 0;
+        int narrow = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c <= ' ') {
+                continue;
+            }
+            if (c >= 0x2E80) {
+                wide++;
+            } else {
+                narrow++;
+            }
+        }
+        return wide + (int) Math.ceil(narrow / 3.5);
+    }
+
+    public static int estimate(Message message) {
+        return estimate(message.getText()) + MESSAGE_OVERHEAD;
+    }
+
+    public static int estimate(List<Message> messages) {
+        int total = 0;
+        for (Message message : messages) {
+            total += estimate(message);
+        }
+        return total;
+    }
+}
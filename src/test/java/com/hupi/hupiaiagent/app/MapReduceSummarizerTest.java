@@ -0,0 +1,48 @@
+package com.hupi.hupiaiagent.app;
+
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class MapReduceSummarizerTest {
+
+    @Test
+    void splitKeepsTimeOrderAndChunkBudget() {
+        StringBuilder log = new StringBuilder();
+        for (int hour = 8; hour < 20; hour++) {
+            log.append(String.format("2025/10/19 %02d:00 第二输油处白豹作业区铁西线0-%d检修作业，", hour, hour)).append('\n')
+                    .append("预计两小时完成。").append('\n');
+        }
+        List<DispatchLogEvent> events = DispatchLogParser.parse(log.toString());
+
+        List<MapReduceSummarizer.Chunk> chunks = MapReduceSummarizer.split(events, 120);
+
+        Assertions.assertTrue(chunks.size() > 1);
+        int count = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            MapReduceSummarizer.Chunk chunk = chunks.get(i);
+            Assertions.assertEquals(i, chunk.index());
+            Assertions.assertTrue(chunk.chars() <= 120 || chunk.events().size() == 1);
+            count += chunk.events().size();
+        }
+        Assertions.assertEquals(events.size(), count);
+        Assertions.assertTrue(chunks.get(0).label().startsWith("08:00"));
+        Assertions.assertTrue(chunks.get(chunks.size() - 1).label().endsWith("19:00"));
+        Assertions.assertTrue(chunks.get(0).text().contains("预计两小时完成。"));
+    }
+
+    @Test
+    void oversizedEventGetsItsOwnChunk() {
+        String longText = "铁西线".repeat(100);
+        List<DispatchLogEvent> events = DispatchLogParser.parse(
+                "2025/10/19 08:00 短条目\n2025/10/19 09:00 " + longText + "\n2025/10/19 10:00 短条目\n");
+
+        List<MapReduceSummarizer.Chunk> chunks = MapReduceSummarizer.split(events, 100);
+
+        Assertions.assertEquals(3, chunks.size());
+        Assertions.assertEquals("09:00", chunks.get(1).label());
+    }
+}
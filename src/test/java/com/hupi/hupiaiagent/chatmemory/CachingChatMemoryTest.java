@@ -0,0 +1,121 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class CachingChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writeBehindAndFlushOnClose() {
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(tempDir.toString());
+        CachingChatMemory chatMemory = new CachingChatMemory(fileMemory, 1_000_000, 16, 60_000);
+        String chatId = "cache-test";
+
+        // 首次 get 未命中并加载进缓存，之后的 add 只写内存
+        Assertions.assertTrue(chatMemory.get(chatId).isEmpty());
+        chatMemory.add(chatId, List.of(new UserMessage("问题"), new AssistantMessage("回答")));
+        Assertions.assertEquals(2, chatMemory.get(chatId).size());
+        Assertions.assertTrue(fileMemory.get(chatId).isEmpty());
+
+        CachingChatMemory.CacheStats stats = chatMemory.getStats();
+        Assertions.assertEquals(1, stats.hits());
+        Assertions.assertEquals(1, stats.misses());
+        Assertions.assertEquals(1, stats.dirtyConversations());
+
+        chatMemory.close();
+        Assertions.assertEquals(2, fileMemory.get(chatId).size());
+        Assertions.assertEquals(2, chatMemory.getStats().flushedMessages());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedCleanEntries() {
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(tempDir.toString());
+        CachingChatMemory chatMemory = new CachingChatMemory(fileMemory, 1_000_000, 2, 60_000);
+        chatMemory.get("a");
+        chatMemory.get("b");
+        chatMemory.get("c");
+        CachingChatMemory.CacheStats stats = chatMemory.getStats();
+        Assertions.assertEquals(2, stats.cachedConversations());
+        Assertions.assertEquals(1, stats.evictions());
+        chatMemory.close();
+    }
+
+    @Test
+    void flushFailureOfOneConversationDoesNotBlockOthers() {
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(tempDir.toString());
+        AtomicInteger failures = new AtomicInteger(1);
+        ChatMemory flaky = new ChatMemory() {
+            @Override
+            public void add(String conversationId, List<Message> messages) {
+                if (conversationId.equals("bad") && failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("disk full");
+                }
+                fileMemory.add(conversationId, messages);
+            }
+
+            @Override
+            public List<Message> get(String conversationId) {
+                return fileMemory.get(conversationId);
+            }
+
+            @Override
+            public void clear(String conversationId) {
+                fileMemory.clear(conversationId);
+            }
+        };
+        CachingChatMemory chatMemory = new CachingChatMemory(flaky, 1_000_000, 16, 60_000);
+        chatMemory.get("bad");
+        chatMemory.get("good");
+        chatMemory.add("bad", List.of(new UserMessage("问题1"), new AssistantMessage("回答1")));
+        chatMemory.add("good", List.of(new UserMessage("问题"), new AssistantMessage("回答")));
+
+        // 关闭时 bad 写入失败，不影响 good；失败的消息仍在待写入队列中
+        chatMemory.close();
+        Assertions.assertEquals(2, fileMemory.get("good").size());
+        Assertions.assertTrue(fileMemory.get("bad").isEmpty());
+        Assertions.assertEquals(1, chatMemory.getStats().flushErrors());
+
+        // 关闭后的写入先补写之前未写出的消息，顺序不变
+        chatMemory.add("bad", List.of(new UserMessage("问题2")));
+        Assertions.assertEquals(List.of("问题1", "回答1", "问题2"),
+                fileMemory.get("bad").stream().map(Message::getText).toList());
+        Assertions.assertEquals(3, chatMemory.get("bad").size());
+    }
+
+    @Test
+    void failedWriteToFileStoreStaysPending() {
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(tempDir.toString(), 1);
+        CachingChatMemory chatMemory = new CachingChatMemory(fileMemory, 1_000_000, 16, 60_000);
+        String chatId = "disk-full";
+        fileMemory.add(chatId, List.of(new UserMessage("问题1"), new AssistantMessage("回答1")));
+        chatMemory.get(chatId);
+        chatMemory.add(chatId, List.of(new UserMessage("问题2"), new AssistantMessage("回答2")));
+
+        // 追加段路径被目录占用，模拟写入失败：消息留在待写入队列中
+        File segment = new File(tempDir.toFile(), chatId + ".kryo.seg");
+        Assertions.assertTrue(segment.mkdir());
+        chatMemory.flush();
+        Assertions.assertEquals(1, chatMemory.getStats().flushErrors());
+        Assertions.assertEquals(1, chatMemory.getStats().dirtyConversations());
+        Assertions.assertEquals(0, chatMemory.getStats().flushedMessages());
+
+        Assertions.assertTrue(segment.delete());
+        chatMemory.flush();
+        Assertions.assertEquals(4, fileMemory.get(chatId).size());
+        Assertions.assertEquals(2, chatMemory.getStats().flushedMessages());
+        chatMemory.close();
+    }
+}
@@ -0,0 +1,122 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class ChatHistoryIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void searchFindsConversationsWithSnippets() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        ChatHistoryIndex index = new ChatHistoryIndex(chatMemory, 2000);
+        chatMemory.addListener(index);
+        chatMemory.add("chat-1", List.of(new UserMessage("请总结10月19日的调度日志"),
+                new AssistantMessage("<think>先找中断事件</think>白豹作业区铁西线0-13光缆中断，已通知抢修。")));
+        chatMemory.add("chat-2", List.of(new UserMessage("铁西线今天有检修吗"), new AssistantMessage("没有检修计划。")));
+        chatMemory.add("chat-1", List.of(new UserMessage("光缆中断修好了吗"), new AssistantMessage("铁西线光缆中断已恢复。")));
+
+        ChatHistoryIndex.SearchResult result = index.search("铁西线 光缆中断", 10);
+        Assertions.assertEquals(1, result.totalChats());
+        ChatHistoryIndex.SearchHit hit = result.hits().get(0);
+        Assertions.assertEquals("chat-1", hit.chatId());
+        // 第二轮的提问只包含"光缆中断"，同样计为命中，片段取自同时包含两个词的最近一条
+        Assertions.assertEquals(3, hit.matchedMessages());
+        Assertions.assertEquals(3, hit.messageIndex());
+        Assertions.assertTrue(hit.snippet().contains("铁西线光缆中断"));
+        Assertions.assertEquals("请总结10月19日的调度日志", hit.title());
+
+        Assertions.assertEquals(2, index.search("铁西线", 10).totalChats());
+        // 思考内容不进索引
+        Assertions.assertEquals(0, index.search("中断事件", 10).totalChats());
+
+        chatMemory.clear("chat-1");
+        Assertions.assertEquals(List.of("chat-2"),
+                index.search("铁西线", 10).hits().stream().map(ChatHistoryIndex.SearchHit::chatId).toList());
+    }
+
+    @Test
+    void singleCharacterQueriesMatchInsideLongerText() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        ChatHistoryIndex index = new ChatHistoryIndex(chatMemory, 2000);
+        chatMemory.addListener(index);
+        chatMemory.add("chat-1", List.of(new UserMessage("吴起输油站今天停输了吗"), new AssistantMessage("站内设备正常。")));
+        chatMemory.add("chat-2", List.of(new UserMessage("铁西线有检修吗")));
+
+        ChatHistoryIndex.SearchResult result = index.search("站", 10);
+        Assertions.assertEquals(1, result.totalChats());
+        Assertions.assertEquals("chat-1", result.hits().get(0).chatId());
+        Assertions.assertEquals(2, result.hits().get(0).matchedMessages());
+        Assertions.assertEquals("chat-2", index.search("修", 10).hits().get(0).chatId());
+        Assertions.assertEquals(0, index.search("站 检修", 10).totalChats());
+    }
+
+    @Test
+    void buildIndexesExistingConversationsAndFillsGaps() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        chatMemory.add("old-1", List.of(new UserMessage("清管作业安排"), new AssistantMessage("明天上午清管")));
+        chatMemory.add("old-2", List.of(new UserMessage("停输计划"), new AssistantMessage("暂无")));
+
+        FileBasedChatMemory reopened = new FileBasedChatMemory(tempDir.toString());
+        ChatHistoryIndex index = new ChatHistoryIndex(reopened, 2000);
+        reopened.addListener(index);
+        // 补建前写入：缺失的历史消息会被补上
+        reopened.add("old-1", List.of(new UserMessage("清管结果"), new AssistantMessage("清管完成")));
+        Assertions.assertEquals(4, index.search("清管", 10).hits().get(0).matchedMessages());
+
+        index.build();
+        Assertions.assertTrue(index.search("清管", 10).complete());
+        Assertions.assertEquals(4, index.search("清管", 10).hits().get(0).matchedMessages());
+        Assertions.assertEquals("old-2", index.search("停输", 10).hits().get(0).chatId());
+    }
+
+    @Test
+    void termsMayBeSpreadAcrossMessagesOfAConversation() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        ChatHistoryIndex index = new ChatHistoryIndex(chatMemory, 2000);
+        chatMemory.addListener(index);
+        chatMemory.add("spread", List.of(new UserMessage("苏6-4干线今天清管"), new AssistantMessage("王窑站外输泵检修完毕")));
+        chatMemory.add("together", List.of(new UserMessage("清管和检修都完成了吗"), new AssistantMessage("都已完成")));
+        chatMemory.add("partial", List.of(new UserMessage("清管器运行时间"), new AssistantMessage("约6小时")));
+
+        ChatHistoryIndex.SearchResult result = index.search("清管 检修", 10);
+        Assertions.assertEquals(List.of("together", "spread"),
+                result.hits().stream().map(ChatHistoryIndex.SearchHit::chatId).toList());
+        Assertions.assertEquals(2, result.hits().get(1).matchedMessages());
+    }
+
+    @Test
+    void clearedConversationsAreCompactedAway() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        ChatHistoryIndex index = new ChatHistoryIndex(chatMemory, 2000);
+        chatMemory.addListener(index);
+        chatMemory.add("keep", List.of(new UserMessage("铁西线光缆中断"), new AssistantMessage("已抢修")));
+        for (int round = 0; round < 3; round++) {
+            List<Message> messages = new ArrayList<>();
+            for (int i = 0; i < 600; i++) {
+                messages.add(new UserMessage("第" + round + "轮临时提问" + i + "清管"));
+            }
+            chatMemory.add("temp", messages);
+            chatMemory.clear("temp");
+        }
+        // 第二次清空后删除数超过阈值，压缩为只剩存活的文档；第三轮的 600 条只做删除标记
+        Assertions.assertEquals(2 + 600, index.documentCount());
+        Assertions.assertEquals(0, index.search("清管", 10).totalChats());
+
+        chatMemory.add("keep", List.of(new UserMessage("光缆中断修好了吗"), new AssistantMessage("铁西线光缆中断已恢复")));
+        ChatHistoryIndex.SearchHit hit = index.search("铁西线 光缆中断", 10).hits().get(0);
+        Assertions.assertEquals("keep", hit.chatId());
+        Assertions.assertEquals(3, hit.messageIndex());
+        Assertions.assertTrue(hit.snippet().contains("已恢复"));
+    }
+}
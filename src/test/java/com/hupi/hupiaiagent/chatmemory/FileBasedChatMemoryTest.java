@@ -0,0 +1,386 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import cn.hutool.core.io.FileUtil;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class FileBasedChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void addAppendsSegmentsAndCompacts() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 3);
+        String chatId = "append-test";
+        for (int i = 0; i < 5; i++) {
+            chatMemory.add(chatId, List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+        }
+        // 首轮写快照，之后 3 轮追加后压缩一次，剩余 1 轮在追加段中
+        Assertions.assertTrue(new File(tempDir.toFile(), chatId + ".kryo").exists());
+        Assertions.assertTrue(new File(tempDir.toFile(), chatId + ".kryo.seg").exists());
+
+        List<Message> messages = chatMemory.get(chatId);
+        Assertions.assertEquals(10, messages.size());
+        Assertions.assertEquals("问题0", messages.get(0).getText());
+        Assertions.assertEquals("回答4", messages.get(9).getText());
+
+        chatMemory.compact(chatId);
+        Assertions.assertFalse(new File(tempDir.toFile(), chatId + ".kryo.seg").exists());
+        Assertions.assertEquals(10, chatMemory.get(chatId).size());
+    }
+
+    @Test
+    void clearRemovesSnapshotAndSegment() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        String chatId = "clear-test";
+        chatMemory.add(chatId, List.of(new UserMessage("问题")));
+        chatMemory.add(chatId, List.of(new AssistantMessage("回答")));
+        chatMemory.clear(chatId);
+        Assertions.assertTrue(chatMemory.get(chatId).isEmpty());
+    }
+
+    @Test
+    void largeMessagesAreStoredOnceAsBlobs() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 2, 1024);
+        String log = "2025/10/19 18:24 第二输油处白豹作业区铁西线0-13光缆中断\n".repeat(100);
+        for (int i = 0; i < 3; i++) {
+            String chatId = "blob-" + i;
+            chatMemory.add(chatId, List.of(new UserMessage(log), new AssistantMessage("总结" + i)));
+            chatMemory.add(chatId, List.of(new UserMessage("追问"), new AssistantMessage("回答")));
+            chatMemory.add(chatId, List.of(new UserMessage("追问2"), new AssistantMessage("回答2")));
+        }
+
+        List<File> blobs = FileUtil.loopFiles(new File(tempDir.toFile(), "blobs"));
+        Assertions.assertEquals(1, blobs.size());
+        Assertions.assertTrue(new File(tempDir.toFile(), "blob-0.kryo").length() < log.length());
+
+        List<Message> messages = new FileBasedChatMemory(tempDir.toString(), 2, 1024).get("blob-2");
+        Assertions.assertEquals(6, messages.size());
+        Assertions.assertEquals(log, messages.get(0).getText());
+        Assertions.assertEquals("总结2", messages.get(1).getText());
+    }
+
+    @Test
+    void failedWriteIsReportedAndNotCounted() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 1);
+        List<Integer> notified = new ArrayList<>();
+        chatMemory.addListener(new ChatMemoryListener() {
+            @Override
+            public void onAdd(String conversationId, int baseIndex, List<Message> messages) {
+                notified.add(baseIndex);
+            }
+
+            @Override
+            public void onClear(String conversationId) {
+            }
+        });
+        String chatId = "failing-write";
+        chatMemory.add(chatId, List.of(new UserMessage("问题1"), new AssistantMessage("回答1")));
+        chatMemory.add(chatId, List.of(new UserMessage("问题2"), new AssistantMessage("回答2")));
+
+        // 追加段路径被目录占用，模拟写入失败
+        File segment = new File(tempDir.toFile(), chatId + ".kryo.seg");
+        Assertions.assertFalse(segment.exists());
+        Assertions.assertTrue(segment.mkdir());
+        Assertions.assertThrows(UncheckedIOException.class,
+                () -> chatMemory.add(chatId, List.of(new UserMessage("问题3"))));
+        Assertions.assertEquals(4, chatMemory.getConversationMeta(chatId).messageCount());
+        Assertions.assertEquals(List.of(0, 2), notified);
+
+        Assertions.assertTrue(segment.delete());
+        chatMemory.add(chatId, List.of(new UserMessage("问题3")));
+        Assertions.assertEquals(List.of(0, 2, 4), notified);
+        Assertions.assertEquals(5, chatMemory.get(chatId).size());
+        Assertions.assertEquals(5, chatMemory.getConversationMeta(chatId).messageCount());
+    }
+
+    @Test
+    void copiedBlobMessagesAreStoredWithTheirOwnText() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 2, 1024);
+        String log = "2025/10/19 18:24 第二输油处白豹作业区铁西线0-13光缆中断\n".repeat(100);
+        chatMemory.add("origin", List.of(new UserMessage(log), new AssistantMessage("总结")));
+        Message stored = chatMemory.get("origin").get(0);
+        Assertions.assertEquals(Map.of("messageType", MessageType.USER), stored.getMetadata());
+
+        // 保留元数据、改写正文的副本按自己的正文保存
+        String shortened = log.substring(0, 2000);
+        chatMemory.add("copy", List.of(UserMessage.builder().text(shortened).metadata(stored.getMetadata()).build()));
+        Assertions.assertEquals(shortened, new FileBasedChatMemory(tempDir.toString(), 2, 1024).get("copy").get(0).getText());
+        Assertions.assertEquals(2, FileUtil.loopFiles(new File(tempDir.toFile(), "blobs")).size());
+    }
+
+    @Test
+    void missingBlobIsShownAsPlaceholder() {
+        String log = "2025/10/19 18:24 第二输油处白豹作业区铁西线0-13光缆中断\n".repeat(100);
+        new FileBasedChatMemory(tempDir.toString(), 2, 1024).add("c1", List.of(new UserMessage(log), new AssistantMessage("总结")));
+        for (File blob : FileUtil.loopFiles(new File(tempDir.toFile(), "blobs"))) {
+            Assertions.assertTrue(blob.delete());
+        }
+
+        List<Message> messages = new FileBasedChatMemory(tempDir.toString(), 2, 1024).get("c1");
+        Assertions.assertEquals(2, messages.size());
+        Assertions.assertTrue(messages.get(0).getText().startsWith("[原文缺失："), messages.get(0).getText());
+        Assertions.assertEquals("总结", messages.get(1).getText());
+    }
+
+    @Test
+    void sweepDeletesOnlyUnreferencedBlobs() throws Exception {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 2, 1024);
+        String shared = "2025/10/19 18:24 第二输油处白豹作业区铁西线0-13光缆中断\n".repeat(100);
+        String cleared = "2025/10/20 08:00 第三采油厂王窑站外输泵检修\n".repeat(100);
+        chatMemory.add("keep", List.of(new UserMessage(shared), new AssistantMessage("总结")));
+        chatMemory.add("drop", List.of(new UserMessage(shared), new AssistantMessage("总结")));
+        chatMemory.add("drop", List.of(new UserMessage(cleared), new AssistantMessage("总结")));
+        chatMemory.clear("drop");
+        File blobDir = new File(tempDir.toFile(), "blobs");
+        Assertions.assertEquals(2, FileUtil.loopFiles(blobDir).size());
+
+        // 宽限期内的不删除
+        Assertions.assertEquals(0, chatMemory.sweepBlobs(TimeUnit.HOURS.toMillis(1)));
+        Thread.sleep(20);
+        Assertions.assertEquals(1, chatMemory.sweepBlobs(0));
+        Assertions.assertEquals(1, FileUtil.loopFiles(blobDir).size());
+        Assertions.assertEquals(shared, new FileBasedChatMemory(tempDir.toString(), 2, 1024).get("keep").get(0).getText());
+    }
+
+    @Test
+    void roundTripsToolCallsMetadataAndToolResponses() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        String chatId = "codec-test";
+        AssistantMessage toolCall = new AssistantMessage("", Map.of("finishReason", "TOOL_CALLS", "index", 1),
+                List.of(new AssistantMessage.ToolCall("call-1", "function", "dispatch_log", "{\"date\":\"2025-10-19\"}")));
+        ToolResponseMessage toolResponse = new ToolResponseMessage(
+                List.of(new ToolResponseMessage.ToolResponse("call-1", "dispatch_log", "日志内容")));
+        chatMemory.add(chatId, List.of(new UserMessage("问题"), toolCall, toolResponse));
+        chatMemory.add(chatId, List.of(new AssistantMessage("回答", Map.of("usage", Map.of("tokens", 12L), "tags", List.of("a", true)))));
+
+        List<Message> messages = new FileBasedChatMemory(tempDir.toString()).get(chatId);
+        Assertions.assertEquals(4, messages.size());
+        AssistantMessage restoredCall = (AssistantMessage) messages.get(1);
+        Assertions.assertEquals("dispatch_log", restoredCall.getToolCalls().get(0).name());
+        Assertions.assertEquals(1, restoredCall.getMetadata().get("index"));
+        Assertions.assertEquals(MessageType.ASSISTANT, restoredCall.getMetadata().get("messageType"));
+        Assertions.assertEquals("日志内容", ((ToolResponseMessage) messages.get(2)).getResponses().get(0).responseData());
+        Assertions.assertEquals(Map.of("tokens", 12L), messages.get(3).getMetadata().get("usage"));
+        Assertions.assertEquals(List.of("a", true), messages.get(3).getMetadata().get("tags"));
+    }
+
+    @Test
+    void legacyFilesAreReadAndConverted() throws Exception {
+        String chatId = "legacy-test";
+        String text = "2025/10/19 08:00 白豹作业区计划检修，铁西线停输两小时\n".repeat(40);
+        ArrayList<Message> legacy = new ArrayList<>(List.of(new UserMessage(text), new AssistantMessage("总结")));
+        Kryo kryo = new Kryo();
+        kryo.setRegistrationRequired(false);
+        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+        File snapshot = new File(tempDir.toFile(), chatId + ".kryo");
+        try (Output output = new Output(new FileOutputStream(snapshot))) {
+            kryo.writeObject(output, legacy);
+        }
+        long legacySize = snapshot.length();
+
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        Assertions.assertEquals(text, chatMemory.get(chatId).get(0).getText());
+        chatMemory.add(chatId, List.of(new UserMessage("追问"), new AssistantMessage("回答")));
+        Assertions.assertTrue(MessageCodec.isCurrentFormat(snapshot));
+        Assertions.assertTrue(MessageCodec.isCurrentFormat(new File(tempDir.toFile(), chatId + ".kryo.seg")));
+        chatMemory.compact(chatId);
+        Assertions.assertTrue(snapshot.length() < legacySize);
+
+        List<Message> messages = new FileBasedChatMemory(tempDir.toString()).get(chatId);
+        Assertions.assertEquals(4, messages.size());
+        Assertions.assertEquals("回答", messages.get(3).getText());
+    }
+
+    @Test
+    void truncatedSegmentTailIsDropped() throws Exception {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        String chatId = "torn-test";
+        chatMemory.add(chatId, List.of(new UserMessage("问题")));
+        chatMemory.add(chatId, List.of(new AssistantMessage("回答")));
+        File segment = new File(tempDir.toFile(), chatId + ".kryo.seg");
+        try (FileOutputStream output = new FileOutputStream(segment, true)) {
+            // 模拟写到一半的记录
+            output.write(new byte[]{0, 40, 40, 1, 2});
+        }
+
+        FileBasedChatMemory reopened = new FileBasedChatMemory(tempDir.toString());
+        Assertions.assertEquals(2, reopened.get(chatId).size());
+        reopened.add(chatId, List.of(new UserMessage("追问")));
+        Assertions.assertEquals("追问", new FileBasedChatMemory(tempDir.toString()).get(chatId).get(2).getText());
+    }
+
+    @Test
+    void interruptedCompactionIsNotReplayedTwice() throws Exception {
+        String chatId = "crash-test";
+        File dir = tempDir.toFile();
+        File snapshot = new File(dir, chatId + ".kryo");
+        File segment = new File(dir, chatId + ".kryo.seg");
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 100);
+        for (int i = 0; i < 3; i++) {
+            chatMemory.add(chatId, List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+        }
+        byte[] oldSnapshot = FileUtil.readBytes(snapshot);
+        byte[] oldSegment = FileUtil.readBytes(segment);
+        chatMemory.compact(chatId);
+        byte[] newSnapshot = FileUtil.readBytes(snapshot);
+
+        // 快照已替换、改名后的追加段尚未删除
+        FileUtil.writeBytes(oldSegment, new File(dir, chatId + ".kryo.seg.compacting"));
+        Assertions.assertEquals(6, new FileBasedChatMemory(tempDir.toString()).get(chatId).size());
+        Assertions.assertFalse(new File(dir, chatId + ".kryo.seg.compacting").exists());
+
+        // 追加段已改名、临时快照尚未替换
+        FileUtil.writeBytes(oldSnapshot, snapshot);
+        FileUtil.writeBytes(oldSegment, new File(dir, chatId + ".kryo.seg.compacting"));
+        FileUtil.writeBytes(newSnapshot, new File(dir, chatId + ".kryo.tmp"));
+        FileBasedChatMemory reopened = new FileBasedChatMemory(tempDir.toString());
+        reopened.add(chatId, List.of(new UserMessage("追问")));
+        List<Message> messages = new FileBasedChatMemory(tempDir.toString()).get(chatId);
+        Assertions.assertEquals(7, messages.size());
+        Assertions.assertEquals("回答2", messages.get(5).getText());
+        Assertions.assertFalse(new File(dir, chatId + ".kryo.tmp").exists());
+    }
+
+    @Test
+    void getPageReadsOnlyRequestedRange() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 4, 1024);
+        String chatId = "page-test";
+        String log = "2025/10/19 18:24 铁西线0-13光缆中断\n".repeat(100);
+        chatMemory.add(chatId, List.of(new UserMessage(log), new AssistantMessage("总结")));
+        for (int i = 0; i < 10; i++) {
+            chatMemory.add(chatId, List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+        }
+
+        List<Message> first = chatMemory.getPage(chatId, 0, 3);
+        Assertions.assertEquals(List.of(log, "总结", "问题0"), first.stream().map(Message::getText).toList());
+        // 跨越快照和追加段
+        List<Message> middle = chatMemory.getPage(chatId, 9, 4);
+        Assertions.assertEquals(List.of("回答3", "问题4", "回答4", "问题5"), middle.stream().map(Message::getText).toList());
+        Assertions.assertEquals(1, chatMemory.getPage(chatId, 21, 10).size());
+        Assertions.assertTrue(chatMemory.getPage(chatId, 30, 10).isEmpty());
+        Assertions.assertTrue(chatMemory.getPage("missing", 0, 10).isEmpty());
+    }
+
+    @Test
+    void manifestTracksTitleCountAndOrder() throws Exception {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        chatMemory.add("older", List.of(new UserMessage("请基于[2025-10-19]的调度日志生成交接班总结"), new AssistantMessage("总结")));
+        Thread.sleep(5);
+        chatMemory.add("newer", List.of(new UserMessage("第二个会话")));
+        chatMemory.add("newer", List.of(new AssistantMessage("回答")));
+        chatMemory.add("cleared", List.of(new UserMessage("将被删除")));
+        chatMemory.clear("cleared");
+
+        List<ConversationManifest.ConversationMeta> metas = chatMemory.listConversations();
+        Assertions.assertEquals(2, metas.size());
+        Assertions.assertEquals("newer", metas.get(0).id());
+        Assertions.assertEquals(2, metas.get(0).messageCount());
+        Assertions.assertEquals("第二个会话", metas.get(0).title());
+
+        // 重新打开目录时从 .meta 文件加载，不读取会话内容
+        List<ConversationManifest.ConversationMeta> reloaded = new FileBasedChatMemory(tempDir.toString()).listConversations();
+        Assertions.assertEquals(metas, reloaded);
+    }
+
+    @Test
+    void concurrentAddsOnSameConversationAreLinearizable() throws Exception {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 8);
+        String chatId = "same-conversation";
+        int threads = 8;
+        int rounds = 50;
+        runConcurrently(threads, t -> {
+            for (int i = 0; i < rounds; i++) {
+                chatMemory.add(chatId, List.of(new UserMessage(t + "-" + i)));
+            }
+        });
+
+        List<Message> messages = chatMemory.get(chatId);
+        Assertions.assertEquals(threads * rounds, messages.size());
+        // 每个线程自己的消息必须保持写入顺序
+        int[] next = new int[threads];
+        for (Message message : messages) {
+            String[] parts = message.getText().split("-");
+            int t = Integer.parseInt(parts[0]);
+            Assertions.assertEquals(next[t]++, Integer.parseInt(parts[1]));
+        }
+    }
+
+    @Test
+    void concurrentStressAcrossConversations() throws Exception {
+        int rounds = 200;
+        for (int threads : new int[]{2, 8}) {
+            Path dir = tempDir.resolve("stress-" + threads);
+            FileBasedChatMemory chatMemory = new FileBasedChatMemory(dir.toString());
+            runConcurrently(threads, t -> {
+                String chatId = "stress-" + t;
+                for (int i = 0; i < rounds; i++) {
+                    chatMemory.add(chatId, List.of(new UserMessage(t + "-问题" + i), new AssistantMessage(t + "-回答" + i)));
+                    if (i % 20 == 0) {
+                        chatMemory.get(chatId);
+                    }
+                }
+            });
+            // 每个会话恰好是自己的全部消息且顺序不变，内存中和重新打开后一致
+            FileBasedChatMemory reopened = new FileBasedChatMemory(dir.toString());
+            for (int t = 0; t < threads; t++) {
+                List<String> expected = new ArrayList<>();
+                for (int i = 0; i < rounds; i++) {
+                    expected.add(t + "-问题" + i);
+                    expected.add(t + "-回答" + i);
+                }
+                String chatId = "stress-" + t;
+                Assertions.assertEquals(expected, chatMemory.get(chatId).stream().map(Message::getText).toList());
+                Assertions.assertEquals(expected, reopened.get(chatId).stream().map(Message::getText).toList());
+            }
+            Assertions.assertEquals(threads, reopened.listConversations().size());
+        }
+    }
+
+    private static void runConcurrently(int threads, ThrowingConsumer task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            futures.add(executor.submit(() -> {
+                startSignal.await();
+                task.accept(id);
+                return null;
+            }));
+        }
+        startSignal.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    @FunctionalInterface
+    private interface ThrowingConsumer {
+        void accept(int threadIndex) throws Exception;
+    }
+}
@@ -0,0 +1,89 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import com.hupi.hupiaiagent.util.TokenEstimator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SummarizingWindowChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keepsLastTurnsAndSummarizesOlderOnes() throws Exception {
+        AtomicInteger summaryCalls = new AtomicInteger();
+        ChatModel summaryModel = prompt -> {
+            summaryCalls.incrementAndGet();
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("<think>思考</think>早先讨论了铁西线光缆中断"))));
+        };
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(tempDir.toString());
+        SummarizingWindowChatMemory chatMemory = new SummarizingWindowChatMemory(
+                fileMemory, summaryModel, tempDir.toString(), 2, 100_000, 200, 2000);
+        String chatId = "window-test";
+        for (int i = 0; i < 4; i++) {
+            chatMemory.add(chatId, List.of(new UserMessage("问题" + i)));
+            chatMemory.add(chatId, List.of(new AssistantMessage("回答" + i)));
+        }
+
+        // 等待后台摘要完成
+        for (int i = 0; i < 50 && summaryCalls.get() == 0; i++) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(100);
+
+        List<Message> window = chatMemory.get(chatId);
+        Assertions.assertEquals(MessageType.SYSTEM, window.get(0).getMessageType());
+        Assertions.assertTrue(window.get(0).getText().endsWith("早先讨论了铁西线光缆中断"));
+        Assertions.assertEquals(5, window.size());
+        Assertions.assertEquals("问题2", window.get(1).getText());
+        // 完整历史仍然保存在底层存储中
+        Assertions.assertEquals(8, fileMemory.get(chatId).size());
+        chatMemory.close();
+    }
+
+    @Test
+    void dropsTurnsBeyondTokenBudget() {
+        ChatModel summaryModel = prompt -> new ChatResponse(List.of(new Generation(new AssistantMessage("摘要"))));
+        SummarizingWindowChatMemory chatMemory = new SummarizingWindowChatMemory(
+                new FileBasedChatMemory(tempDir.toString()), summaryModel, tempDir.toString(), 10, 300, 100, 2000);
+        String chatId = "budget-test";
+        chatMemory.add(chatId, List.of(new UserMessage("日志".repeat(500)), new AssistantMessage("总结")));
+        chatMemory.add(chatId, List.of(new UserMessage("追问"), new AssistantMessage("回答")));
+
+        List<Message> window = chatMemory.get(chatId);
+        Assertions.assertTrue(window.stream().noneMatch(m -> m.getText().startsWith("日志")));
+        Assertions.assertEquals("追问", window.get(window.size() - 2).getText());
+        chatMemory.close();
+    }
+
+    @Test
+    void keepsNewestTurnEvenWhenItAloneExceedsBudget() {
+        ChatModel summaryModel = prompt -> new ChatResponse(List.of(new Generation(new AssistantMessage("摘要"))));
+        SummarizingWindowChatMemory chatMemory = new SummarizingWindowChatMemory(
+                new FileBasedChatMemory(tempDir.toString()), summaryModel, tempDir.toString(), 10, 300, 100, 2000);
+        String chatId = "oversized-test";
+        chatMemory.add(chatId, List.of(new UserMessage("追问"), new AssistantMessage("回答")));
+        chatMemory.add(chatId, List.of(new UserMessage("请总结以下日志：" + "日志".repeat(500))));
+
+        List<Message> window = chatMemory.get(chatId);
+        Message newest = window.get(window.size() - 1);
+        Assertions.assertEquals(MessageType.USER, newest.getMessageType());
+        Assertions.assertTrue(newest.getText().startsWith("请总结以下日志：日志"));
+        Assertions.assertTrue(newest.getText().endsWith("…（已截断）"));
+        Assertions.assertTrue(TokenEstimator.estimate(window.stream()
+                .filter(m -> m.getMessageType() != MessageType.SYSTEM).toList()) <= 200);
+        chatMemory.close();
+    }
+}
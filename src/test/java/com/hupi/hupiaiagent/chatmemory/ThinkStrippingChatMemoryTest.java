@@ -0,0 +1,51 @@
+package com.hupi.hupiaiagent.chatmemory;
+
+import cn.hutool.core.io.FileUtil;
+import com.hupi.hupiaiagent.util.ThinkContentUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+class ThinkStrippingChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void stripsReasoningBeforePersisting() {
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(tempDir.toString());
+        ThinkStrippingChatMemory chatMemory = new ThinkStrippingChatMemory(fileMemory, tempDir.toString(), true);
+        String chatId = "think-test";
+        chatMemory.add(chatId, List.of(new UserMessage("<think>用户原文不处理</think>问题")));
+        chatMemory.add(chatId, List.of(new AssistantMessage("<think>\n先看日志里的检修记录……\n</think>\n\n一、交接班总结")));
+
+        List<Message> messages = fileMemory.get(chatId);
+        Assertions.assertEquals("<think>用户原文不处理</think>问题", messages.get(0).getText());
+        Assertions.assertEquals("一、交接班总结", messages.get(1).getText());
+
+        ThinkStrippingChatMemory.SavingsStats stats = chatMemory.getSavings(chatId);
+        Assertions.assertEquals(1, stats.strippedMessages());
+        Assertions.assertTrue(stats.strippedTokens() > 0);
+        File reasoning = new File(tempDir.toFile(), "reasoning/" + chatId + ".txt");
+        Assertions.assertTrue(FileUtil.readUtf8String(reasoning).contains("先看日志里的检修记录"));
+
+        chatMemory.clear(chatId);
+        Assertions.assertFalse(reasoning.exists());
+        Assertions.assertNull(chatMemory.getSavings(chatId));
+    }
+
+    @Test
+    void handlesMissingOrUnclosedTags() {
+        Assertions.assertEquals("回答", ThinkContentUtil.stripThink("思考过程</think>\n回答"));
+        Assertions.assertEquals("回答", ThinkContentUtil.stripThink("回答<think>被截断的思考"));
+        Assertions.assertEquals("无思考", ThinkContentUtil.stripThink("无思考"));
+        Assertions.assertEquals("思考过程", ThinkContentUtil.extractThink("思考过程</think>\n回答"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.SecureUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class DispatchLogCatalogTest {
+
+    @Test
+    void tracksAppendsRewritesAndDeletes(@TempDir Path tempDir) {
+        File primary = tempDir.resolve("configured").toFile();
+        File fallback = tempDir.resolve("default").toFile();
+        FileUtil.mkdir(primary);
+        File file = new File(fallback, "2025-10-19.txt");
+        FileUtil.writeString("2025/10/19 08:00 铁西线0-13光缆中断。\n", file, StandardCharsets.UTF_8);
+
+        DispatchLogCatalog catalog = new DispatchLogCatalog(List.of(primary, fallback));
+        List<DispatchLogListener.LogChangeEvent> events = new ArrayList<>();
+        catalog.addListener(events::add);
+
+        DispatchLogCatalog.Entry entry = catalog.get("2025-10-19");
+        Assertions.assertNotNull(entry);
+        Assertions.assertEquals(SecureUtil.sha256(file), entry.sha256());
+        Assertions.assertEquals(file.getAbsolutePath(), catalog.resolve("2025-10-19").getAbsolutePath());
+        // 不存在的日期返回主目录下的占位文件
+        Assertions.assertEquals(new File(primary, "2025-10-20.txt"), catalog.resolve("2025-10-20"));
+
+        long before = file.length();
+        FileUtil.appendString("2025/10/19 09:00 铁西线0-13光缆恢复。\n", file, StandardCharsets.UTF_8);
+        catalog.refresh("2025-10-19");
+        Assertions.assertEquals(1, events.size());
+        Assertions.assertEquals(DispatchLogListener.ChangeType.APPENDED, events.get(0).type());
+        Assertions.assertEquals(before, events.get(0).previousSize());
+        Assertions.assertEquals(SecureUtil.sha256(file), events.get(0).sha256());
+
+        FileUtil.writeString("2025/10/19 10:00 改写后的内容。\n", file, StandardCharsets.UTF_8);
+        catalog.refresh("2025-10-19");
+        Assertions.assertEquals(DispatchLogListener.ChangeType.MODIFIED, events.get(1).type());
+        Assertions.assertEquals(SecureUtil.sha256(file), catalog.get("2025-10-19").sha256());
+
+        // 配置目录中出现同一天的文件后以它为准
+        File preferred = new File(primary, "2025-10-19.txt");
+        FileUtil.writeString("2025/10/19 11:00 配置目录中的日志。\n", preferred, StandardCharsets.UTF_8);
+        catalog.refresh("2025-10-19");
+        Assertions.assertEquals(preferred.getAbsolutePath(), catalog.get("2025-10-19").path());
+
+        FileUtil.del(preferred);
+        FileUtil.del(file);
+        catalog.refresh("2025-10-19");
+        Assertions.assertEquals(DispatchLogListener.ChangeType.DELETED, events.get(events.size() - 1).type());
+        Assertions.assertNull(catalog.get("2025-10-19"));
+        Assertions.assertTrue(catalog.list().isEmpty());
+    }
+
+    @Test
+    void lookupsPickUpChangesWithoutWatcher(@TempDir Path tempDir) {
+        // 配置目录启动时尚不存在
+        File primary = tempDir.resolve("configured").toFile();
+        File fallback = tempDir.resolve("default").toFile();
+        File file = new File(fallback, "2025-10-19.txt");
+        FileUtil.writeString("2025/10/19 08:00 铁西线0-13光缆中断。\n", file, StandardCharsets.UTF_8);
+
+        DispatchLogCatalog catalog = new DispatchLogCatalog(List.of(primary, fallback));
+        List<DispatchLogListener.LogChangeEvent> events = new ArrayList<>();
+        catalog.addListener(events::add);
+        Assertions.assertEquals(new File(fallback, "2025-10-20.txt"), catalog.resolve("2025-10-20"));
+
+        FileUtil.appendString("2025/10/19 09:00 铁西线0-13光缆恢复。\n", file, StandardCharsets.UTF_8);
+        Assertions.assertEquals(SecureUtil.sha256(file), catalog.get("2025-10-19").sha256());
+        Assertions.assertEquals(DispatchLogListener.ChangeType.APPENDED, events.get(0).type());
+
+        File preferred = new File(primary, "2025-10-19.txt");
+        FileUtil.writeString("2025/10/19 11:00 配置目录中的日志。\n", preferred, StandardCharsets.UTF_8);
+        Assertions.assertEquals(preferred.getAbsolutePath(), catalog.resolve("2025-10-19").getAbsolutePath());
+        Assertions.assertEquals(SecureUtil.sha256(preferred), catalog.get("2025-10-19").sha256());
+    }
+}
@@ -0,0 +1,51 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+class DispatchLogDeduplicatorTest {
+
+    private static final String LOG = """
+            2025/10/19 18:24 第二输油处白豹作业区10月19日铁西线0#-13#光缆中断，导致铁西首站网络中断，目前正在抢修，影响铁西首站站内视频掉线10路。
+            2025/10/19 19:00 第五采气厂计划10月22日开展苏2-1干线清管作业，预计清管时间3天，影响气量940万方/天。
+            2025/10/19 19:24 第二输油处白豹作业区10月19日铁西线0#-13#光缆中断，导致铁西首站网络中断，目前仍在抢修，影响铁西首站站内视频掉线10路，预计22时恢复。
+            2025/10/19 20:00 第五采气厂计划10月23日开展苏2-1干线清管作业，预计清管时间2天，影响气量940万方/天。
+            2025/10/19 20:24 第二输油处白豹作业区10月19日铁东线2#-5#光缆中断，导致铁东首站网络中断，目前正在抢修。
+            2025/10/19 20:30 收到。
+            2025/10/19 21:24 第二输油处白豹作业区铁西线0#-13#光缆中断，导致铁西首站网络中断，正在抢修，铁西首站站内视频掉线10路。
+            2025/10/19 21:30 收到。
+            """;
+
+    @Test
+    void collapsesRepeatedStatusIntoLatestWithTimeRange() {
+        DispatchLogDeduplicator deduplicator = new DispatchLogDeduplicator(0.85, 12);
+        DispatchLogDeduplicator.DedupResult result = deduplicator.collapse(DispatchLogParser.parse(LOG));
+
+        Assertions.assertEquals(8, result.originalEvents());
+        Assertions.assertEquals(2, result.collapsedEvents());
+        Assertions.assertTrue(result.tokens() < result.originalTokens());
+        Assertions.assertEquals(1, result.duplicates().size());
+
+        List<DispatchLogEvent> events = result.events();
+        Assertions.assertEquals(6, events.size());
+        // 首次出现的位置和时间，最后一次上报的正文
+        DispatchLogEvent outage = events.get(0);
+        Assertions.assertEquals(LocalDateTime.of(2025, 10, 19, 18, 24), outage.time());
+        Assertions.assertTrue(outage.text().startsWith("第二输油处白豹作业区铁西线0#-13#光缆中断"));
+        Assertions.assertTrue(outage.text().endsWith("（相近内容共上报3次，18:24 至 21:24）"));
+
+        DispatchLogDeduplicator.Duplicate duplicate = result.duplicates().get(0);
+        Assertions.assertEquals(3, duplicate.count());
+        Assertions.assertEquals(LocalDateTime.of(2025, 10, 19, 21, 24), duplicate.last());
+
+        // 日期不同的两次计划、另一条线路、过短的"收到"都不合并
+        Assertions.assertTrue(events.get(1).text().contains("10月22日"));
+        Assertions.assertTrue(events.get(2).text().contains("10月23日"));
+        Assertions.assertTrue(events.get(3).text().contains("铁东线"));
+        Assertions.assertEquals("收到。", events.get(4).text());
+        Assertions.assertEquals("收到。", events.get(5).text());
+    }
+}
@@ -0,0 +1,38 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DispatchLogFilterTest {
+
+    private static final String LOG = """
+            2025/10/19 08:05 10月18日，公司调度商品量2365万方，实际完成商品量2416万方（含风险气19万方）。
+            2025/10/19 08:10 10月18日，公司阶段商品量计划量2888万方/天，实际完成2796万方/天，欠产92万方，主要是中8站压缩机故障，影响气量约25万方。
+            2025/10/19 09:30 集团公司集中视频监控进展：今日完成37232路视频的推送，接口运行正常。
+            接集团实时数据运行情况：接口及数据运行正常。
+            2025/10/19 10:00 本班共巡查45个钻井、试气井场，存在1 个问题，已经整改完毕。
+            2025/10/19 14:00 总调，我厂计划今天下午16:00左右组织苏6-4干线清管作业，
+            预估清管器运行时间为6小时，请总调协调。
+            2025/10/19 18:24 第二输油处白豹作业区铁西线0-13光缆中断，预计22:00恢复。
+            """;
+
+    @Test
+    void dropsNoiseEntriesAndKeepsImportantOnes() {
+        DispatchLogFilter.FilterResult result = DispatchLogFilter.withDefaults().filter(LOG);
+
+        Assertions.assertEquals(8, result.totalLines());
+        Assertions.assertEquals(4, result.removedLines());
+        Assertions.assertEquals(3, result.removedEntries());
+        Assertions.assertEquals(1, result.removedByRule().get("production"));
+        Assertions.assertEquals(1, result.removedByRule().get("video"));
+        Assertions.assertEquals(1, result.removedByRule().get("inspection"));
+        Assertions.assertTrue(result.removedTokens() > 0 && result.removedTokens() < result.originalTokens());
+
+        // 带原因说明的欠产条目包含"故障"，保留
+        Assertions.assertTrue(result.content().contains("中8站压缩机故障"));
+        // 多行条目整体保留
+        Assertions.assertTrue(result.content().contains("预估清管器运行时间为6小时"));
+        Assertions.assertTrue(result.content().contains("铁西线0-13光缆中断"));
+        Assertions.assertFalse(result.content().contains("接集团实时数据运行情况"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import cn.hutool.core.io.FileUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+class DispatchLogOffsetIndexTest {
+
+    @Test
+    void blocksNarrowTheBytesReadForAWindow(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("10月19日 白班\n");
+        for (int hour = 0; hour < 24; hour++) {
+            sb.append(String.format("2025/10/19 %02d:00 第二输油处白豹作业区铁西线0-13巡检正常，", hour))
+                    .append("各站运行平稳。\n续行：压力、流量无异常。\n");
+        }
+        // 乱序补记的一条
+        sb.append("2025/10/19 09:30 补记：苏6-4干线清管器已收球。\n");
+        File file = tempDir.resolve("2025-10-19.txt").toFile();
+        FileUtil.writeString(sb.toString(), file, StandardCharsets.UTF_8);
+        byte[] bytes = FileUtil.readBytes(file);
+
+        DispatchLogOffsetIndex.FileTimeIndex index = DispatchLogOffsetIndex.FileTimeIndex.build(file, 256);
+        Assertions.assertTrue(index.blockCount() > 4);
+
+        LocalDateTime from = LocalDateTime.of(2025, 10, 19, 9, 0);
+        LocalDateTime to = LocalDateTime.of(2025, 10, 19, 11, 0);
+        long[] range = index.byteRange(DispatchLogOffsetIndex.toMinute(from), DispatchLogOffsetIndex.toMinute(to));
+        Assertions.assertNotNull(range);
+        Assertions.assertTrue(range[0] > 0);
+
+        // 块边界落在行首，切出的内容能独立解析，且包含窗口内的全部事件
+        String slice = new String(bytes, (int) range[0], (int) (range[1] - range[0]), StandardCharsets.UTF_8);
+        List<DispatchLogEvent> expected = DispatchLogParser.parse(sb.toString()).stream()
+                .filter(event -> event.time() != null && !event.time().isBefore(from) && event.time().isBefore(to))
+                .toList();
+        List<DispatchLogEvent> actual = DispatchLogParser.parse(slice).stream()
+                .filter(event -> event.time() != null && !event.time().isBefore(from) && event.time().isBefore(to))
+                .toList();
+        Assertions.assertEquals(3, expected.size());
+        Assertions.assertEquals(expected.stream().map(DispatchLogEvent::render).toList(),
+                actual.stream().map(DispatchLogEvent::render).toList());
+
+        Assertions.assertNull(index.byteRange(DispatchLogOffsetIndex.toMinute(LocalDateTime.of(2025, 10, 20, 8, 0)),
+                DispatchLogOffsetIndex.toMinute(LocalDateTime.of(2025, 10, 20, 9, 0))));
+    }
+}
@@ -0,0 +1,102 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+class DispatchLogParserTest {
+
+    private static final String LOG = """
+            10月19日 白班
+            2025/10/19 18:24 第二输油处白豹作业区铁西线0-13光缆中断，预计22:00恢复。
+            2025-10-19 14:00:30 总调，我厂计划今天下午16:00左右组织苏6-4干线清管作业，
+            预估清管器运行时间为6小时，请总调协调。
+
+            2025/10/19 08:05 10月18日，公司调度商品量2365万方，实际完成商品量2416万方。
+            2025/10/19 10:00 本班共巡查45个钻井、试气井场，存在1 个问题，已经整改完毕。
+            """;
+
+    @Test
+    void parsesTimestampsContinuationsAndFields() {
+        List<DispatchLogEvent> events = DispatchLogParser.parse(LOG);
+
+        Assertions.assertEquals(5, events.size());
+        Assertions.assertNull(events.get(0).time());
+        Assertions.assertEquals("10月19日 白班", events.get(0).text());
+
+        DispatchLogEvent outage = events.get(1);
+        Assertions.assertEquals(LocalDateTime.of(2025, 10, 19, 18, 24), outage.time());
+        Assertions.assertEquals("第二输油处白豹作业区", outage.unit());
+        Assertions.assertEquals("铁西线0-13", outage.device());
+        Assertions.assertEquals(EventCategory.INTERRUPTION, outage.category());
+
+        DispatchLogEvent pigging = events.get(2);
+        Assertions.assertEquals(LocalDateTime.of(2025, 10, 19, 14, 0, 30), pigging.time());
+        Assertions.assertEquals(2, pigging.lineCount());
+        Assertions.assertEquals("苏6-4干线", pigging.device());
+        Assertions.assertEquals(EventCategory.PIGGING, pigging.category());
+        Assertions.assertTrue(pigging.render().startsWith("2025/10/19 14:00 总调"));
+
+        Assertions.assertEquals(EventCategory.PRODUCTION, events.get(3).category());
+        Assertions.assertEquals(EventCategory.INSPECTION, events.get(4).category());
+    }
+
+    @Test
+    void dayIndexSlicesByTimeAndCategory() {
+        DispatchLogIndex.DayIndex day = new DispatchLogIndex.DayIndex("2025-10-19", 0, 0, DispatchLogParser.parse(LOG));
+
+        // 按时间排序，没有时间的排在最前
+        Assertions.assertNull(day.events().get(0).time());
+        Assertions.assertEquals(8, day.events().get(1).time().getHour());
+        Assertions.assertEquals(18, day.events().get(4).time().getHour());
+
+        List<DispatchLogEvent> afternoon = day.between(LocalDateTime.of(2025, 10, 19, 10, 0),
+                LocalDateTime.of(2025, 10, 19, 18, 24));
+        Assertions.assertEquals(2, afternoon.size());
+        Assertions.assertEquals(EventCategory.INSPECTION, afternoon.get(0).category());
+        Assertions.assertEquals(EventCategory.PIGGING, afternoon.get(1).category());
+
+        List<DispatchLogEvent> important = day.byCategory(Set.of(EventCategory.INTERRUPTION, EventCategory.PIGGING));
+        Assertions.assertEquals(2, important.size());
+        Assertions.assertTrue(important.get(0).time().isBefore(important.get(1).time()));
+        Assertions.assertEquals(1, day.categoryCounts().get(EventCategory.PRODUCTION));
+    }
+
+    @Test
+    void appendedContentContinuesLastEvent() throws Exception {
+        String head = "2025/10/19 14:00 总调，我厂计划今天下午16:00左右组织苏6-4干线清管作业，\n";
+        String tail = "预估清管器运行时间为6小时，请总调协调。\n2025/10/19 18:24 第二输油处白豹作业区铁西线0-13光缆中断。\n";
+        DispatchLogIndex.DayIndex day = new DispatchLogIndex.DayIndex("2025-10-19", 0, 0, DispatchLogParser.parse(head));
+
+        List<DispatchLogEvent> appended = DispatchLogParser.parseAppended(
+                new BufferedReader(new StringReader(tail)), day.events().get(0));
+        DispatchLogIndex.DayIndex merged = day.append(appended, 0, 0, 0);
+
+        Assertions.assertEquals(DispatchLogParser.parse(head + tail), merged.events());
+    }
+
+    @Test
+    void appendStoppingMidLineWaitsForTheRest() throws Exception {
+        String head = "2025/10/19 14:00 总调，我厂计划组织苏6-4干线清管作业。\n";
+        byte[] tail = "2025/10/19 18:24 第二输油处白豹作业区铁西线0-13光缆中断。\n".getBytes(StandardCharsets.UTF_8);
+        long headSize = head.getBytes(StandardCharsets.UTF_8).length;
+        DispatchLogIndex.DayIndex day = new DispatchLogIndex.DayIndex("2025-10-19", 0, headSize,
+                DispatchLogParser.parse(head));
+
+        // 第一次追加截断在"第"字的 UTF-8 编码中间
+        int cut = "2025/10/19 18:24 ".length() + 1;
+        DispatchLogIndex.DayIndex partial = day.appendBytes(Arrays.copyOf(tail, cut), 0, headSize + cut);
+        Assertions.assertEquals(day.events(), partial.events());
+
+        DispatchLogIndex.DayIndex merged = partial.appendBytes(tail, 0, headSize + tail.length);
+        Assertions.assertEquals(DispatchLogParser.parse(head + new String(tail, StandardCharsets.UTF_8)), merged.events());
+        Assertions.assertFalse(merged.events().get(1).text().contains("\uFFFD"));
+    }
+}
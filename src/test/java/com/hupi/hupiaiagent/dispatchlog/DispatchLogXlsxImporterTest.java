@@ -0,0 +1,102 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import cn.hutool.core.io.FileUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+class DispatchLogXlsxImporterTest {
+
+    private static final String WORKBOOK = """
+            <workbook xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main" \
+            xmlns:r="http://schemas.openxmlformats.org/officeDocument/2006/relationships">\
+            <sheets><sheet name="调度日志" sheetId="1" r:id="rId1"/></sheets></workbook>""";
+
+    private static final String RELS = """
+            <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">\
+            <Relationship Id="rId1" Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet" \
+            Target="worksheets/sheet1.xml"/></Relationships>""";
+
+    private static final String SHARED_STRINGS = """
+            <sst xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main">\
+            <si><t>ADDTIME</t></si><si><t>CONTENT</t></si>\
+            <si><t>10月20日交接班：&#10;（1）苏6-4干线清管作业完成。</t></si>\
+            <si><r><t>第二输油处白豹作业区</t></r><r><t>铁西线0-13光缆中断。</t></r></si></sst>""";
+
+    // 倒序导出：2025-10-20 07:49:45、2025-10-19 18:24:00，另有一行行内字符串和一行空内容
+    private static final String SHEET = """
+            <worksheet xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main"><sheetData>\
+            <row r="1"><c r="A1" t="s"><v>0</v></c><c r="B1" t="s"><v>1</v></c></row>\
+            <row r="2"><c r="A2" s="1"><v>45950.3262152778</v></c><c r="B2" t="s"><v>2</v></c></row>\
+            <row r="3"><c r="A3" s="1"><v>45949.7666666667</v></c><c r="B3" t="s"><v>3</v></c></row>\
+            <row r="4"><c r="A4" t="inlineStr"><is><t>2025/10/19 08:05</t></is></c>\
+            <c r="B4" t="inlineStr"><is><t>公司调度商品量2365万方。</t></is></c></row>\
+            <row r="5"><c r="A5" s="1"><v>45949.5</v></c></row>\
+            </sheetData></worksheet>""";
+
+    @Test
+    void splitsRowsIntoSortedDayFiles(@TempDir Path tempDir) throws Exception {
+        File workbook = tempDir.resolve("dispatch-log.xlsx").toFile();
+        writeZip(workbook, Map.of(
+                "xl/workbook.xml", WORKBOOK,
+                "xl/_rels/workbook.xml.rels", RELS,
+                "xl/sharedStrings.xml", SHARED_STRINGS,
+                "xl/worksheets/sheet1.xml", SHEET));
+        File logDir = tempDir.resolve("logs").toFile();
+        FileUtil.mkdir(logDir);
+        DispatchLogCatalog catalog = new DispatchLogCatalog(List.of(logDir));
+        DispatchLogXlsxImporter importer = new DispatchLogXlsxImporter(catalog);
+
+        DispatchLogXlsxImporter.ImportResult result = importer.importWorkbook(workbook);
+
+        Assertions.assertEquals(3, result.rows());
+        Assertions.assertEquals(1, result.skipped());
+        Assertions.assertEquals(List.of("2025-10-19", "2025-10-20"), result.written());
+        Assertions.assertNotNull(catalog.get("2025-10-19"));
+
+        List<DispatchLogEvent> day19 = DispatchLogParser.parse(new File(logDir, "2025-10-19.txt").toPath());
+        Assertions.assertEquals(2, day19.size());
+        Assertions.assertEquals(LocalDateTime.of(2025, 10, 19, 8, 5), day19.get(0).time());
+        Assertions.assertEquals(LocalDateTime.of(2025, 10, 19, 18, 24), day19.get(1).time());
+        Assertions.assertEquals("第二输油处白豹作业区铁西线0-13光缆中断。", day19.get(1).text());
+
+        List<DispatchLogEvent> day20 = DispatchLogParser.parse(new File(logDir, "2025-10-20.txt").toPath());
+        Assertions.assertEquals(1, day20.size());
+        Assertions.assertEquals(LocalDateTime.of(2025, 10, 20, 7, 49, 45), day20.get(0).time());
+        Assertions.assertEquals(2, day20.get(0).lineCount());
+
+        // 再次导入同一工作簿不改动已有文件
+        DispatchLogXlsxImporter.ImportResult again = importer.importWorkbook(workbook);
+        Assertions.assertTrue(again.written().isEmpty());
+        Assertions.assertEquals(List.of("2025-10-19", "2025-10-20"), again.unchanged());
+    }
+
+    @Test
+    void parsesCellReferencesAndSerialDates() {
+        Assertions.assertEquals(0, DispatchLogXlsxImporter.columnIndex("A12"));
+        Assertions.assertEquals(27, DispatchLogXlsxImporter.columnIndex("AB3"));
+        Assertions.assertEquals(LocalDateTime.of(2025, 10, 19, 12, 0), DispatchLogXlsxImporter.parseTime("45949.5"));
+        Assertions.assertEquals(LocalDateTime.of(2025, 10, 19, 8, 5), DispatchLogXlsxImporter.parseTime("2025-10-19 08:05"));
+        Assertions.assertNull(DispatchLogXlsxImporter.parseTime("白班"));
+    }
+
+    private static void writeZip(File file, Map<String, String> entries) throws Exception {
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+    }
+}
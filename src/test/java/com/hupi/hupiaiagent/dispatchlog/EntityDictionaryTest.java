@@ -0,0 +1,55 @@
+package com.hupi.hupiaiagent.dispatchlog;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class EntityDictionaryTest {
+
+    private static final List<String> DICT = List.of(
+            "# 测试词典",
+            "输油处: 第二输油处, 输油二处",
+            "作业区: 白豹作业区",
+            "作业区: 白豹",
+            "站场: 铁西首站",
+            "管线: 铁西线",
+            "管线: 苏6-4干线");
+
+    private final EntityDictionary dictionary = new EntityDictionary(DICT);
+
+    @Test
+    void tagsLongestNonOverlappingEntitiesAndMergesAliases() {
+        List<EntityDictionary.Entity> entities = dictionary.tag(
+                "输油二处白豹作业区铁西线0-13光缆中断，导致铁西首站网络中断，第二输油处正在抢修。");
+
+        Assertions.assertEquals(List.of(
+                new EntityDictionary.Entity("输油处", "第二输油处"),
+                new EntityDictionary.Entity("作业区", "白豹作业区"),
+                new EntityDictionary.Entity("管线", "铁西线"),
+                new EntityDictionary.Entity("站场", "铁西首站")), entities);
+        Assertions.assertEquals(6, dictionary.size());
+    }
+
+    @Test
+    void checkFlagsEntitiesMissingFromLogAndUnknownNames() {
+        String source = "2025/10/19 06:10 第二输油处白豹作业区铁西线光缆中断，导致铁西首站网络中断。";
+        String generated = "1.06:10协调第二输油处白豹作业区铁西线光缆抢修，铁西首站网络中断；苏6-4干线清管，王家湾作业区停输。";
+
+        EntityDictionary.EntityCheck check = dictionary.check(generated, source);
+
+        Assertions.assertEquals(List.of("苏6-4干线"), check.notInLog());
+        Assertions.assertEquals(List.of("王家湾作业区"), check.unknown());
+        Assertions.assertFalse(check.passed());
+        Assertions.assertTrue(dictionary.check("铁西首站网络恢复。", source).passed());
+    }
+
+    @Test
+    void automatonFindsOverlappingPatternsInOnePass() {
+        AhoCorasick automaton = new AhoCorasick(List.of("he", "she", "his", "hers"));
+
+        Assertions.assertEquals(List.of(new AhoCorasick.Match(1, 4, 1)), automaton.find("ushe"));
+        Assertions.assertEquals(List.of(new AhoCorasick.Match(0, 4, 3), new AhoCorasick.Match(4, 7, 2)),
+                automaton.find("hershis"));
+    }
+}
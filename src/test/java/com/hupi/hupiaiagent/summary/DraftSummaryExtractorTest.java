@@ -0,0 +1,67 @@
+package com.hupi.hupiaiagent.summary;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+class DraftSummaryExtractorTest {
+
+    private static final String MESSAGE = """
+            请基于[2025-10-19]的调度日志生成交接班总结：
+
+            2025/10/19 14:00 第一采气厂计划今天下午16:00左右组织苏6-4干线清管作业，预估清管器运行时间为6小时。
+            2025/10/19 07:00 本班共巡查45个钻井、试气井场，各井场运行平稳。
+            2025/10/19 06:10 第二输油处铁西线0-13光缆中断，已完成抢修，
+            网络恢复正常。
+            2025/10/19 09:30 第三采油厂王窑站外输泵检修完毕，恢复运行。
+            """;
+
+    private final DraftSummaryExtractor extractor = DraftSummaryExtractor.withDefaults();
+
+    @Test
+    void groupsKeywordEventsIntoSectionsByTime() {
+        String draft = extractor.draftFromMessage(MESSAGE);
+
+        Assertions.assertEquals("""
+                2025-10-19交接班总结（初稿）
+                昨日处理主要工作
+                1.06:10第二输油处铁西线0-13光缆中断，已完成抢修，网络恢复正常。
+                2.09:30第三采油厂王窑站外输泵检修完毕，恢复运行。
+                今日关注工作
+                1.14:00第一采气厂计划今天下午16:00左右组织苏6-4干线清管作业，预估清管器运行时间为6小时。
+                """, draft);
+    }
+
+    @Test
+    void returnsNullWithoutTimestampedLines() {
+        Assertions.assertNull(extractor.draftFromMessage("今天白班有哪些清管作业？"));
+        Assertions.assertTrue(extractor.draft("2025-10-19", List.of()).contains("今日关注工作\n无\n"));
+    }
+
+    @Test
+    void fallsBackToDraftOnlyWhenModelFailsBeforeOutput() {
+        Flux<String> failing = Flux.error(new TimeoutException());
+        String content = extractor.withFallback(failing, () -> "初稿", "test")
+                .collect(Collectors.joining()).block();
+        Assertions.assertEquals(DraftSummaryExtractor.FALLBACK_NOTE + "初稿", content);
+
+        Assertions.assertEquals("正文", extractor.withFallback(Flux.just("正文"), () -> "初稿", "test")
+                .collect(Collectors.joining()).block());
+        Assertions.assertThrows(RuntimeException.class, () -> extractor.withFallback(failing, () -> null, "test")
+                .collect(Collectors.joining()).block());
+    }
+
+    @Test
+    void partialOutputIsNotFollowedByDraft() {
+        Flux<String> partial = Flux.concat(Flux.just("部分"), Flux.error(new TimeoutException()));
+        List<String> chunks = new ArrayList<>();
+        Assertions.assertThrows(RuntimeException.class, () -> extractor.withFallback(partial, () -> "初稿", "test")
+                .doOnNext(chunks::add).blockLast());
+        Assertions.assertEquals(List.of("部分"), chunks);
+    }
+}
@@ -0,0 +1,64 @@
+package com.hupi.hupiaiagent.summary;
+
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogParser;
+import com.hupi.hupiaiagent.dispatchlog.EventCategory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class PromptBudgetBuilderTest {
+
+    private static final String PREFIX = "请基于[2025-10-19]的调度日志生成交接班总结：\n\n";
+
+    private static final String LOG = """
+            10月19日 白班
+            2025/10/19 06:10 第二输油处白豹作业区铁西线0-13光缆中断，导致铁西首站网络中断，目前正在抢修。
+            2025/10/19 07:00 本班共巡查45个钻井、试气井场，存在1个问题，已经整改完毕，各井场运行平稳，未发现其他异常情况。
+            2025/10/19 08:00 本班巡查12座集气站。
+            2025/10/19 14:00 第一采气厂计划今天下午16:00左右组织苏6-4干线清管作业，预估清管器运行时间为6小时，请总调协调。
+            2025/10/19 15:00 总调，请协调下游用户配合调整用气。
+            """;
+
+    private static final List<EventCategory> DROP_ORDER = List.of(EventCategory.INSPECTION, EventCategory.COORDINATION,
+            EventCategory.INTERRUPTION, EventCategory.PIGGING);
+
+    @Test
+    void keepsEverythingWithinBudget() {
+        PromptBudgetBuilder builder = new PromptBudgetBuilder(8192, 2048, DROP_ORDER);
+        List<DispatchLogEvent> events = DispatchLogParser.parse(LOG);
+
+        PromptBudgetBuilder.Build build = builder.build(PREFIX, events, "test");
+
+        Assertions.assertEquals(0, build.droppedEvents());
+        Assertions.assertTrue(build.message().startsWith(PREFIX));
+        Assertions.assertTrue(build.message().contains("06:10"));
+        Assertions.assertEquals(1, builder.getStats().requests());
+    }
+
+    @Test
+    void dropsLowestPriorityLongestFirstAndKeepsMorningEvents() {
+        List<DispatchLogEvent> events = DispatchLogParser.parse(LOG);
+        PromptBudgetBuilder unlimited = new PromptBudgetBuilder(8192, 2048, DROP_ORDER);
+        int fullTokens = unlimited.build(PREFIX, events, "full").tokens();
+
+        // 预算只够去掉较长的那条巡检记录（约 50 token）
+        PromptBudgetBuilder builder = new PromptBudgetBuilder(fullTokens - 25 + 2048 + 4, 2048, DROP_ORDER);
+        PromptBudgetBuilder.Build build = builder.build(PREFIX, events, "test");
+
+        Assertions.assertEquals(1, build.droppedEvents());
+        Assertions.assertEquals(1, build.droppedByCategory().get("INSPECTION"));
+        Assertions.assertTrue(build.tokens() <= build.budget());
+        Assertions.assertFalse(build.message().contains("45个钻井"));
+        Assertions.assertTrue(build.message().contains("12座集气站"));
+        // 早晨的中断记录、表头行保留，并注明省略
+        Assertions.assertTrue(build.message().contains("2025/10/19 06:10"));
+        Assertions.assertTrue(build.message().contains("10月19日 白班"));
+        Assertions.assertTrue(build.message().contains("已省略1条较次要的记录：巡检1条"));
+
+        PromptBudgetBuilder.Stats stats = builder.getStats();
+        Assertions.assertEquals(1, stats.truncatedRequests());
+        Assertions.assertNull(stats.recent().get(0).message());
+    }
+}
@@ -0,0 +1,41 @@
+package com.hupi.hupiaiagent.summary;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class RollupSummaryServiceTest {
+
+    @Test
+    void buildsRollupMessageInDateOrder() {
+        LocalDate from = LocalDate.of(2025, 10, 13);
+        Map<String, String> summaries = new TreeMap<>();
+        summaries.put("2025-10-15", "<think>略</think>2025-10-15交接班总结\n昨日处理主要工作\n1.09:00苏6-4干线清管作业完成。");
+        summaries.put("2025-10-13", "2025-10-13交接班总结\n昨日处理主要工作\n1.14:00苏6-4干线开始清管作业。");
+
+        String message = RollupSummaryService.buildRollupMessage(from, from.plusDays(6), summaries);
+
+        Assertions.assertTrue(message.contains("本周生产调度总结（2025-10-13至2025-10-19）"));
+        Assertions.assertTrue(message.indexOf("【2025-10-13】") < message.indexOf("【2025-10-15】"));
+        Assertions.assertFalse(message.contains("<think>"));
+        Assertions.assertEquals("2025-10-13至2025-10-14生产调度总结", RollupSummaryService.title(from, from.plusDays(1)));
+    }
+
+    @Test
+    void splitsThinkAcrossChunks() {
+        AtomicBoolean inThink = new AtomicBoolean(false);
+
+        List<RollupSummaryService.RollupEvent> first = RollupSummaryService.splitThink("<think>先按主题", inThink);
+        List<RollupSummaryService.RollupEvent> second = RollupSummaryService.splitThink("归并</think>本周生产", inThink);
+
+        Assertions.assertEquals(List.of(new RollupSummaryService.RollupEvent("thinking", "先按主题")), first);
+        Assertions.assertEquals(List.of(new RollupSummaryService.RollupEvent("thinking", "归并"),
+                new RollupSummaryService.RollupEvent("message", "本周生产")), second);
+        Assertions.assertFalse(inThink.get());
+    }
+}
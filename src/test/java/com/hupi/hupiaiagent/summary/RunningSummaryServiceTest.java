@@ -0,0 +1,47 @@
+package com.hupi.hupiaiagent.summary;
+
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+class RunningSummaryServiceTest {
+
+    private static final String LOG = """
+            2025/10/19 08:00 本班巡查12座集气站。
+            2025/10/19 06:10 第二输油处铁西线0-13光缆中断，目前正在抢修。
+            """;
+
+    private static final String APPENDED = LOG + """
+            抢修人员已到达现场。
+            2025/10/19 09:30 第三采油厂王窑站外输泵检修完毕，恢复运行。
+            """;
+
+    @Test
+    void newEventsFollowFileOrderAndResendExtendedLastEvent() {
+        List<DispatchLogEvent> before = DispatchLogParser.parse(LOG);
+        DispatchLogEvent covered = before.stream().filter(e -> e.seq() == 1).findFirst().orElseThrow();
+
+        Assertions.assertTrue(RunningSummaryService.newEvents(before, covered.seq(), covered.text()).isEmpty());
+
+        List<DispatchLogEvent> delta = RunningSummaryService.newEvents(DispatchLogParser.parse(APPENDED),
+                covered.seq(), covered.text());
+        Assertions.assertEquals(2, delta.size());
+        Assertions.assertTrue(delta.get(0).text().contains("抢修人员已到达现场"));
+        Assertions.assertTrue(delta.get(1).text().contains("王窑站"));
+    }
+
+    @Test
+    void deltaMessageCarriesPreviousSummaryAndNewLines() {
+        List<DispatchLogEvent> delta = DispatchLogParser.parse("2025/10/19 09:30 第三采油厂王窑站外输泵检修完毕，恢复运行。\n");
+        String message = RunningSummaryService.deltaMessage("2025-10-19", "昨日处理主要工作\n1.铁西线光缆抢修\n",
+                LocalDateTime.of(2025, 10, 19, 8, 0), delta);
+
+        Assertions.assertTrue(message.startsWith("以下是[2025-10-19]截至08:00的交接班总结："));
+        Assertions.assertTrue(message.contains("1.铁西线光缆抢修\n\n此后新增的调度日志如下"));
+        Assertions.assertTrue(message.endsWith("2025/10/19 09:30 第三采油厂王窑站外输泵检修完毕，恢复运行。"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.hupi.hupiaiagent.summary;
+
+import cn.hutool.core.io.FileUtil;
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+@SpringBootTest
+class SummaryCacheTest {
+
+    private static final String DATE = "2099-01-01";
+
+    @Resource
+    private SummaryCache summaryCache;
+
+    @Test
+    void hitsUntilLogChanges(@TempDir Path tempDir) {
+        File logFile = tempDir.resolve(DATE + ".txt").toFile();
+        FileUtil.writeString("2099/01/01 08:00 铁西线0-13光缆中断。\n", logFile, StandardCharsets.UTF_8);
+        try {
+            Assertions.assertNull(summaryCache.get(DATE, logFile));
+
+            SummaryCache.Snapshot snapshot = summaryCache.snapshot(logFile);
+            summaryCache.put(DATE, logFile, snapshot, "2099-01-01交接班总结\n昨日处理主要工作\n1.08:00铁西线0-13光缆中断。", 1234);
+            SummaryCache.Entry entry = summaryCache.get(DATE, logFile);
+            Assertions.assertNotNull(entry);
+            Assertions.assertEquals(1234, entry.costMs());
+            Assertions.assertTrue(entry.content().startsWith("2099-01-01交接班总结"));
+
+            FileUtil.appendString("2099/01/01 09:00 铁西线0-13光缆恢复。\n", logFile, StandardCharsets.UTF_8);
+            Assertions.assertNull(summaryCache.get(DATE, logFile));
+
+            Assertions.assertNull(summaryCache.get("../" + DATE, logFile));
+        } finally {
+            summaryCache.evict(DATE);
+        }
+    }
+
+    @Test
+    void skipsResultWhenLogChangedDuringGeneration(@TempDir Path tempDir) {
+        File logFile = tempDir.resolve(DATE + ".txt").toFile();
+        FileUtil.writeString("2099/01/01 08:00 铁西线0-13光缆中断。\n", logFile, StandardCharsets.UTF_8);
+        try {
+            SummaryCache.Snapshot snapshot = summaryCache.snapshot(logFile);
+            // 生成期间日志有追加
+            FileUtil.appendString("2099/01/01 09:00 铁西线0-13光缆恢复。\n", logFile, StandardCharsets.UTF_8);
+
+            Assertions.assertNull(summaryCache.put(DATE, logFile, snapshot, "2099-01-01交接班总结（基于旧日志）", 1234));
+            Assertions.assertNull(summaryCache.get(DATE, logFile));
+        } finally {
+            summaryCache.evict(DATE);
+        }
+    }
+}
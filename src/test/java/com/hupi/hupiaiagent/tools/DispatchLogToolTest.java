@@ -0,0 +1,57 @@
+package com.hupi.hupiaiagent.tools;
+
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogEvent;
+import com.hupi.hupiaiagent.dispatchlog.DispatchLogParser;
+import com.hupi.hupiaiagent.dispatchlog.EventCategory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+class DispatchLogToolTest {
+
+    private static final String LOG = """
+            2025/10/19 06:10 第二输油处铁西线0-13光缆中断，导致铁西首站网络中断，目前正在抢修。
+            2025/10/19 07:00 本班共巡查45个钻井、试气井场，各井场运行平稳。
+            2025/10/19 14:00 第一采气厂计划今天下午组织苏6-4干线清管作业，
+            预估清管器运行时间为6小时。
+            2025/10/19 16:00 第五采气厂苏2-1干线清管作业开始。
+            2025/10/19 20:00 第五采气厂苏2-1干线清管作业结束。
+            """;
+
+    @Test
+    void pagesFilteredEventsWithNextOffset() {
+        List<DispatchLogEvent> events = DispatchLogParser.parse(LOG);
+        Set<EventCategory> pigging = DispatchLogTool.parseCategories("清管");
+
+        DispatchLogTool.Page first = DispatchLogTool.query(events, pigging, List.of(), 0, 2, 200);
+        Assertions.assertEquals(3, first.total());
+        Assertions.assertEquals(2, first.nextOffset());
+        Assertions.assertEquals("14:00 [清管] 第一采气厂计划今天下午组织苏6-4干线清管作业， 预估清管器运行时间为6小时。", first.lines().get(0));
+        Assertions.assertTrue(first.render().endsWith("继续查询请传 offset=2）"));
+
+        DispatchLogTool.Page second = DispatchLogTool.query(events, pigging, List.of(), 2, 2, 200);
+        Assertions.assertEquals(-1, second.nextOffset());
+        Assertions.assertTrue(second.render().contains("20:00 [清管]"));
+        Assertions.assertTrue(second.render().endsWith("（已全部返回）"));
+    }
+
+    @Test
+    void filtersByKeywordsAndTruncates() {
+        List<DispatchLogEvent> events = DispatchLogParser.parse(LOG);
+        DispatchLogTool.Page page = DispatchLogTool.query(events, Set.of(), List.of("苏2-1", "结束"), 0, 30, 8);
+
+        Assertions.assertEquals(List.of("20:00 [清管] 第五采气厂苏2-…"), page.lines());
+        Assertions.assertEquals("没有符合条件的记录",
+                DispatchLogTool.query(events, Set.of(), List.of("火灾"), 0, 30, 200).render());
+    }
+
+    @Test
+    void parsesCategoryLabelsAndNames() {
+        Assertions.assertEquals(Set.of(EventCategory.INTERRUPTION, EventCategory.REPAIR),
+                DispatchLogTool.parseCategories("停输，REPAIR"));
+        Assertions.assertTrue(DispatchLogTool.parseCategories(null).isEmpty());
+        Assertions.assertNull(DispatchLogTool.parseCategories("天气"));
+    }
+}